@@ -0,0 +1,148 @@
+package ch.epfl.javions;
+
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Represents a bounded, lock-free queue meant to be shared between a single producer thread and a single consumer
+ * thread. All the slots are allocated at construction, so that the memory used by the queue never grows.
+ * When the queue is full, the behaviour of the producer is given by the overflow policy of the queue.
+ *
+ * @param <E> the type of the elements of the queue
+ * @author Arthur Wolf (344200)
+ * @author Oussama Ghali (341478)
+ */
+public final class RingBuffer<E> {
+    // Time waited by a blocked producer before checking again if there is some room in the queue
+    private static final long BLOCKED_PARK_TIME_NS = 100_000;
+    private final AtomicReferenceArray<E> slots;
+    private final int capacity;
+    private final int mask;
+    private final OverflowPolicy overflowPolicy;
+    // Index of the next element to read, only moved forward by the consumer (and the producer when dropping the oldest)
+    private final AtomicLong head = new AtomicLong();
+    // Index of the next element to write, only moved forward by the producer
+    private final AtomicLong tail = new AtomicLong();
+    private final AtomicLong droppedCount = new AtomicLong();
+
+    /**
+     * Represents what the producer does when it adds an element to a full queue
+     */
+    public enum OverflowPolicy {
+        /**
+         * The producer waits until the consumer makes some room in the queue
+         */
+        BLOCK,
+        /**
+         * The oldest element of the queue is dropped to make room for the new one
+         */
+        DROP_OLDEST,
+        /**
+         * The new element is dropped
+         */
+        DROP_NEWEST
+    }
+
+    /**
+     * Constructs a ring buffer able to contain at least the given number of elements
+     *
+     * @param capacity       the minimal capacity of the queue, rounded up to the next power of two
+     * @param overflowPolicy the behaviour of the producer when the queue is full
+     * @throws IllegalArgumentException if the capacity is not in the range ]0, 2^30]
+     * @throws NullPointerException     if the overflow policy is null
+     */
+    public RingBuffer(int capacity, OverflowPolicy overflowPolicy) {
+        final int MAXIMUM_CAPACITY = 1 << 30;
+        Preconditions.checkArgument(0 < capacity && capacity <= MAXIMUM_CAPACITY);
+        this.overflowPolicy = Objects.requireNonNull(overflowPolicy);
+        this.capacity = capacity == 1 ? 1 : Integer.highestOneBit(capacity - 1) << 1;
+        this.mask = this.capacity - 1;
+        this.slots = new AtomicReferenceArray<>(this.capacity);
+    }
+
+    /**
+     * Adds the given element at the end of the queue, according to the overflow policy if the queue is full.
+     * Must only be called by the producer thread.
+     *
+     * @param element the element to add
+     * @return true if the element was added, false if it was dropped
+     * @throws NullPointerException if the element is null
+     */
+    public boolean offer(E element) {
+        Objects.requireNonNull(element);
+        long t = tail.get();
+
+        while (t - head.get() >= capacity) {
+            switch (overflowPolicy) {
+                case BLOCK -> {
+                    LockSupport.parkNanos(BLOCKED_PARK_TIME_NS);
+                    if (Thread.currentThread().isInterrupted()) {
+                        droppedCount.incrementAndGet();
+                        return false;
+                    }
+                }
+                case DROP_OLDEST -> {
+                    // The consumer may read the oldest element at the same time, only one of both gets it
+                    long h = head.get();
+                    if (t - h >= capacity && head.compareAndSet(h, h + 1))
+                        droppedCount.incrementAndGet();
+                }
+                case DROP_NEWEST -> {
+                    droppedCount.incrementAndGet();
+                    return false;
+                }
+            }
+        }
+
+        slots.set((int) t & mask, element);
+        tail.lazySet(t + 1);
+        return true;
+    }
+
+    /**
+     * Removes and returns the first element of the queue.
+     * Must only be called by the consumer thread.
+     *
+     * @return the first element of the queue, or null if the queue is empty
+     */
+    public E poll() {
+        while (true) {
+            long h = head.get();
+            if (h >= tail.get()) return null;
+
+            E element = slots.get((int) h & mask);
+            // If the producer dropped this element in the meantime, try again with the next one
+            if (head.compareAndSet(h, h + 1)) return element;
+        }
+    }
+
+    /**
+     * Returns the number of elements in the queue
+     *
+     * @return the number of elements in the queue
+     */
+    public int size() {
+        long h = head.get();
+        return (int) Math.max(0, Math.min(capacity, tail.get() - h));
+    }
+
+    /**
+     * Returns the maximal number of elements of the queue
+     *
+     * @return the capacity of the queue
+     */
+    public int capacity() {
+        return capacity;
+    }
+
+    /**
+     * Returns the number of elements dropped since the creation of the queue
+     *
+     * @return the number of dropped elements
+     */
+    public long droppedCount() {
+        return droppedCount.get();
+    }
+}
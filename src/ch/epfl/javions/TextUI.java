@@ -4,6 +4,7 @@ package ch.epfl.javions;
 import ch.epfl.javions.adsb.Message;
 import ch.epfl.javions.adsb.MessageParser;
 import ch.epfl.javions.adsb.RawMessage;
+import ch.epfl.javions.adsb.RawMessageReader;
 import ch.epfl.javions.aircraft.AircraftDatabase;
 import ch.epfl.javions.gui.AircraftStateManager;
 import ch.epfl.javions.gui.ObservableAircraftState;
@@ -12,6 +13,7 @@ import javafx.collections.ObservableSet;
 import java.io.*;
 import java.net.URL;
 import java.net.URLDecoder;
+import java.nio.file.Path;
 import java.util.*;
 
 import static java.nio.charset.StandardCharsets.UTF_8;
@@ -45,16 +47,11 @@ public class TextUI {
 
     public static void main(String[] args) {
         AircraftStateManager manager = new AircraftStateManager(getDatabase());
-        try (DataInputStream s = new DataInputStream(
-                new BufferedInputStream(new FileInputStream("resources/messages_20230318_0915.bin")))) {
-            byte[] bytes = new byte[RawMessage.LENGTH];
+        try (RawMessageReader s = new RawMessageReader(Path.of("resources/messages_20230318_0915.bin"))) {
             System.out.println("OACI    Indicatif      Immat.  Modèle                        Longitude   Latitude   Alt.  Vit.\n" + "――――――――――――――――――――――――――――――――――――――――――――――――――――――――――――――――――――――――――――――――");
-            while (true) {
-                long timeStampNs = s.readLong();
-                int bytesRead = s.readNBytes(bytes, 0, bytes.length);
-                assert bytesRead == RawMessage.LENGTH;
-                ByteString message = new ByteString(bytes);
-                Message message1 = MessageParser.parse(new RawMessage(timeStampNs, message));
+            RawMessage rawMessage;
+            while ((rawMessage = s.read()) != null) {
+                Message message1 = MessageParser.parse(rawMessage);
                 if (message1 != null) {
                     manager.updateWithMessage(message1);
                     manager.purge();
@@ -75,7 +72,7 @@ public class TextUI {
                             state.altitudeProperty().get(), Units.convertTo(state.velocityProperty().get(), Units.Speed.KILOMETER_PER_HOUR), findArrow(Units.convertTo(state.trackOrHeadingProperty().get(), Units.Angle.DEGREE)));
                 }
             }
-        } catch (EOFException e) { /* nothing to do */ } catch (IOException | InterruptedException e) {
+        } catch (IOException | InterruptedException e) {
             throw new RuntimeException(e);
         }
     }
@@ -0,0 +1,181 @@
+package ch.epfl.javions.adsb;
+
+import ch.epfl.javions.Preconditions;
+import ch.epfl.javions.aircraft.IcaoAddress;
+
+import java.util.*;
+import java.util.function.Function;
+
+/**
+ * Represents a table of aircraft states that can be updated concurrently by several threads.
+ * The table is split in shards according to the ICAO address of the aircraft, each shard being protected
+ * by its own lock, so that messages concerning aircraft of different shards can be applied in parallel.
+ * The states must only be read through the read and snapshot methods, which give a consistent view of
+ * each aircraft (i.e. never in the middle of an update).
+ *
+ * @param <T> the type of the aircraft states
+ * @author Arthur Wolf (344200)
+ * @author Oussama Ghali (341478)
+ */
+public final class ConcurrentAircraftStateTable<T extends AircraftStateSetter> {
+    private static final int SHARDS_PER_PROCESSOR = 4;
+    private static final int ICAO_ADDRESS_RADIX = 16;
+    private final Shard<T>[] shards;
+    private final Function<IcaoAddress, T> stateFactory;
+
+    /**
+     * Constructs a table with a number of shards depending on the number of available processors
+     *
+     * @param stateFactory the function creating the state of an aircraft the first time it is seen
+     * @throws NullPointerException if the state factory is null
+     */
+    public ConcurrentAircraftStateTable(Function<IcaoAddress, T> stateFactory) {
+        this(Runtime.getRuntime().availableProcessors() * SHARDS_PER_PROCESSOR, stateFactory);
+    }
+
+    /**
+     * Constructs a table with the given number of shards
+     *
+     * @param shardCount   the number of shards of the table
+     * @param stateFactory the function creating the state of an aircraft the first time it is seen
+     * @throws IllegalArgumentException if the number of shards is not strictly positive
+     * @throws NullPointerException     if the state factory is null
+     */
+    @SuppressWarnings("unchecked")
+    public ConcurrentAircraftStateTable(int shardCount, Function<IcaoAddress, T> stateFactory) {
+        Preconditions.checkArgument(shardCount > 0);
+        this.stateFactory = Objects.requireNonNull(stateFactory);
+        shards = (Shard<T>[]) new Shard<?>[shardCount];
+        for (int i = 0; i < shardCount; i++)
+            shards[i] = new Shard<>();
+    }
+
+    /**
+     * Updates the state of the aircraft that sent the given message, creating it if needed.
+     * This method can be called from several threads at the same time.
+     *
+     * @param message the message to update the state with
+     */
+    public void update(Message message) {
+        IcaoAddress address = message.icaoAddress();
+        Shard<T> shard = shardOf(address);
+        synchronized (shard) {
+            Shard.Entry<T> entry = shard.entries.get(address);
+            if (entry == null) {
+                entry = new Shard.Entry<>(new AircraftStateAccumulator<>(stateFactory.apply(address)));
+                shard.entries.put(address, entry);
+            }
+            entry.accumulator.update(message);
+            // The messages of several feeds are not ordered, the last time stamp must not go backwards
+            entry.lastMessageTimeStampNs = Math.max(entry.lastMessageTimeStampNs, message.timeStampNs());
+        }
+    }
+
+    /**
+     * Applies the given reader to the state of the aircraft with the given address, while no update of
+     * this aircraft can happen.
+     *
+     * @param address the ICAO address of the aircraft
+     * @param reader  the function extracting the wanted information from the state
+     * @param <R>     the type of the extracted information
+     * @return the extracted information, or null if the aircraft is not in the table
+     */
+    public <R> R read(IcaoAddress address, Function<? super T, ? extends R> reader) {
+        Shard<T> shard = shardOf(address);
+        synchronized (shard) {
+            Shard.Entry<T> entry = shard.entries.get(address);
+            return entry == null ? null : reader.apply(entry.accumulator.stateSetter());
+        }
+    }
+
+    /**
+     * Applies the given reader to the state of every aircraft of the table. Each state is read while no
+     * update of this aircraft can happen, but the shards are visited one after the other.
+     *
+     * @param reader the function extracting the wanted information from the states
+     * @param <R>    the type of the extracted information
+     * @return the list of the extracted information
+     */
+    public <R> List<R> snapshot(Function<? super T, ? extends R> reader) {
+        List<R> snapshot = new ArrayList<>();
+        for (Shard<T> shard : shards) {
+            synchronized (shard) {
+                for (Shard.Entry<T> entry : shard.entries.values())
+                    snapshot.add(reader.apply(entry.accumulator.stateSetter()));
+            }
+        }
+        return snapshot;
+    }
+
+    /**
+     * Removes the aircraft that did not send any message since the given time stamp.
+     *
+     * @param oldestTimeStampNs the time stamp (in nanoseconds) of the oldest message that keeps an aircraft in the table
+     * @return the states of the removed aircraft
+     */
+    public List<T> purge(long oldestTimeStampNs) {
+        List<T> removed = new ArrayList<>();
+        for (Shard<T> shard : shards) {
+            synchronized (shard) {
+                // The messages are not received in order of time stamp, so every aircraft of the shard is checked
+                Iterator<Shard.Entry<T>> it = shard.entries.values().iterator();
+                while (it.hasNext()) {
+                    Shard.Entry<T> entry = it.next();
+                    if (entry.lastMessageTimeStampNs >= oldestTimeStampNs) continue;
+                    removed.add(entry.accumulator.stateSetter());
+                    it.remove();
+                }
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * Returns the number of aircraft in the table
+     *
+     * @return the number of aircraft in the table
+     */
+    public int size() {
+        int size = 0;
+        for (Shard<T> shard : shards) {
+            synchronized (shard) {
+                size += shard.entries.size();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Returns the shard in which the aircraft with the given address is stored
+     *
+     * @param address the ICAO address of the aircraft
+     * @return the corresponding shard
+     */
+    private Shard<T> shardOf(IcaoAddress address) {
+        return shards[Integer.parseInt(address.string(), ICAO_ADDRESS_RADIX) % shards.length];
+    }
+
+    /**
+     * Represents a shard of the table, i.e. the accumulators of a subset of the aircraft.
+     * A shard is used as the lock protecting its own entries.
+     *
+     * @param <T> the type of the aircraft states
+     */
+    private static final class Shard<T extends AircraftStateSetter> {
+        private final Map<IcaoAddress, Entry<T>> entries = new HashMap<>();
+
+        /**
+         * Represents the accumulator of an aircraft along with the time stamp of its last message
+         *
+         * @param <T> the type of the aircraft state
+         */
+        private static final class Entry<T extends AircraftStateSetter> {
+            private final AircraftStateAccumulator<T> accumulator;
+            private long lastMessageTimeStampNs;
+
+            private Entry(AircraftStateAccumulator<T> accumulator) {
+                this.accumulator = accumulator;
+            }
+        }
+    }
+}
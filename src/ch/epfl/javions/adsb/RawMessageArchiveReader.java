@@ -0,0 +1,382 @@
+package ch.epfl.javions.adsb;
+
+import ch.epfl.javions.ByteString;
+import ch.epfl.javions.Crc24;
+import ch.epfl.javions.aircraft.IcaoAddress;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Represents a reader of an archive of raw messages, written by {@link RawMessageArchiveWriter}.
+ * The archive is made of a magic number followed by blocks, each made of an uncompressed header (the smallest and
+ * largest time stamps of the block, the unit of the differences between its time stamps, its number of messages,
+ * the size of its dictionary, the size of its columns and the size of its compressed columns), the sorted
+ * dictionary of the ICAO addresses of the block, and the compressed columns.
+ * The messages can be filtered by time range and by ICAO address. The blocks that cannot contain a message
+ * matching the filter, according to their header and dictionary, are skipped without being decompressed.
+ *
+ * @author Arthur Wolf (344200)
+ * @author Oussama Ghali (341478)
+ */
+public final class RawMessageArchiveReader implements Closeable {
+    static final int MAGIC = 0x4A415631;
+    static final int BLOCK_HEADER_SIZE = 3 * Long.BYTES + 4 * Integer.BYTES;
+    static final int ADDRESS_SIZE = 3;
+    static final int ME_START = 4;
+    static final int ME_SIZE = 7;
+    static final int CRC_START = ME_START + ME_SIZE;
+    static final int CRC_SIZE = 3;
+    private static final int TYPE_CODE_COUNT = 1 << 5;
+    // The messages are grouped by type code and, for the positions, by parity
+    static final int GROUP_COUNT = 2 * TYPE_CODE_COUNT;
+    // Position of the parity bit in the third byte of the ME attribute of a position
+    private static final int PARITY_BIT = 2;
+    private static final int PARITY_BYTE = 2;
+    private static final Crc24 CRC_24 = new Crc24(Crc24.GENERATOR);
+
+    private final FileChannel channel;
+    private final Inflater inflater = new Inflater();
+    private final ByteBuffer header = ByteBuffer.allocate(BLOCK_HEADER_SIZE);
+    private final long fromTimeStampNs;
+    private final long toTimeStampNs;
+    // The address of the messages to read, or -1 if the messages are not filtered by address
+    private final int address;
+    private final byte[] crcInput = new byte[CRC_START];
+    private long[] timeStampsNs = new long[0];
+    private byte[] bytes = new byte[0];
+    private byte[] compressed = new byte[0];
+    private byte[] columns = new byte[0];
+    private int count;
+    private int position;
+    private int blockCount;
+    private int decompressedBlockCount;
+
+    /**
+     * Opens the given archive for reading all its messages
+     *
+     * @param file The archive
+     * @throws IOException If an I/O error occurs while opening the archive, or if it is not an archive
+     */
+    public RawMessageArchiveReader(Path file) throws IOException {
+        this(file, Long.MIN_VALUE, Long.MAX_VALUE, null);
+    }
+
+    /**
+     * Opens the given archive for reading its messages whose time stamp is in the given range and, if an address is
+     * given, whose ICAO address is the given one
+     *
+     * @param file            The archive
+     * @param fromTimeStampNs The smallest time stamp of the messages to read (included)
+     * @param toTimeStampNs   The largest time stamp of the messages to read (excluded)
+     * @param address         The ICAO address of the messages to read, or null to read the messages of all aircraft
+     * @throws IOException If an I/O error occurs while opening the archive, or if it is not an archive
+     */
+    public RawMessageArchiveReader(Path file, long fromTimeStampNs, long toTimeStampNs, IcaoAddress address)
+            throws IOException {
+        this.fromTimeStampNs = fromTimeStampNs;
+        this.toTimeStampNs = toTimeStampNs;
+        this.address = address == null ? -1 : Integer.parseInt(address.string(), 16);
+
+        channel = FileChannel.open(file, StandardOpenOption.READ);
+        ByteBuffer magic = ByteBuffer.allocate(Integer.BYTES);
+        if (!readFully(magic) || magic.getInt(0) != MAGIC) {
+            channel.close();
+            throw new IOException("Not a message archive: " + file);
+        }
+    }
+
+    /**
+     * Reads the next message of the archive matching the filter
+     *
+     * @return The message, or null if the end of the archive has been reached
+     * @throws IOException If an I/O error occurs while reading the archive, or if it is corrupted
+     */
+    public RawMessage read() throws IOException {
+        while (true) {
+            for (; position < count; position++) {
+                int offset = position * RawMessage.LENGTH;
+                if (timeStampsNs[position] < fromTimeStampNs || timeStampsNs[position] >= toTimeStampNs) continue;
+                if (address >= 0 && uInt(bytes, offset + 1, ADDRESS_SIZE) != address) continue;
+
+                RawMessage message = new RawMessage(timeStampsNs[position],
+                        new ByteString(Arrays.copyOfRange(bytes, offset, offset + RawMessage.LENGTH)));
+                position++;
+                return message;
+            }
+            if (!readBlock()) return null;
+        }
+    }
+
+    /**
+     * Returns the number of blocks of the archive read so far, decompressed or skipped
+     *
+     * @return The number of blocks read
+     */
+    public int blockCount() {
+        return blockCount;
+    }
+
+    /**
+     * Returns the number of blocks of the archive decompressed so far
+     *
+     * @return The number of decompressed blocks
+     */
+    public int decompressedBlockCount() {
+        return decompressedBlockCount;
+    }
+
+    /**
+     * Closes the archive
+     *
+     * @throws IOException If an I/O error occurs while closing the archive
+     */
+    @Override
+    public void close() throws IOException {
+        inflater.end();
+        channel.close();
+    }
+
+    /**
+     * Reads the next block of the archive which may contain messages matching the filter, skipping the others
+     *
+     * @return True if a block was read, false if the end of the archive has been reached
+     * @throws IOException If an I/O error occurs while reading the archive, or if it is corrupted
+     */
+    private boolean readBlock() throws IOException {
+        while (true) {
+            header.clear();
+            if (!readFully(header)) return false;
+            header.flip();
+            long minTimeStampNs = header.getLong();
+            long maxTimeStampNs = header.getLong();
+            long timeStampUnitNs = header.getLong();
+            int recordCount = header.getInt();
+            int dictionarySize = header.getInt();
+            int columnsSize = header.getInt();
+            int compressedSize = header.getInt();
+            if (recordCount <= 0 || dictionarySize <= 0 || dictionarySize > recordCount
+                    || timeStampUnitNs <= 0 || columnsSize < 0 || compressedSize < 0)
+                throw new IOException("Corrupted message archive");
+            blockCount++;
+
+            if (maxTimeStampNs < fromTimeStampNs || minTimeStampNs >= toTimeStampNs) {
+                channel.position(channel.position() + (long) dictionarySize * ADDRESS_SIZE + compressedSize);
+                continue;
+            }
+            ByteBuffer dictionaryBytes = ByteBuffer.allocate(dictionarySize * ADDRESS_SIZE);
+            if (!readFully(dictionaryBytes)) throw new IOException("Truncated message archive");
+            int[] dictionary = new int[dictionarySize];
+            for (int i = 0; i < dictionarySize; i++)
+                dictionary[i] = uInt(dictionaryBytes.array(), i * ADDRESS_SIZE, ADDRESS_SIZE);
+            if (address >= 0 && Arrays.binarySearch(dictionary, address) < 0) {
+                channel.position(channel.position() + compressedSize);
+                continue;
+            }
+
+            if (compressed.length < compressedSize) compressed = new byte[compressedSize];
+            if (!readFully(ByteBuffer.wrap(compressed, 0, compressedSize)))
+                throw new IOException("Truncated message archive");
+            decompress(compressedSize, columnsSize);
+            decode(recordCount, columnsSize, minTimeStampNs, timeStampUnitNs, dictionary);
+            decompressedBlockCount++;
+            return true;
+        }
+    }
+
+    /**
+     * Decompresses the columns of the current block
+     *
+     * @param compressedSize The size of the compressed columns
+     * @param columnsSize    The size of the columns
+     * @throws IOException If the columns are corrupted
+     */
+    private void decompress(int compressedSize, int columnsSize) throws IOException {
+        if (columns.length < columnsSize) columns = new byte[columnsSize];
+        inflater.reset();
+        inflater.setInput(compressed, 0, compressedSize);
+        try {
+            int size = 0;
+            while (size < columnsSize && !inflater.finished() && !inflater.needsInput())
+                size += inflater.inflate(columns, size, columnsSize - size);
+            if (size != columnsSize) throw new IOException("Corrupted message archive");
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupted message archive", e);
+        }
+    }
+
+    /**
+     * Decodes the messages of the current block from its columns
+     *
+     * @param recordCount     The number of messages of the block
+     * @param columnsSize     The size of the columns of the block
+     * @param minTimeStampNs  The smallest time stamp of the block
+     * @param timeStampUnitNs The unit of the differences between the time stamps of the block
+     * @param dictionary      The ICAO addresses of the block
+     * @throws IOException If the columns are corrupted
+     */
+    private void decode(int recordCount, int columnsSize, long minTimeStampNs, long timeStampUnitNs, int[] dictionary)
+            throws IOException {
+        if (timeStampsNs.length < recordCount) {
+            timeStampsNs = new long[recordCount];
+            bytes = new byte[recordCount * RawMessage.LENGTH];
+        }
+        try {
+            // The columns of a larger previous block may follow those of the block in the array
+            ByteBuffer buffer = ByteBuffer.wrap(columns, 0, columnsSize);
+            long timeStampNs = minTimeStampNs;
+            for (int i = 0; i < recordCount; i++) {
+                long delta = getVarLong(buffer);
+                timeStampNs += ((delta >>> 1) ^ -(delta & 1)) * timeStampUnitNs;
+                timeStampsNs[i] = timeStampNs;
+            }
+            for (int i = 0; i < recordCount; i++) {
+                int address = dictionary[(int) getVarLong(buffer)];
+                for (int j = 0; j < ADDRESS_SIZE; j++)
+                    bytes[i * RawMessage.LENGTH + 1 + j] = (byte) (address >>> ((ADDRESS_SIZE - 1 - j) * Byte.SIZE));
+            }
+            for (int i = 0; i < recordCount; i++)
+                bytes[i * RawMessage.LENGTH] = buffer.get();
+
+            // The CRC differences are applied once the other bytes of the messages are known
+            int crcStart = buffer.position();
+            buffer.position(crcStart + recordCount * CRC_SIZE);
+
+            int[] groups = new int[recordCount];
+            int[] groupCounts = new int[GROUP_COUNT];
+            for (int i = 0; i < recordCount; i++) {
+                groups[i] = buffer.get() & (GROUP_COUNT - 1);
+                groupCounts[groups[i]]++;
+            }
+            int meStart = buffer.position();
+            int[] groupStarts = groupStarts(groupCounts);
+            int[] groupPositions = new int[GROUP_COUNT];
+            Map<Integer, Integer> previousRecords = new HashMap<>();
+            for (int i = 0; i < recordCount; i++) {
+                int group = groups[i];
+                int recordStart = meStart + groupStarts[group] * ME_SIZE + groupPositions[group]++;
+                Integer previous = previousRecords.put(address(bytes, i) * GROUP_COUNT + group, i);
+                for (int j = 0; j < ME_SIZE; j++) {
+                    int previousByte = previous == null ? 0 : bytes[previous * RawMessage.LENGTH + ME_START + j];
+                    bytes[i * RawMessage.LENGTH + ME_START + j] =
+                            (byte) (buffer.get(recordStart + j * groupCounts[group]) ^ previousByte);
+                }
+            }
+
+            for (int i = 0; i < recordCount; i++) {
+                int offset = i * RawMessage.LENGTH;
+                System.arraycopy(bytes, offset, crcInput, 0, crcInput.length);
+                int crcDifference = 0;
+                for (int j = 0; j < CRC_SIZE; j++)
+                    crcDifference = (crcDifference << Byte.SIZE) | (buffer.get(crcStart + j * recordCount + i) & 0xFF);
+                int crc = CRC_24.crc(crcInput) ^ crcDifference;
+                for (int j = 0; j < CRC_SIZE; j++)
+                    bytes[offset + CRC_START + j] = (byte) (crc >>> ((CRC_SIZE - 1 - j) * Byte.SIZE));
+            }
+        } catch (IndexOutOfBoundsException | BufferUnderflowException e) {
+            throw new IOException("Corrupted message archive", e);
+        }
+        count = recordCount;
+        position = 0;
+    }
+
+    /**
+     * Fills the given buffer from the archive
+     *
+     * @param buffer The buffer
+     * @return True if the buffer was filled, false if the end of the archive was reached before any byte was read
+     * @throws IOException If an I/O error occurs, or if the end of the archive is reached after some bytes were read
+     */
+    private boolean readFully(ByteBuffer buffer) throws IOException {
+        int start = buffer.position();
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                if (buffer.position() == start) return false;
+                throw new IOException("Truncated message archive");
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Reads a variable-length integer written by {@link RawMessageArchiveWriter}
+     *
+     * @param buffer The buffer
+     * @return The integer
+     */
+    private static long getVarLong(ByteBuffer buffer) {
+        long value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = buffer.get();
+            value |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while (b < 0);
+        return value;
+    }
+
+    /**
+     * Returns the unsigned big-endian integer stored in the given bytes
+     *
+     * @param bytes  The bytes
+     * @param offset The index of the first byte of the integer
+     * @param size   The number of bytes of the integer
+     * @return The integer
+     */
+    static int uInt(byte[] bytes, int offset, int size) {
+        int value = 0;
+        for (int i = 0; i < size; i++)
+            value = (value << Byte.SIZE) | (bytes[offset + i] & 0xFF);
+        return value;
+    }
+
+    /**
+     * Returns the ICAO address of the given message
+     *
+     * @param bytes The bytes of the messages, one after the other
+     * @param index The index of the message
+     * @return The ICAO address, as an integer
+     */
+    static int address(byte[] bytes, int index) {
+        return uInt(bytes, index * RawMessage.LENGTH + 1, ADDRESS_SIZE);
+    }
+
+    /**
+     * Returns the group of the given message, made of its type code and, if it is a position, its parity
+     *
+     * @param bytes The bytes of the messages, one after the other
+     * @param index The index of the message
+     * @return The group
+     */
+    static int group(byte[] bytes, int index) {
+        int offset = index * RawMessage.LENGTH + ME_START;
+        int typeCode = (bytes[offset] & 0xFF) >>> 3;
+        boolean position = (typeCode >= 9 && typeCode <= 18) || (typeCode >= 20 && typeCode <= 22);
+        int parity = position ? (bytes[offset + PARITY_BYTE] >>> PARITY_BIT) & 1 : 0;
+        return typeCode + parity * TYPE_CODE_COUNT;
+    }
+
+    /**
+     * Returns the index of the first message of each group, once the messages are sorted by group
+     *
+     * @param groupCounts The number of messages of each group
+     * @return The index of the first message of each group
+     */
+    static int[] groupStarts(int[] groupCounts) {
+        int[] starts = new int[groupCounts.length];
+        for (int i = 1; i < starts.length; i++)
+            starts[i] = starts[i - 1] + groupCounts[i - 1];
+        return starts;
+    }
+}
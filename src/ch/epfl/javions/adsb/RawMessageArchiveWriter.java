@@ -0,0 +1,278 @@
+package ch.epfl.javions.adsb;
+
+import ch.epfl.javions.Crc24;
+import ch.epfl.javions.Preconditions;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.Deflater;
+
+import static ch.epfl.javions.adsb.RawMessageArchiveReader.*;
+
+/**
+ * Represents a writer of an archive of raw messages, in the format read by {@link RawMessageArchiveReader}.
+ * The messages are grouped into blocks, and each block is stored by columns, which compress much better than the
+ * records of a log :
+ * - the time stamps, as variable-length differences between consecutive time stamps, counted in the largest unit
+ * dividing them all (for example the duration of a sample, for the messages of a demodulator),
+ * - the ICAO addresses, as indices in the sorted dictionary of the addresses of the block,
+ * - the first bytes of the messages (downlink format and capability),
+ * - the differences between the CRCs of the messages and the CRCs computed from their contents, which are all
+ * zero for the messages received without error,
+ * - the type codes of the messages, along with the parity of the positions,
+ * - the ME attributes, grouped by type code and parity and stored byte by byte, so that similar bytes are
+ * contiguous, each one being xored with the previous one of the same aircraft in its group.
+ * The columns of each block are compressed together with a Deflater, while the time range and the dictionary of
+ * the block are written uncompressed before it, so that a reader can skip the blocks it is not interested in.
+ *
+ * @author Arthur Wolf (344200)
+ * @author Oussama Ghali (341478)
+ */
+public final class RawMessageArchiveWriter implements Closeable {
+    private static final int DEFAULT_BLOCK_RECORD_COUNT = 1 << 14;
+    private static final Crc24 CRC_24 = new Crc24(Crc24.GENERATOR);
+    // Maximal size of the columns of a record: time stamp and dictionary index, as variable-length integers, first
+    // byte, CRC difference, group and ME attribute
+    private static final int MAX_ENCODED_RECORD_SIZE = 10 + 5 + 1 + CRC_SIZE + 1 + ME_SIZE;
+
+    private final FileChannel channel;
+    private final Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+    private final long[] timeStampsNs;
+    private final byte[] bytes;
+    private final ByteBuffer columns;
+    private final byte[] crcInput = new byte[RawMessage.LENGTH - CRC_SIZE];
+    private byte[] compressed;
+    private int count;
+
+    /**
+     * Creates the given archive, replacing it if it exists
+     *
+     * @param file The archive
+     * @throws IOException If an I/O error occurs while creating the archive
+     */
+    public RawMessageArchiveWriter(Path file) throws IOException {
+        this(file, DEFAULT_BLOCK_RECORD_COUNT);
+    }
+
+    /**
+     * Creates the given archive, replacing it if it exists, with blocks of at most the given number of messages
+     *
+     * @param file             The archive
+     * @param blockRecordCount The maximal number of messages of a block
+     * @throws IllegalArgumentException If the number of messages is not strictly positive
+     * @throws IOException              If an I/O error occurs while creating the archive
+     */
+    public RawMessageArchiveWriter(Path file, int blockRecordCount) throws IOException {
+        Preconditions.checkArgument(blockRecordCount > 0);
+        timeStampsNs = new long[blockRecordCount];
+        bytes = new byte[blockRecordCount * RawMessage.LENGTH];
+        columns = ByteBuffer.allocate(blockRecordCount * MAX_ENCODED_RECORD_SIZE);
+        compressed = new byte[columns.capacity() / 4];
+
+        channel = FileChannel.open(file,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+        ByteBuffer header = ByteBuffer.allocate(Integer.BYTES).putInt(MAGIC).flip();
+        while (header.hasRemaining())
+            channel.write(header);
+    }
+
+    /**
+     * Archives the given log, replacing the archive if it exists
+     *
+     * @param log     The log, in the format read by {@link RawMessageReader}
+     * @param archive The archive
+     * @throws IOException If an I/O error occurs while reading the log or writing the archive
+     */
+    public static void archive(Path log, Path archive) throws IOException {
+        try (var reader = new RawMessageReader(log); var writer = new RawMessageArchiveWriter(archive)) {
+            RawMessage message;
+            while ((message = reader.read()) != null)
+                writer.write(message);
+        }
+    }
+
+    /**
+     * Writes a message at the end of the archive
+     *
+     * @param message The message
+     * @throws IOException If an I/O error occurs while writing the archive
+     */
+    public void write(RawMessage message) throws IOException {
+        timeStampsNs[count] = message.timeStampNs();
+        for (int i = 0; i < RawMessage.LENGTH; i++)
+            bytes[count * RawMessage.LENGTH + i] = (byte) message.bytes().byteAt(i);
+        if (++count == timeStampsNs.length) writeBlock();
+    }
+
+    /**
+     * Writes the last block of the archive and closes it
+     *
+     * @throws IOException If an I/O error occurs while writing or closing the archive
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            if (count > 0) writeBlock();
+        } finally {
+            deflater.end();
+            channel.close();
+        }
+    }
+
+    /**
+     * Encodes, compresses and writes the messages of the current block
+     *
+     * @throws IOException If an I/O error occurs while writing the archive
+     */
+    private void writeBlock() throws IOException {
+        long minTimeStampNs = Long.MAX_VALUE, maxTimeStampNs = Long.MIN_VALUE;
+        int[] addresses = new int[count];
+        for (int i = 0; i < count; i++) {
+            minTimeStampNs = Math.min(minTimeStampNs, timeStampsNs[i]);
+            maxTimeStampNs = Math.max(maxTimeStampNs, timeStampsNs[i]);
+            addresses[i] = address(bytes, i);
+        }
+        int[] dictionary = Arrays.stream(addresses).sorted().distinct().toArray();
+        long timeStampUnitNs = 0;
+        for (int i = 0; i < count; i++)
+            timeStampUnitNs = gcd(timeStampUnitNs, timeStampsNs[i] - minTimeStampNs);
+        if (timeStampUnitNs == 0) timeStampUnitNs = 1;
+
+        columns.clear();
+        long previousTimeStampNs = minTimeStampNs;
+        for (int i = 0; i < count; i++) {
+            // The time stamps are increasing in a log, but the zigzag encoding keeps any order compact
+            putVarLong(columns, zigZag((timeStampsNs[i] - previousTimeStampNs) / timeStampUnitNs));
+            previousTimeStampNs = timeStampsNs[i];
+        }
+        for (int i = 0; i < count; i++)
+            putVarLong(columns, Arrays.binarySearch(dictionary, addresses[i]));
+        for (int i = 0; i < count; i++)
+            columns.put(bytes[i * RawMessage.LENGTH]);
+
+        int[] crcDifferences = new int[count];
+        for (int i = 0; i < count; i++) {
+            System.arraycopy(bytes, i * RawMessage.LENGTH, crcInput, 0, crcInput.length);
+            crcDifferences[i] = CRC_24.crc(crcInput) ^ uInt(bytes, i * RawMessage.LENGTH + CRC_START, CRC_SIZE);
+        }
+        for (int j = CRC_SIZE - 1; j >= 0; j--) {
+            for (int i = 0; i < count; i++)
+                columns.put((byte) (crcDifferences[i] >>> (j * Byte.SIZE)));
+        }
+
+        int[] groups = new int[count];
+        int[] groupCounts = new int[GROUP_COUNT];
+        for (int i = 0; i < count; i++) {
+            groups[i] = group(bytes, i);
+            columns.put((byte) groups[i]);
+            groupCounts[groups[i]]++;
+        }
+        // Each ME attribute is xored with the previous one of the same aircraft and group, which leaves only the
+        // bits that changed, for example the least significant bits of the position of the aircraft
+        byte[] mes = new byte[count * ME_SIZE];
+        Map<Integer, Integer> previousRecords = new HashMap<>();
+        for (int i = 0; i < count; i++) {
+            Integer previous = previousRecords.put(addresses[i] * GROUP_COUNT + groups[i], i);
+            for (int j = 0; j < ME_SIZE; j++) {
+                int previousByte = previous == null ? 0 : bytes[previous * RawMessage.LENGTH + ME_START + j];
+                mes[i * ME_SIZE + j] = (byte) (bytes[i * RawMessage.LENGTH + ME_START + j] ^ previousByte);
+            }
+        }
+        // The ME attributes of each group, in the order of the block, byte by byte
+        int[] recordsByGroup = new int[count];
+        int[] nextPositions = groupStarts(groupCounts);
+        for (int i = 0; i < count; i++)
+            recordsByGroup[nextPositions[groups[i]]++] = i;
+        int groupStart = 0;
+        for (int groupCount : groupCounts) {
+            for (int j = 0; j < ME_SIZE; j++) {
+                for (int k = groupStart; k < groupStart + groupCount; k++)
+                    columns.put(mes[recordsByGroup[k] * ME_SIZE + j]);
+            }
+            groupStart += groupCount;
+        }
+        columns.flip();
+
+        int compressedSize = compress();
+        ByteBuffer block = ByteBuffer.allocate(BLOCK_HEADER_SIZE + dictionary.length * ADDRESS_SIZE + compressedSize)
+                .putLong(minTimeStampNs)
+                .putLong(maxTimeStampNs)
+                .putLong(timeStampUnitNs)
+                .putInt(count)
+                .putInt(dictionary.length)
+                .putInt(columns.limit())
+                .putInt(compressedSize);
+        for (int address : dictionary) {
+            for (int j = ADDRESS_SIZE - 1; j >= 0; j--)
+                block.put((byte) (address >>> (j * Byte.SIZE)));
+        }
+        block.put(compressed, 0, compressedSize).flip();
+        while (block.hasRemaining())
+            channel.write(block);
+        count = 0;
+    }
+
+    /**
+     * Compresses the columns of the current block into the array of compressed bytes, enlarged if needed
+     *
+     * @return The number of compressed bytes
+     */
+    private int compress() {
+        deflater.reset();
+        deflater.setInput(columns.array(), 0, columns.limit());
+        deflater.finish();
+        int size = 0;
+        while (!deflater.finished()) {
+            if (size == compressed.length) compressed = Arrays.copyOf(compressed, 2 * compressed.length);
+            size += deflater.deflate(compressed, size, compressed.length - size);
+        }
+        return size;
+    }
+
+    /**
+     * Writes the given unsigned long as a variable-length integer, seven bits per byte, least significant first
+     *
+     * @param buffer The buffer
+     * @param value  The value, considered as unsigned
+     */
+    private static void putVarLong(ByteBuffer buffer, long value) {
+        while ((value & ~0x7FL) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    /**
+     * Returns the greatest common divisor of the given non-negative longs
+     *
+     * @param a The first long
+     * @param b The second long
+     * @return The greatest common divisor, 0 if both longs are 0
+     */
+    private static long gcd(long a, long b) {
+        while (b != 0) {
+            long r = a % b;
+            a = b;
+            b = r;
+        }
+        return a;
+    }
+
+    /**
+     * Maps a signed long to an unsigned one, small in absolute value if the signed one is small in absolute value
+     *
+     * @param value The signed long
+     * @return The encoded long
+     */
+    private static long zigZag(long value) {
+        return (value << 1) ^ (value >> (Long.SIZE - 1));
+    }
+}
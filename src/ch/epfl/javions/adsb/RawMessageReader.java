@@ -0,0 +1,171 @@
+package ch.epfl.javions.adsb;
+
+import ch.epfl.javions.ByteString;
+import ch.epfl.javions.Preconditions;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Represents a reader of a log of raw messages, in which each message is stored as its time stamp (a big-endian
+ * long) followed by its 14 bytes.
+ * The log is read through a large direct buffer, by blocks of many records, and the records can be decoded in bulk
+ * into arrays reused by the caller, so that reading a log does not create any object per message.
+ * A partial record at the end of the log, for example written by an interrupted recording, is ignored.
+ *
+ * @author Arthur Wolf (344200)
+ * @author Oussama Ghali (341478)
+ */
+public final class RawMessageReader implements Closeable {
+    /**
+     * The size of a record of the log, in bytes
+     */
+    public static final int RECORD_SIZE = Long.BYTES + RawMessage.LENGTH;
+    private static final int DEFAULT_BUFFER_RECORD_COUNT = 1 << 16;
+
+    private final FileChannel channel;
+    private final ByteBuffer buffer;
+    private final ByteBuffer timeStampBuffer = ByteBuffer.allocate(Long.BYTES);
+    private boolean endOfFile;
+
+    /**
+     * Opens the given log for reading
+     *
+     * @param file The log
+     * @throws IOException If an I/O error occurs while opening the log
+     */
+    public RawMessageReader(Path file) throws IOException {
+        this(file, DEFAULT_BUFFER_RECORD_COUNT);
+    }
+
+    /**
+     * Opens the given log for reading, with a buffer of the given number of records
+     *
+     * @param file              The log
+     * @param bufferRecordCount The number of records of the buffer
+     * @throws IllegalArgumentException If the number of records is not strictly positive
+     * @throws IOException              If an I/O error occurs while opening the log
+     */
+    public RawMessageReader(Path file, int bufferRecordCount) throws IOException {
+        Preconditions.checkArgument(bufferRecordCount > 0);
+        channel = FileChannel.open(file, StandardOpenOption.READ);
+        buffer = ByteBuffer.allocateDirect(bufferRecordCount * RECORD_SIZE).flip();
+    }
+
+    /**
+     * Reads the next message of the log
+     *
+     * @return The message, or null if the end of the log has been reached
+     * @throws IOException If an I/O error occurs while reading the log
+     */
+    public RawMessage read() throws IOException {
+        if (!fill()) return null;
+
+        long timeStampNs = buffer.getLong();
+        byte[] bytes = new byte[RawMessage.LENGTH];
+        buffer.get(bytes);
+        return new RawMessage(timeStampNs, new ByteString(bytes));
+    }
+
+    /**
+     * Reads the next messages of the log, at most as many as the length of the given array of time stamps.
+     * The time stamp of the i-th message read is stored at index i of the array of time stamps, and its bytes
+     * from index 14 * i of the array of bytes.
+     *
+     * @param timeStampsNs The array in which the time stamps of the messages are stored
+     * @param bytes        The array in which the bytes of the messages are stored
+     * @return The number of messages read, 0 if the end of the log has been reached
+     * @throws IllegalArgumentException If the array of bytes is too small for the array of time stamps
+     * @throws IOException              If an I/O error occurs while reading the log
+     */
+    public int read(long[] timeStampsNs, byte[] bytes) throws IOException {
+        Preconditions.checkArgument(bytes.length >= (long) timeStampsNs.length * RawMessage.LENGTH);
+
+        int count = 0;
+        while (count < timeStampsNs.length && fill()) {
+            int available = Math.min(timeStampsNs.length - count, buffer.remaining() / RECORD_SIZE);
+            for (int i = 0; i < available; i++, count++) {
+                timeStampsNs[count] = buffer.getLong();
+                buffer.get(bytes, count * RawMessage.LENGTH, RawMessage.LENGTH);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Returns the number of complete records of the log
+     *
+     * @return The number of records
+     * @throws IOException If an I/O error occurs while reading the size of the log
+     */
+    public long recordCount() throws IOException {
+        return channel.size() / RECORD_SIZE;
+    }
+
+    /**
+     * Moves the reader to the given record, which is the next one read
+     *
+     * @param recordIndex The index of the record
+     * @throws IllegalArgumentException If the index is negative
+     * @throws IOException              If an I/O error occurs while moving in the log
+     */
+    public void seek(long recordIndex) throws IOException {
+        Preconditions.checkArgument(recordIndex >= 0);
+        channel.position(recordIndex * RECORD_SIZE);
+        buffer.clear().flip();
+        endOfFile = false;
+    }
+
+    /**
+     * Returns the time stamp of the given record, without moving the reader
+     *
+     * @param recordIndex The index of the record
+     * @return The time stamp of the record, in nanoseconds
+     * @throws IndexOutOfBoundsException If there is no such record
+     * @throws IOException               If an I/O error occurs while reading the log
+     */
+    public long timeStampNsAt(long recordIndex) throws IOException {
+        if (recordIndex < 0 || recordIndex >= recordCount()) throw new IndexOutOfBoundsException();
+        timeStampBuffer.clear();
+        while (timeStampBuffer.hasRemaining()) {
+            if (channel.read(timeStampBuffer, recordIndex * RECORD_SIZE + timeStampBuffer.position()) < 0)
+                throw new IOException("Truncated log");
+        }
+        return timeStampBuffer.getLong(0);
+    }
+
+    /**
+     * Closes the log
+     *
+     * @throws IOException If an I/O error occurs while closing the log
+     */
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Makes sure that the buffer contains at least one complete record, reading the next block of the log if needed
+     *
+     * @return True if the buffer contains a complete record, false if the end of the log has been reached
+     * @throws IOException If an I/O error occurs while reading the log
+     */
+    private boolean fill() throws IOException {
+        if (buffer.remaining() >= RECORD_SIZE) return true;
+        if (endOfFile) return false;
+
+        buffer.compact();
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                endOfFile = true;
+                break;
+            }
+        }
+        buffer.flip();
+        return buffer.remaining() >= RECORD_SIZE;
+    }
+}
@@ -0,0 +1,149 @@
+package ch.epfl.javions.adsb;
+
+import ch.epfl.javions.Preconditions;
+import ch.epfl.javions.RingBuffer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Represents a recorder of raw messages, writing them to rolling logs in the format read by
+ * {@link RawMessageReader}. A new log is started when the current one reaches a maximal size, or when it covers a
+ * maximal duration. The time stamps of each log are relative to its first message, so that every log can be
+ * replayed on its own, and the logs are named after the time at which they were started.
+ * The messages are handed to a dedicated writer thread through a bounded queue, so that recording a message never
+ * blocks : if the writer falls behind and the queue is full, the new messages are dropped. The writer writes all
+ * the messages waiting in the queue at once, with a single write to the log.
+ *
+ * @author Arthur Wolf (344200)
+ * @author Oussama Ghali (341478)
+ */
+public final class RawMessageRecorder implements Closeable {
+    private static final int QUEUE_CAPACITY = 1 << 16;
+    // Time waited by the writer before checking again if there are messages in the queue
+    private static final long IDLE_PARK_TIME_NS = 10_000_000;
+    private static final DateTimeFormatter LOG_NAME_FORMATTER = DateTimeFormatter.ofPattern("yyyyMMdd_HHmmss");
+
+    private final Path directory;
+    private final long maxLogSizeInBytes;
+    private final long maxLogDurationNs;
+    private final RingBuffer<RawMessage> queue = new RingBuffer<>(QUEUE_CAPACITY, RingBuffer.OverflowPolicy.DROP_NEWEST);
+    private final Thread writerThread;
+    private volatile boolean closed;
+    private volatile IOException error;
+
+    // Only accessed by the writer thread
+    private RawMessageWriter writer;
+    private long logStartTimeStampNs;
+    private int logCount;
+
+    /**
+     * Constructs a recorder writing its logs to the given directory, created if needed
+     *
+     * @param directory         The directory of the logs
+     * @param maxLogSizeInBytes The maximal size of a log, in bytes
+     * @param maxLogDurationNs  The maximal duration covered by a log, in nanoseconds
+     * @throws IllegalArgumentException If the maximal size is smaller than a record, or the maximal duration is not
+     *                                  strictly positive
+     * @throws IOException              If the directory cannot be created
+     */
+    public RawMessageRecorder(Path directory, long maxLogSizeInBytes, long maxLogDurationNs) throws IOException {
+        Preconditions.checkArgument(maxLogSizeInBytes >= RawMessageReader.RECORD_SIZE && maxLogDurationNs > 0);
+        this.directory = Files.createDirectories(directory);
+        this.maxLogSizeInBytes = maxLogSizeInBytes;
+        this.maxLogDurationNs = maxLogDurationNs;
+
+        writerThread = new Thread(this::writeMessages, "raw-message-recorder");
+        // The recorder is closed by its owner, the writer must not keep the application alive
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    /**
+     * Records the given message, without blocking. Must only be called by a single thread.
+     *
+     * @param message The message
+     * @return True if the message will be written, false if it was dropped because the writer is behind, failed
+     * or the recorder is closed
+     */
+    public boolean record(RawMessage message) {
+        if (closed || error != null) return false;
+        return queue.offer(message);
+    }
+
+    /**
+     * Returns the number of messages dropped because the writer was behind
+     *
+     * @return The number of dropped messages
+     */
+    public long droppedCount() {
+        return queue.droppedCount();
+    }
+
+    /**
+     * Writes the messages recorded so far, and closes the current log
+     *
+     * @throws IOException If an I/O error occurred while writing the logs
+     */
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        LockSupport.unpark(writerThread);
+        try {
+            writerThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (error != null) throw error;
+    }
+
+    /**
+     * Writes the recorded messages until the recorder is closed, or an I/O error occurs. Run by the writer thread.
+     */
+    private void writeMessages() {
+        try {
+            try {
+                while (true) {
+                    // The messages recorded before the closing are all in the queue, and written below
+                    boolean closing = closed;
+                    RawMessage message;
+                    while ((message = queue.poll()) != null)
+                        write(message);
+                    if (writer != null) writer.flush();
+
+                    if (closing) break;
+                    LockSupport.parkNanos(IDLE_PARK_TIME_NS);
+                }
+            } finally {
+                if (writer != null) writer.close();
+            }
+        } catch (IOException e) {
+            error = e;
+        }
+    }
+
+    /**
+     * Writes a message to the current log, starting a new one if needed
+     *
+     * @param message The message
+     * @throws IOException If an I/O error occurs while writing the logs
+     */
+    private void write(RawMessage message) throws IOException {
+        if (writer == null
+                || writer.size() + RawMessageReader.RECORD_SIZE > maxLogSizeInBytes
+                || message.timeStampNs() - logStartTimeStampNs >= maxLogDurationNs) {
+            if (writer != null) writer.close();
+            // The index of the log orders the logs started during the same second
+            String name = String.format("messages_%s_%03d.bin", LocalDateTime.now().format(LOG_NAME_FORMATTER), logCount++);
+            writer = new RawMessageWriter(directory.resolve(name));
+            logStartTimeStampNs = message.timeStampNs();
+        }
+        long timeStampNs = Math.max(0, message.timeStampNs() - logStartTimeStampNs);
+        writer.write(new RawMessage(timeStampNs, message.bytes()));
+    }
+}
@@ -0,0 +1,173 @@
+package ch.epfl.javions.adsb;
+
+import ch.epfl.javions.Preconditions;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Represents the replay of a log of raw messages, whose time stamps must be increasing. Each message is returned
+ * when it is due, i.e. once the time elapsed since the start of the replay, multiplied by the speed of the replay,
+ * reaches the time elapsed in the log since its first message. The replay can also be unthrottled, in which case
+ * the messages are returned as fast as they can be read.
+ * The replayer waits with LockSupport.parkNanos until the next message is due, and returns all the messages that
+ * are already due without waiting, so that a burst of messages does not cost one wait per message.
+ * A sparse index of the time stamps of the log, containing one record out of 4096, is built when the replay is
+ * opened, so that seeking to a time stamp only requires to read a few records.
+ * The speed can be changed and the replay moved while it is running, by another thread than the one reading the
+ * messages.
+ *
+ * @author Arthur Wolf (344200)
+ * @author Oussama Ghali (341478)
+ */
+public final class RawMessageReplay implements Closeable {
+    /**
+     * The speed of a replay in which the messages are returned as fast as they can be read
+     */
+    public static final double UNTHROTTLED = Double.POSITIVE_INFINITY;
+    private static final int INDEX_INTERVAL = 1 << 12;
+    // Maximal time waited at once, so that the changes of speed and the seeks are taken into account quickly
+    private static final long MAX_PARK_TIME_NS = 10_000_000;
+
+    private final RawMessageReader reader;
+    // Time stamp of every INDEX_INTERVAL-th record of the log
+    private final long[] indexTimeStampsNs;
+    private double speed;
+    // Next message to return, already read, or null if the next message has not been read yet
+    private RawMessage pendingMessage;
+    // The pending message is due when the time elapsed since anchorNanoTime, multiplied by the speed, is equal to
+    // the difference between its time stamp and anchorTimeStampNs
+    private boolean anchored;
+    private long anchorTimeStampNs;
+    private long anchorNanoTime;
+
+    /**
+     * Opens the replay of the given log, at the given speed
+     *
+     * @param log   The log
+     * @param speed The speed of the replay, strictly positive, or UNTHROTTLED
+     * @throws IllegalArgumentException If the speed is not strictly positive
+     * @throws IOException              If an I/O error occurs while opening or indexing the log
+     */
+    public RawMessageReplay(Path log, double speed) throws IOException {
+        Preconditions.checkArgument(speed > 0);
+        this.speed = speed;
+        reader = new RawMessageReader(log);
+
+        long recordCount = reader.recordCount();
+        indexTimeStampsNs = new long[(int) ((recordCount + INDEX_INTERVAL - 1) / INDEX_INTERVAL)];
+        for (int i = 0; i < indexTimeStampsNs.length; i++)
+            indexTimeStampsNs[i] = reader.timeStampNsAt((long) i * INDEX_INTERVAL);
+    }
+
+    /**
+     * Returns the next message of the log, waiting until it is due
+     *
+     * @return The next message, or null if the end of the log has been reached
+     * @throws IOException If an I/O error occurs while reading the log
+     */
+    public RawMessage next() throws IOException {
+        while (true) {
+            long delayNs;
+            synchronized (this) {
+                if (pendingMessage == null) pendingMessage = reader.read();
+                if (pendingMessage == null) return null;
+
+                long now = System.nanoTime();
+                // The first message after the opening, a seek or the end of an unthrottled replay is due at once
+                if (!anchored) anchor(pendingMessage.timeStampNs(), now);
+                delayNs = speed == UNTHROTTLED
+                        ? 0
+                        : anchorNanoTime + (long) ((pendingMessage.timeStampNs() - anchorTimeStampNs) / speed) - now;
+                if (delayNs <= 0) {
+                    RawMessage message = pendingMessage;
+                    pendingMessage = null;
+                    return message;
+                }
+            }
+            // The lock is released while waiting, so that the speed can be changed and the replay moved meanwhile
+            LockSupport.parkNanos(Math.min(delayNs, MAX_PARK_TIME_NS));
+            if (Thread.interrupted()) throw new IOException("Replay interrupted");
+        }
+    }
+
+    /**
+     * Changes the speed of the replay, from the current position in the log
+     *
+     * @param speed The new speed of the replay, strictly positive, or UNTHROTTLED
+     * @throws IllegalArgumentException If the speed is not strictly positive
+     */
+    public synchronized void setSpeed(double speed) {
+        Preconditions.checkArgument(speed > 0);
+        if (anchored) {
+            if (this.speed == UNTHROTTLED) {
+                anchored = false;
+            } else {
+                // The current position in the log becomes the new reference of the replay
+                long now = System.nanoTime();
+                anchor(anchorTimeStampNs + (long) ((now - anchorNanoTime) * this.speed), now);
+            }
+        }
+        this.speed = speed;
+    }
+
+    /**
+     * Returns the speed of the replay
+     *
+     * @return The speed of the replay, or UNTHROTTLED
+     */
+    public synchronized double speed() {
+        return speed;
+    }
+
+    /**
+     * Moves the replay to the first message whose time stamp is greater than or equal to the given one, which is
+     * returned at once by the next call to next
+     *
+     * @param timeStampNs The time stamp, in nanoseconds
+     * @throws IOException If an I/O error occurs while reading the log
+     */
+    public synchronized void seek(long timeStampNs) throws IOException {
+        // The last indexed record whose time stamp is strictly smaller than the given one, the following ones being
+        // read until the time stamp. On an exact hit, the records preceding the first indexed record with the time
+        // stamp may have it too.
+        int indexEntry = Arrays.binarySearch(indexTimeStampsNs, timeStampNs);
+        if (indexEntry < 0) {
+            indexEntry = -indexEntry - 2;
+        } else {
+            while (indexEntry > 0 && indexTimeStampsNs[indexEntry - 1] == timeStampNs) indexEntry--;
+            indexEntry--;
+        }
+        reader.seek((long) Math.max(0, indexEntry) * INDEX_INTERVAL);
+
+        do {
+            pendingMessage = reader.read();
+        } while (pendingMessage != null && pendingMessage.timeStampNs() < timeStampNs);
+        anchored = false;
+    }
+
+    /**
+     * Closes the log
+     *
+     * @throws IOException If an I/O error occurs while closing the log
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        reader.close();
+    }
+
+    /**
+     * Makes the message with the given time stamp due at the given time
+     *
+     * @param timeStampNs The time stamp of the message
+     * @param nanoTime    The time at which it is due, as given by System.nanoTime
+     */
+    private void anchor(long timeStampNs, long nanoTime) {
+        anchored = true;
+        anchorTimeStampNs = timeStampNs;
+        anchorNanoTime = nanoTime;
+    }
+}
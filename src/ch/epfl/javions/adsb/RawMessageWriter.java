@@ -0,0 +1,129 @@
+package ch.epfl.javions.adsb;
+
+import ch.epfl.javions.ByteString;
+import ch.epfl.javions.Preconditions;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static ch.epfl.javions.adsb.RawMessageReader.RECORD_SIZE;
+
+/**
+ * Represents a writer of a log of raw messages, in the format read by {@link RawMessageReader}.
+ * The records are accumulated in a large direct buffer, which is written to the log when it is full, when the
+ * writer is flushed and when it is closed.
+ *
+ * @author Arthur Wolf (344200)
+ * @author Oussama Ghali (341478)
+ */
+public final class RawMessageWriter implements Closeable, Flushable {
+    private static final int DEFAULT_BUFFER_RECORD_COUNT = 1 << 16;
+
+    private final FileChannel channel;
+    private final ByteBuffer buffer;
+    private long size;
+
+    /**
+     * Creates the given log, replacing it if it exists
+     *
+     * @param file The log
+     * @throws IOException If an I/O error occurs while creating the log
+     */
+    public RawMessageWriter(Path file) throws IOException {
+        this(file, DEFAULT_BUFFER_RECORD_COUNT);
+    }
+
+    /**
+     * Creates the given log, replacing it if it exists, with a buffer of the given number of records
+     *
+     * @param file              The log
+     * @param bufferRecordCount The number of records of the buffer
+     * @throws IllegalArgumentException If the number of records is not strictly positive
+     * @throws IOException              If an I/O error occurs while creating the log
+     */
+    public RawMessageWriter(Path file, int bufferRecordCount) throws IOException {
+        Preconditions.checkArgument(bufferRecordCount > 0);
+        channel = FileChannel.open(file,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+        buffer = ByteBuffer.allocateDirect(bufferRecordCount * RECORD_SIZE);
+    }
+
+    /**
+     * Writes a message at the end of the log
+     *
+     * @param message The message
+     * @throws IOException If an I/O error occurs while writing the log
+     */
+    public void write(RawMessage message) throws IOException {
+        if (buffer.remaining() < RECORD_SIZE) flush();
+
+        ByteString bytes = message.bytes();
+        buffer.putLong(message.timeStampNs());
+        for (int i = 0; i < RawMessage.LENGTH; i++)
+            buffer.put((byte) bytes.byteAt(i));
+        size += RECORD_SIZE;
+    }
+
+    /**
+     * Writes the given messages at the end of the log. The time stamp of the i-th message is at index i of the
+     * array of time stamps, and its bytes from index 14 * i of the array of bytes.
+     *
+     * @param timeStampsNs The time stamps of the messages
+     * @param bytes        The bytes of the messages
+     * @param count        The number of messages to write
+     * @throws IndexOutOfBoundsException If one of the arrays contains less than the given number of messages
+     * @throws IOException               If an I/O error occurs while writing the log
+     */
+    public void write(long[] timeStampsNs, byte[] bytes, int count) throws IOException {
+        if (count > timeStampsNs.length || (long) count * RawMessage.LENGTH > bytes.length)
+            throw new IndexOutOfBoundsException();
+
+        for (int i = 0; i < count; i++) {
+            if (buffer.remaining() < RECORD_SIZE) flush();
+            buffer.putLong(timeStampsNs[i]);
+            buffer.put(bytes, i * RawMessage.LENGTH, RawMessage.LENGTH);
+        }
+        size += (long) count * RECORD_SIZE;
+    }
+
+    /**
+     * Returns the size of the log, including the records not written yet
+     *
+     * @return The size of the log, in bytes
+     */
+    public long size() {
+        return size;
+    }
+
+    /**
+     * Writes the buffered records to the log
+     *
+     * @throws IOException If an I/O error occurs while writing the log
+     */
+    @Override
+    public void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining())
+            channel.write(buffer);
+        buffer.clear();
+    }
+
+    /**
+     * Writes the buffered records to the log and closes it
+     *
+     * @throws IOException If an I/O error occurs while writing or closing the log
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            channel.close();
+        }
+    }
+}
@@ -2,69 +2,358 @@ package ch.epfl.javions.aircraft;
 
 import java.io.*;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.BitSet;
+import java.util.Collections;
 import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
 
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
 /**
- * Represents the mictronics database of aircraft
+ * Represents the mictronics database of aircraft.
+ * By default, the ZIP file of the database is read each time an aircraft is searched, the file being kept open and
+ * its recently used entries cached in memory until the database is closed. The database can also
+ * be loaded once in a compact in-memory index, so that searching an aircraft requires no I/O, or memory-mapped
+ * from a file containing this index.
+ * Except in the default mode, the set of the addresses in the database is known, as a bit set of 2 MB covering the
+ * whole 24-bit address space, so that an address that is not in the database is rejected in constant time.
+ * The database can be reloaded while it is used, for example when its file is replaced by a newer version : the
+ * new contents are loaded in the same mode as the current ones, and replace them atomically once loaded.
  *
  * @author Arthur Wolf (344200)
  * @author Oussama Ghali (341478)
  */
-public class AircraftDatabase {
+public class AircraftDatabase implements Closeable {
+    private static final long DEFAULT_ENTRY_CACHE_SIZE_IN_BYTES = 16L << 20;
+    private static final long DEFAULT_QUIET_PERIOD_MS = 2_000;
+
     private final String filename;
+    // Loads the contents of the database, in the mode of the database
+    private final ContentsLoader loader;
+    private volatile Contents contents;
+
+    /**
+     * Represents the statistics of the loading of an in-memory index
+     *
+     * @param aircraftCount The number of aircraft in the index
+     * @param stringCount   The number of distinct strings in the index
+     * @param sizeInBytes   The size of the index, in bytes
+     * @param loadTimeNs    The time taken to load the index, in nanoseconds
+     */
+    public record IndexStatistics(int aircraftCount, int stringCount, long sizeInBytes, long loadTimeNs) {
+    }
+
+    /**
+     * Represents the loaded contents of the database
+     *
+     * @param zip             The ZIP file of the database, or null if there is an index
+     * @param index           The in-memory index of the database, or null if the ZIP file is read on each search
+     * @param indexStatistics The statistics of the loading of the index, or null if there is no index
+     * @param knownAddresses  The addresses of the aircraft of the database, indexed by their value,
+     *                        or null if they are not known
+     */
+    private record Contents(AircraftZip zip, AircraftIndex index, IndexStatistics indexStatistics,
+                            BitSet knownAddresses) implements Closeable {
+        private AircraftData get(IcaoAddress address) throws IOException {
+            if (knownAddresses != null && !knownAddresses.get(Integer.parseInt(address.string(), 16))) return null;
+            return index != null ? index.get(address) : zip.get(address);
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (zip != null) zip.close();
+        }
+    }
+
+    @FunctionalInterface
+    private interface ContentsLoader {
+        /**
+         * Loads the contents of the database
+         *
+         * @param reload True if the database file changed since the contents were last loaded
+         * @return The contents of the database
+         * @throws IOException If an I/O error occurs while loading the contents
+         */
+        Contents load(boolean reload) throws IOException;
+    }
 
     /**
-     * Creates a new AircraftDatabase
+     * Creates a new AircraftDatabase, caching at most 16 MB of decompressed entries of its ZIP file
      *
      * @param filename the name of the file containing the aircraft database
      * @throws NullPointerException if the filename is null
      */
     public AircraftDatabase(String filename) {
+        this(filename, DEFAULT_ENTRY_CACHE_SIZE_IN_BYTES);
+    }
+
+    /**
+     * Creates a new AircraftDatabase, caching at most the given size of decompressed entries of its ZIP file
+     *
+     * @param filename              the name of the file containing the aircraft database
+     * @param entryCacheSizeInBytes the maximal total size of the cached entries, in bytes
+     * @throws NullPointerException     if the filename is null
+     * @throws IllegalArgumentException if the size of the cache is not strictly positive
+     */
+    public AircraftDatabase(String filename, long entryCacheSizeInBytes) {
         this.filename = Objects.requireNonNull(filename);
+        this.loader = reload -> new Contents(new AircraftZip(filename, entryCacheSizeInBytes), null, null, null);
+        this.contents = new Contents(new AircraftZip(filename, entryCacheSizeInBytes), null, null, null);
+    }
+
+    private AircraftDatabase(String filename, ContentsLoader loader) throws IOException {
+        this.filename = filename;
+        this.loader = loader;
+        this.contents = loader.load(false);
     }
 
     /**
-     * Returns the AircraftData of the aircraft with the given ICAO address
+     * Creates a new AircraftDatabase whose ZIP file is read each time an aircraft is searched, except if it is not
+     * in the database. The addresses in the database are read once, when it is created.
+     *
+     * @param filename the name of the file containing the aircraft database
+     * @return the database, filtered
+     * @throws NullPointerException if the filename is null
+     * @throws IOException          if an I/O error occurs while reading the addresses of the database
+     */
+    public static AircraftDatabase filtered(String filename) throws IOException {
+        Objects.requireNonNull(filename);
+        return new AircraftDatabase(filename, reload -> filteredContents(filename));
+    }
+
+    /**
+     * Creates a new AircraftDatabase whose aircraft are all loaded at once in an in-memory index
+     *
+     * @param filename the name of the file containing the aircraft database
+     * @return the database, indexed
+     * @throws NullPointerException if the filename is null
+     * @throws IOException          if an I/O error occurs while loading the database
+     */
+    public static AircraftDatabase indexed(String filename) throws IOException {
+        Objects.requireNonNull(filename);
+        return new AircraftDatabase(filename, reload -> {
+            long start = System.nanoTime();
+            return indexedContents(AircraftIndex.build(filename), start);
+        });
+    }
+
+    /**
+     * Creates a new AircraftDatabase whose aircraft are all in an index memory-mapped from the given file.
+     * If the index file does not exist, is older than the database or is invalid, it is first rebuilt from the
+     * database, so that only the first start after an update of the database has to read all of it.
+     *
+     * @param filename  the name of the file containing the aircraft database
+     * @param indexFile the file containing the index of the database, created if needed
+     * @return the database, indexed
+     * @throws NullPointerException if the filename or the index file is null
+     * @throws IOException          if an I/O error occurs while loading the database or its index
+     */
+    public static AircraftDatabase mapped(String filename, Path indexFile) throws IOException {
+        Objects.requireNonNull(filename);
+        Objects.requireNonNull(indexFile);
+        return new AircraftDatabase(filename, reload -> mappedContents(filename, indexFile, reload));
+    }
+
+    /**
+     * Loads the contents of a database read on each search, along with the set of its addresses
+     *
+     * @param filename the name of the file containing the aircraft database
+     * @return the contents of the database
+     * @throws IOException if an I/O error occurs while reading the addresses of the database
+     */
+    private static Contents filteredContents(String filename) throws IOException {
+        BitSet knownAddresses = new BitSet(1 << IcaoAddress.BITS);
+        try (ZipFile zip = new ZipFile(filename)) {
+            for (ZipEntry entry : Collections.list(zip.entries())) {
+                if (entry.isDirectory()) continue;
+                try (BufferedReader reader = new BufferedReader(
+                        new InputStreamReader(zip.getInputStream(entry), StandardCharsets.UTF_8))) {
+                    String line;
+                    while ((line = reader.readLine()) != null) {
+                        int comma = line.indexOf(',');
+                        int address = comma < 0 ? -1 : AircraftIndex.parseAddress(line.substring(0, comma));
+                        if (address >= 0) knownAddresses.set(address);
+                    }
+                }
+            }
+        }
+        return new Contents(new AircraftZip(filename, DEFAULT_ENTRY_CACHE_SIZE_IN_BYTES), null, null, knownAddresses);
+    }
+
+    /**
+     * Loads the contents of a database whose index is memory-mapped from the given file, rebuilding it if needed
+     *
+     * @param filename  the name of the file containing the aircraft database
+     * @param indexFile the file containing the index of the database
+     * @param rebuild   true if the index has to be rebuilt even if it seems up-to-date
+     * @return the contents of the database
+     * @throws IOException if an I/O error occurs while loading the database or its index
+     */
+    private static Contents mappedContents(String filename, Path indexFile, boolean rebuild) throws IOException {
+        long start = System.nanoTime();
+        AircraftIndex index = null;
+        if (!rebuild && Files.exists(indexFile)
+                && Files.getLastModifiedTime(indexFile).compareTo(Files.getLastModifiedTime(Path.of(filename))) >= 0) {
+            try {
+                index = AircraftIndex.map(indexFile);
+            } catch (IOException e) {
+                // The index file is invalid, and is rebuilt below
+            }
+        }
+        if (index == null) {
+            AircraftIndex builtIndex = AircraftIndex.build(filename);
+            builtIndex.write(indexFile);
+            index = AircraftIndex.map(indexFile);
+        }
+        return indexedContents(index, start);
+    }
+
+    /**
+     * Returns the contents of a database with the given index
+     *
+     * @param index the index of the database
+     * @param start the time at which the loading of the index started, in nanoseconds
+     * @return the contents of the database
+     */
+    private static Contents indexedContents(AircraftIndex index, long start) {
+        BitSet knownAddresses = index.addressSet();
+        IndexStatistics statistics = new IndexStatistics(
+                index.aircraftCount(), index.stringCount(), index.sizeInBytes(), System.nanoTime() - start);
+        return new Contents(null, index, statistics, knownAddresses);
+    }
+
+    /**
+     * Returns the statistics of the loading of the in-memory index of the database
+     *
+     * @return the statistics, or null if the database is not indexed
+     */
+    public IndexStatistics indexStatistics() {
+        return contents.indexStatistics();
+    }
+
+    /**
+     * Returns the AircraftData of the aircraft with the given ICAO address. This method can be called concurrently,
+     * including while the database is reloaded.
      *
      * @param address the ICAO address of the aircraft
-     * @return the AircraftData of the aircraft with the given ICAO address
-     * @throws IOException if an I/O error occurs
+     * @return the AircraftData of the aircraft with the given ICAO address, or null if it is not in the database
+     * @throws IOException if an I/O error occurs, or if the database is closed
      */
     public AircraftData get(IcaoAddress address) throws IOException {
-        // store the last two digits of the address in a variable
-        String lastTwoDigits = address.string().substring(4);
-
-        try (ZipFile zip = new ZipFile(filename);
-             InputStream inputStream = zip.getInputStream(zip.getEntry(lastTwoDigits + ".csv"));
-             Reader reader = new InputStreamReader(inputStream, StandardCharsets.UTF_8);
-             BufferedReader bufferedReader = new BufferedReader(reader)) {
-
-            String line;
-            // read the file line by line, if the ICAO address we search for has a bigger hexadecimal value than
-            // the address of the next line, we stop searching for it since the addresses are sorted in the file
-            while (true) {
-                if ((line = bufferedReader.readLine()) != null) {
-                    int compare = line.split(",", -1)[0].compareTo(address.string());
-                    if (compare > 0) {
-                        return null;
+        Contents searchedContents = contents;
+        try {
+            return searchedContents.get(address);
+        } catch (IOException e) {
+            // The searched contents may have been replaced and closed during the search
+            if (searchedContents != contents) return get(address);
+            throw e;
+        }
+    }
+
+    /**
+     * Reloads the database from its file, in the same mode. The current contents are used until the new ones are
+     * loaded, and are kept if the loading fails.
+     *
+     * @throws IOException if an I/O error occurs while loading the database
+     */
+    public synchronized void reload() throws IOException {
+        Contents oldContents = contents;
+        contents = loader.load(true);
+        oldContents.close();
+    }
+
+    /**
+     * Watches the file of the database, and reloads the database in the background each time the file is
+     * modified or replaced, once it has not been modified for two seconds.
+     *
+     * @param onReload the action to run on the watching thread after each successful reload
+     * @return a handle that stops watching the file when it is closed
+     * @throws NullPointerException if the action is null
+     * @throws IOException          if an I/O error occurs while starting to watch the file
+     */
+    public Closeable watch(Runnable onReload) throws IOException {
+        return watch(DEFAULT_QUIET_PERIOD_MS, onReload);
+    }
+
+    /**
+     * Watches the file of the database, and reloads the database in the background each time the file is
+     * modified or replaced, once it has not been modified for the given period.
+     *
+     * @param quietPeriodMs the period during which the file must not be modified before it is reloaded, in ms
+     * @param onReload      the action to run on the watching thread after each successful reload
+     * @return a handle that stops watching the file when it is closed
+     * @throws IOException if an I/O error occurs while starting to watch the file
+     */
+    Closeable watch(long quietPeriodMs, Runnable onReload) throws IOException {
+        Objects.requireNonNull(onReload);
+        Path file = Path.of(filename).toAbsolutePath();
+        WatchService watchService = file.getFileSystem().newWatchService();
+        // Replacing the file creates it, overwriting it modifies it
+        file.getParent().register(watchService, ENTRY_CREATE, ENTRY_MODIFY);
+
+        Thread watcher = new Thread(() -> {
+            try {
+                while (true) {
+                    if (!concernsFile(watchService.take(), file)) continue;
+
+                    // The file may still be being written, so its reloading waits until it is not modified anymore
+                    WatchKey key;
+                    while ((key = watchService.poll(quietPeriodMs, TimeUnit.MILLISECONDS)) != null) {
+                        key.pollEvents();
+                        key.reset();
                     }
-                    else if (compare == 0) {
-                        if (line.startsWith(address.string())) {
-                            String[] splitted = line.split(",", -1);
-                            return new AircraftData(
-                                    new AircraftRegistration(splitted[1]),
-                                    new AircraftTypeDesignator(splitted[2]),
-                                    splitted[3],
-                                    new AircraftDescription(splitted[4]),
-                                    WakeTurbulenceCategory.of(splitted[5]));
-                        }
+
+                    try {
+                        reload();
+                        onReload.run();
+                    } catch (IOException | RuntimeException e) {
+                        // The previous contents are kept until the next modification of the file
                     }
                 }
-                else {
-                    return null;
-                }
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                // The watching stopped
             }
+        }, "aircraft-database-watcher");
+        // The watcher must not keep the application alive
+        watcher.setDaemon(true);
+        watcher.start();
+        return watchService;
+    }
+
+    /**
+     * Returns true if the events of the given key concern the given file, and resets the key
+     *
+     * @param key  the key of the watched directory
+     * @param file the file
+     * @return true if one of the events concerns the file
+     */
+    private static boolean concernsFile(WatchKey key, Path file) {
+        boolean concernsFile = false;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            // Events may have been lost, among which some concerning the file
+            if (event.kind() == OVERFLOW || file.getFileName().equals(event.context())) concernsFile = true;
         }
+        key.reset();
+        return concernsFile;
+    }
+
+    /**
+     * Closes the ZIP file of the database, if it is open
+     *
+     * @throws IOException if an I/O error occurs while closing the file
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        contents.close();
     }
 }
@@ -0,0 +1,312 @@
+package ch.epfl.javions.aircraft;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Represents the whole mictronics database of aircraft, packed in a single buffer.
+ * The ICAO addresses are stored as a sorted array of 24-bit integers, searched by dichotomy, and the fields
+ * of the aircraft as indices in a pool of deduplicated strings, stored in UTF-8.
+ * The buffer has the following layout, all the integers being big-endian :
+ * <pre>
+ * header      : magic number, version, aircraft count, string count (4 ints)
+ * addresses   : the ICAO address of each aircraft, sorted (aircraft count ints)
+ * aircraft    : the registration, type designator, model and description string indices (4 ints),
+ *               and the wake turbulence category (1 byte) of each aircraft
+ * offsets     : the offset of each string in the string data, followed by its size (string count + 1 ints)
+ * string data : the UTF-8 bytes of the strings
+ * </pre>
+ * As the index has no pointers, it can be written as is to a file, and memory-mapped from it.
+ *
+ * @author Arthur Wolf (344200)
+ * @author Oussama Ghali (341478)
+ */
+final class AircraftIndex {
+    private static final int MAGIC_NUMBER = 0x4A_41_49_58; // "JAIX"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 4 * Integer.BYTES;
+    private static final int AIRCRAFT_SIZE = 4 * Integer.BYTES + Byte.BYTES;
+    private static final WakeTurbulenceCategory[] WAKE_TURBULENCE_CATEGORIES = WakeTurbulenceCategory.values();
+
+    private final ByteBuffer buffer;
+    private final int aircraftCount;
+    private final int stringCount;
+    private final int aircraftStart;
+    private final int offsetsStart;
+    private final int stringDataStart;
+
+    /**
+     * Constructs an index from the given buffer, which must have the layout of an index
+     *
+     * @param buffer The buffer containing the index, from its position to its limit
+     * @throws IOException If the buffer does not contain a valid index
+     */
+    AircraftIndex(ByteBuffer buffer) throws IOException {
+        this.buffer = buffer.slice();
+        if (this.buffer.limit() < HEADER_SIZE
+                || this.buffer.getInt(0) != MAGIC_NUMBER
+                || this.buffer.getInt(Integer.BYTES) != VERSION)
+            throw new IOException("Invalid aircraft index");
+
+        aircraftCount = this.buffer.getInt(2 * Integer.BYTES);
+        stringCount = this.buffer.getInt(3 * Integer.BYTES);
+        aircraftStart = HEADER_SIZE + aircraftCount * Integer.BYTES;
+        offsetsStart = aircraftStart + aircraftCount * AIRCRAFT_SIZE;
+        stringDataStart = offsetsStart + (stringCount + 1) * Integer.BYTES;
+        if (aircraftCount < 0 || stringCount < 0 || stringDataStart > this.buffer.limit()
+                || stringDataStart + (long) this.buffer.getInt(offsetsStart + stringCount * Integer.BYTES) != this.buffer.limit())
+            throw new IOException("Invalid aircraft index");
+    }
+
+    /**
+     * Builds the index of the mictronics database contained in the given ZIP file
+     *
+     * @param zipFilename The name of the ZIP file, containing one CSV file per value of the last byte of the addresses
+     * @return The index of the database
+     * @throws IOException If an I/O error occurs while reading the database
+     */
+    static AircraftIndex build(String zipFilename) throws IOException {
+        final int FIELD_COUNT = 6;
+
+        List<Integer> addresses = new ArrayList<>();
+        List<int[]> aircraft = new ArrayList<>();
+        List<Byte> wakeTurbulenceCategories = new ArrayList<>();
+        Map<String, Integer> stringIndices = new HashMap<>();
+        List<String> strings = new ArrayList<>();
+
+        try (ZipFile zip = new ZipFile(zipFilename)) {
+            for (ZipEntry entry : Collections.list(zip.entries())) {
+                if (entry.isDirectory()) continue;
+                try (BufferedReader reader = new BufferedReader(
+                        new InputStreamReader(zip.getInputStream(entry), StandardCharsets.UTF_8))) {
+                    String line;
+                    while ((line = reader.readLine()) != null) {
+                        String[] fields = line.split(",", -1);
+                        int address = fields.length < FIELD_COUNT ? -1 : parseAddress(fields[0]);
+                        if (address < 0) continue;
+
+                        addresses.add(address);
+                        int[] fieldIndices = new int[4];
+                        for (int i = 0; i < fieldIndices.length; i++) {
+                            fieldIndices[i] = stringIndices.computeIfAbsent(fields[i + 1], s -> {
+                                strings.add(s);
+                                return strings.size() - 1;
+                            });
+                        }
+                        aircraft.add(fieldIndices);
+                        wakeTurbulenceCategories.add((byte) WakeTurbulenceCategory.of(fields[5]).ordinal());
+                    }
+                }
+            }
+        }
+
+        // Sort the aircraft by address, keeping the index of each of them in the lists
+        long[] sortedAircraft = new long[addresses.size()];
+        for (int i = 0; i < sortedAircraft.length; i++)
+            sortedAircraft[i] = ((long) addresses.get(i) << Integer.SIZE) | i;
+        Arrays.sort(sortedAircraft);
+
+        byte[][] stringBytes = new byte[strings.size()][];
+        int stringDataSize = 0;
+        for (int i = 0; i < stringBytes.length; i++) {
+            stringBytes[i] = strings.get(i).getBytes(StandardCharsets.UTF_8);
+            stringDataSize += stringBytes[i].length;
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE
+                + sortedAircraft.length * (Integer.BYTES + AIRCRAFT_SIZE)
+                + (stringBytes.length + 1) * Integer.BYTES
+                + stringDataSize);
+        buffer.putInt(MAGIC_NUMBER).putInt(VERSION).putInt(sortedAircraft.length).putInt(stringBytes.length);
+        for (long packed : sortedAircraft)
+            buffer.putInt((int) (packed >>> Integer.SIZE));
+        for (long packed : sortedAircraft) {
+            int i = (int) packed;
+            for (int fieldIndex : aircraft.get(i))
+                buffer.putInt(fieldIndex);
+            buffer.put(wakeTurbulenceCategories.get(i));
+        }
+        int offset = 0;
+        for (byte[] bytes : stringBytes) {
+            buffer.putInt(offset);
+            offset += bytes.length;
+        }
+        buffer.putInt(offset);
+        for (byte[] bytes : stringBytes)
+            buffer.put(bytes);
+
+        return new AircraftIndex(buffer.flip());
+    }
+
+    /**
+     * Maps the index stored in the given file in memory. The file is only read when its pages are accessed.
+     *
+     * @param file The file containing the index, as written by {@link #write(Path)}
+     * @return The index
+     * @throws IOException If an I/O error occurs, or if the file does not contain a valid index
+     */
+    static AircraftIndex map(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            // The mapping stays valid once the channel is closed
+            return new AircraftIndex(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * Writes the index to the given file. The index is first written to a temporary file which then replaces
+     * the given one, so that the file never contains a partial index.
+     *
+     * @param file The file to write the index to
+     * @throws IOException If an I/O error occurs
+     */
+    void write(Path file) throws IOException {
+        Path directory = file.toAbsolutePath().getParent();
+        Files.createDirectories(directory);
+        Path temporaryFile = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(temporaryFile, StandardOpenOption.WRITE)) {
+                ByteBuffer content = buffer();
+                while (content.hasRemaining())
+                    channel.write(content);
+                channel.force(false);
+            }
+            Files.move(temporaryFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporaryFile);
+        }
+    }
+
+    /**
+     * Returns the integer value of the given ICAO address
+     *
+     * @param address The ICAO address, as 6 hexadecimal digits
+     * @return The value of the address, or -1 if it is not a valid address
+     */
+    static int parseAddress(String address) {
+        final int ADDRESS_LENGTH = 6;
+        if (address.length() != ADDRESS_LENGTH) return -1;
+        int value = 0;
+        for (int i = 0; i < ADDRESS_LENGTH; i++) {
+            int digit = Character.digit(address.charAt(i), 16);
+            if (digit < 0 || Character.isLowerCase(address.charAt(i))) return -1;
+            value = (value << 4) | digit;
+        }
+        return value;
+    }
+
+    /**
+     * Returns the data of the aircraft with the given ICAO address
+     *
+     * @param address The ICAO address of the aircraft
+     * @return The data of the aircraft, or null if it is not in the index
+     */
+    AircraftData get(IcaoAddress address) {
+        int i = indexOf(Integer.parseInt(address.string(), 16));
+        if (i < 0) return null;
+
+        int aircraftOffset = aircraftStart + i * AIRCRAFT_SIZE;
+        return new AircraftData(
+                new AircraftRegistration(string(buffer.getInt(aircraftOffset))),
+                new AircraftTypeDesignator(string(buffer.getInt(aircraftOffset + Integer.BYTES))),
+                string(buffer.getInt(aircraftOffset + 2 * Integer.BYTES)),
+                new AircraftDescription(string(buffer.getInt(aircraftOffset + 3 * Integer.BYTES))),
+                WAKE_TURBULENCE_CATEGORIES[buffer.get(aircraftOffset + 4 * Integer.BYTES)]);
+    }
+
+    /**
+     * Returns the set of the addresses of the aircraft in the index, as a set of bits indexed by their value
+     *
+     * @return The set of the addresses of the aircraft
+     */
+    BitSet addressSet() {
+        BitSet addresses = new BitSet(1 << IcaoAddress.BITS);
+        for (int i = 0; i < aircraftCount; i++)
+            addresses.set(buffer.getInt(HEADER_SIZE + i * Integer.BYTES));
+        return addresses;
+    }
+
+    /**
+     * Returns the number of aircraft in the index
+     *
+     * @return The number of aircraft
+     */
+    int aircraftCount() {
+        return aircraftCount;
+    }
+
+    /**
+     * Returns the number of distinct strings in the index
+     *
+     * @return The number of strings
+     */
+    int stringCount() {
+        return stringCount;
+    }
+
+    /**
+     * Returns the size of the index, in bytes
+     *
+     * @return The size of the index
+     */
+    int sizeInBytes() {
+        return buffer.limit();
+    }
+
+    /**
+     * Returns the buffer containing the index, from position 0 to its size
+     *
+     * @return A read-only view of the buffer of the index
+     */
+    ByteBuffer buffer() {
+        return buffer.asReadOnlyBuffer().clear();
+    }
+
+    /**
+     * Returns the index of the aircraft with the given address, using a dichotomic search
+     *
+     * @param address The address of the aircraft, as an integer
+     * @return The index of the aircraft, or -1 if it is not in the index
+     */
+    private int indexOf(int address) {
+        int low = 0, high = aircraftCount - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int middleAddress = buffer.getInt(HEADER_SIZE + middle * Integer.BYTES);
+            if (middleAddress < address) low = middle + 1;
+            else if (middleAddress > address) high = middle - 1;
+            else return middle;
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the string of the pool with the given index
+     *
+     * @param index The index of the string
+     * @return The string
+     */
+    private String string(int index) {
+        int start = buffer.getInt(offsetsStart + index * Integer.BYTES);
+        int end = buffer.getInt(offsetsStart + (index + 1) * Integer.BYTES);
+        byte[] bytes = new byte[end - start];
+        buffer.get(stringDataStart + start, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
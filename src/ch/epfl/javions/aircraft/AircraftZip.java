@@ -0,0 +1,270 @@
+package ch.epfl.javions.aircraft;
+
+import ch.epfl.javions.Preconditions;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Represents the ZIP file of the mictronics database, read on each search.
+ * The file is opened on the first search and kept open until the database is closed, and the decompressed content
+ * of the recently used entries is kept in a cache bounded by its size, evicting the least recently used entries
+ * first. As the lines of an entry are sorted by address, searching an aircraft in a cached entry is a dichotomic
+ * search in memory. The class is thread-safe.
+ *
+ * @author Arthur Wolf (344200)
+ * @author Oussama Ghali (341478)
+ */
+final class AircraftZip implements Closeable {
+    private static final int ADDRESS_LENGTH = 6;
+    private static final Entry EMPTY_ENTRY = new Entry(new byte[0], new int[]{0});
+
+    private final String filename;
+    private final long maxCacheSizeInBytes;
+    // Decompressed entries, by name, in access-order
+    private final LinkedHashMap<String, Entry> entries;
+    // Held for reading while an entry is decompressed, and for writing while the ZIP file is closed, so that it is
+    // never closed under a decompression
+    private final ReadWriteLock zipLock = new ReentrantReadWriteLock();
+    private long cacheSizeInBytes;
+    private ZipFile zipFile;
+    private boolean closed;
+
+    /**
+     * Represents the decompressed content of an entry, along with the start of each of its lines
+     *
+     * @param bytes      The content of the entry
+     * @param lineStarts The start of each line of the entry, followed by the size of the content
+     */
+    private record Entry(byte[] bytes, int[] lineStarts) {
+        private int lineCount() {
+            return lineStarts.length - 1;
+        }
+
+        private long sizeInBytes() {
+            return bytes.length + (long) lineStarts.length * Integer.BYTES;
+        }
+    }
+
+    /**
+     * Constructs a reader of the given ZIP file, which is not opened until the first search
+     *
+     * @param filename            The name of the ZIP file
+     * @param maxCacheSizeInBytes The maximal total size of the cached entries, in bytes
+     * @throws IllegalArgumentException If the maximal size is not strictly positive
+     */
+    AircraftZip(String filename, long maxCacheSizeInBytes) {
+        final int INITIAL_CAPACITY = 16;
+        final float LOAD_FACTOR = 0.75f;
+        Preconditions.checkArgument(maxCacheSizeInBytes > 0);
+        this.filename = filename;
+        this.maxCacheSizeInBytes = maxCacheSizeInBytes;
+        entries = new LinkedHashMap<>(INITIAL_CAPACITY, LOAD_FACTOR, true);
+    }
+
+    /**
+     * Returns the data of the aircraft with the given ICAO address
+     *
+     * @param address The ICAO address of the aircraft
+     * @return The data of the aircraft, or null if it is not in the database
+     * @throws IOException If an I/O error occurs while reading the ZIP file
+     */
+    AircraftData get(IcaoAddress address) throws IOException {
+        // The aircraft are stored in the entry named after the last two digits of their address
+        Entry entry = entry(address.string().substring(4) + ".csv");
+
+        byte[] key = address.string().getBytes(StandardCharsets.US_ASCII);
+        int low = 0, high = entry.lineCount() - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int compare = compareAddress(entry, middle, key);
+            if (compare < 0) low = middle + 1;
+            else if (compare > 0) high = middle - 1;
+            else return aircraftData(entry, middle);
+        }
+        return null;
+    }
+
+    /**
+     * Returns the total size of the cached entries
+     *
+     * @return The size of the cache, in bytes
+     */
+    synchronized long cacheSizeInBytes() {
+        return cacheSizeInBytes;
+    }
+
+    /**
+     * Closes the ZIP file and empties the cache. The following searches fail.
+     *
+     * @throws IOException If an I/O error occurs while closing the ZIP file
+     */
+    @Override
+    public void close() throws IOException {
+        zipLock.writeLock().lock();
+        try {
+            synchronized (this) {
+                closed = true;
+                entries.clear();
+                cacheSizeInBytes = 0;
+                if (zipFile != null) zipFile.close();
+                zipFile = null;
+            }
+        } finally {
+            zipLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the decompressed content of the entry with the given name, from the cache if possible
+     *
+     * @param name The name of the entry
+     * @return The content of the entry, empty if there is no such entry
+     * @throws IOException If an I/O error occurs while reading the ZIP file
+     */
+    private Entry entry(String name) throws IOException {
+        synchronized (this) {
+            Entry entry = entries.get(name);
+            if (entry != null) return entry;
+        }
+
+        // The entry is decompressed outside the monitor, as ZipFile supports concurrent reads
+        zipLock.readLock().lock();
+        try {
+            ZipFile zip;
+            synchronized (this) {
+                zip = zipFile();
+            }
+            Entry entry = EMPTY_ENTRY;
+            ZipEntry zipEntry = zip.getEntry(name);
+            if (zipEntry != null) {
+                try (InputStream inputStream = zip.getInputStream(zipEntry)) {
+                    byte[] bytes = inputStream.readAllBytes();
+                    entry = new Entry(bytes, lineStarts(bytes));
+                }
+            }
+
+            synchronized (this) {
+                put(name, entry);
+            }
+            return entry;
+        } finally {
+            zipLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the ZIP file, opening it if needed
+     *
+     * @return The ZIP file
+     * @throws IOException If the database is closed, or if an I/O error occurs while opening the ZIP file
+     */
+    private ZipFile zipFile() throws IOException {
+        if (closed) throw new IOException("Aircraft database closed");
+        if (zipFile == null) zipFile = new ZipFile(filename);
+        return zipFile;
+    }
+
+    /**
+     * Adds an entry to the cache, evicting the least recently used ones until the size of the cache is at most
+     * its maximal size. The added entry itself is never evicted.
+     *
+     * @param name  The name of the entry
+     * @param entry The content of the entry
+     */
+    private void put(String name, Entry entry) {
+        Entry oldEntry = entries.put(name, entry);
+        if (oldEntry != null) cacheSizeInBytes -= oldEntry.sizeInBytes();
+        cacheSizeInBytes += entry.sizeInBytes();
+
+        Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator();
+        while (cacheSizeInBytes > maxCacheSizeInBytes && it.hasNext()) {
+            Map.Entry<String, Entry> eldest = it.next();
+            if (eldest.getValue() == entry) continue;
+            cacheSizeInBytes -= eldest.getValue().sizeInBytes();
+            it.remove();
+        }
+    }
+
+    /**
+     * Returns the start of each non-empty line of the given content, followed by the size of the content
+     *
+     * @param bytes The content
+     * @return The start of each line
+     */
+    private static int[] lineStarts(byte[] bytes) {
+        int[] lineStarts = new int[16];
+        int lineCount = 0;
+        int start = 0;
+        while (start < bytes.length) {
+            int end = lineEnd(bytes, start);
+            if (end > start) {
+                if (lineCount + 1 >= lineStarts.length) lineStarts = Arrays.copyOf(lineStarts, 2 * lineStarts.length);
+                lineStarts[lineCount++] = start;
+            }
+            start = end + 1;
+        }
+        lineStarts[lineCount] = bytes.length;
+        return Arrays.copyOf(lineStarts, lineCount + 1);
+    }
+
+    /**
+     * Returns the index of the end of the line starting at the given index, i.e. of its line feed
+     *
+     * @param bytes The content
+     * @param start The start of the line
+     * @return The index of the line feed ending the line, or the size of the content if there is none
+     */
+    private static int lineEnd(byte[] bytes, int start) {
+        int end = start;
+        while (end < bytes.length && bytes[end] != '\n') end++;
+        return end;
+    }
+
+    /**
+     * Compares the address of a line of an entry with the given address
+     *
+     * @param entry The entry
+     * @param line  The index of the line
+     * @param key   The address, in ASCII
+     * @return A negative number, zero or a positive number if the address of the line is smaller than, equal to
+     * or greater than the given address
+     */
+    private static int compareAddress(Entry entry, int line, byte[] key) {
+        int start = entry.lineStarts()[line];
+        int end = Math.min(start + ADDRESS_LENGTH, entry.bytes().length);
+        return Arrays.compare(entry.bytes(), start, end, key, 0, key.length);
+    }
+
+    /**
+     * Returns the data of the aircraft described by a line of an entry
+     *
+     * @param entry The entry
+     * @param line  The index of the line
+     * @return The data of the aircraft
+     */
+    private static AircraftData aircraftData(Entry entry, int line) {
+        int start = entry.lineStarts()[line];
+        int end = lineEnd(entry.bytes(), start);
+        // Lines may end with a carriage return
+        if (end > start && entry.bytes()[end - 1] == '\r') end--;
+
+        String[] fields = new String(entry.bytes(), start, end - start, StandardCharsets.UTF_8).split(",", -1);
+        return new AircraftData(
+                new AircraftRegistration(fields[1]),
+                new AircraftTypeDesignator(fields[2]),
+                fields[3],
+                new AircraftDescription(fields[4]),
+                WakeTurbulenceCategory.of(fields[5]));
+    }
+}
@@ -13,6 +13,10 @@ import java.util.regex.Pattern;
  */
 public record IcaoAddress(String string) {
     private final static Pattern ICAO_ADRESS_PATTERN = Pattern.compile("[0-9A-F]{6}");
+    /**
+     * The number of bits of an ICAO address
+     */
+    public static final int BITS = 24;
 
     /**
      * Validates the pattern of the given address if it matches the corresponding regular expression
@@ -0,0 +1,311 @@
+package ch.epfl.javions.gui;
+
+import ch.epfl.javions.WebMercator;
+import javafx.application.Platform;
+import javafx.beans.InvalidationListener;
+import javafx.beans.property.ObjectProperty;
+import javafx.beans.value.ChangeListener;
+import javafx.collections.ObservableSet;
+import javafx.collections.SetChangeListener;
+import javafx.event.EventHandler;
+import javafx.geometry.Bounds;
+import javafx.geometry.Point2D;
+import javafx.geometry.VPos;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.image.Image;
+import javafx.scene.input.MouseButton;
+import javafx.scene.input.MouseEvent;
+import javafx.scene.layout.Pane;
+import javafx.scene.paint.Color;
+import javafx.scene.paint.CycleMethod;
+import javafx.scene.paint.LinearGradient;
+import javafx.scene.paint.Stop;
+import javafx.scene.shape.StrokeLineCap;
+import javafx.scene.text.Font;
+import javafx.scene.text.Text;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * The AircraftCanvasController class is an alternative to the AircraftController, drawing all the aircraft
+ * on a single canvas instead of creating scene-graph nodes and bindings for each of them.
+ * The canvas is redrawn on the pulse following any change of the map or of an aircraft state, using
+ * pre-rasterised and pre-rotated icons, and a spatial index of the drawn aircraft is used to select them by clicking.
+ *
+ * @author Arthur Wolf (344200)
+ * @author Oussama Ghali (341478)
+ */
+public final class AircraftCanvasController {
+    // Minimum zoom level at which the labels are visible
+    private static final int MIN_ZOOM_LEVEL_LABEL = 11;
+    private static final double LABEL_OFFSET = 5;
+    private static final double LABEL_PADDING = 2;
+    private static final double LABEL_ARC = 4;
+    private static final Color LABEL_FILL = Color.hsb(0, 0, 0, 0.4);
+    private static final Color LABEL_STROKE = Color.hsb(0, 0, 0, 0.5);
+    private static final Font LABEL_FONT = Font.font(10);
+    private static final double TRAJECTORY_STROKE_WIDTH = 3;
+    // Maximal distance (in pixels) between a click and the aircraft it selects
+    private static final double HIT_RADIUS = AircraftSprites.SPRITE_SIZE / 2d;
+
+    private final MapParameters mapParameters;
+    private final ObservableSet<ObservableAircraftState> aircraftStates;
+    private final ObjectProperty<ObservableAircraftState> selectedAircraftState;
+    private final Pane pane;
+    private final Canvas canvas;
+    private final AircraftSprites sprites = new AircraftSprites();
+    private final SpatialGrid<ObservableAircraftState> drawnAircraft = new SpatialGrid<>(HIT_RADIUS);
+    private final Text labelMeasure = new Text();
+    private final InvalidationListener redrawListener = observable -> redrawOnNextPulse();
+    // A change listener, as the versions of the aircraft states are not read by the drawing
+    private final ChangeListener<Number> versionListener = (p, o, n) -> redrawOnNextPulse();
+    private final EventHandler<MouseEvent> selectionHandler = this::selectAircraftAt;
+
+    // Will be true if redraw is needed
+    private boolean redrawNeeded;
+
+    /**
+     * Constructs a new AircraftCanvasController with the given map parameters, aircraft state set,
+     * and selected aircraft state property.
+     *
+     * @param mapParameters         The map parameters
+     * @param aircraftStates        The set of aircraft states
+     * @param selectedAircraftState The property for the selected aircraft state
+     */
+    public AircraftCanvasController(MapParameters mapParameters,
+                                    ObservableSet<ObservableAircraftState> aircraftStates,
+                                    ObjectProperty<ObservableAircraftState> selectedAircraftState) {
+        this.mapParameters = mapParameters;
+        this.aircraftStates = aircraftStates;
+        this.selectedAircraftState = selectedAircraftState;
+
+        canvas = new Canvas();
+        pane = new Pane(canvas);
+        // The mouse events go through the aircraft to the map, the clicks being handled by the parent of the pane
+        pane.setPickOnBounds(false);
+        canvas.setMouseTransparent(true);
+        labelMeasure.setFont(LABEL_FONT);
+
+        canvas.widthProperty().bind(pane.widthProperty());
+        canvas.heightProperty().bind(pane.heightProperty());
+
+        installListeners();
+        redrawOnNextPulse();
+    }
+
+    /**
+     * Returns the pane containing the aircraft canvas.
+     *
+     * @return The aircraft pane
+     */
+    public Pane pane() {
+        return pane;
+    }
+
+    /**
+     * Installs the listeners redrawing the canvas when needed, and the handler of the clicks.
+     */
+    private void installListeners() {
+        canvas.sceneProperty().addListener((p, o, n) -> {
+            assert o == null;
+            n.addPreLayoutPulseListener(this::redrawIfNeeded);
+        });
+
+        // The clicks on the map, below the canvas, reach the parent of the pane
+        pane.parentProperty().addListener((p, o, n) -> {
+            if (o != null) o.removeEventHandler(MouseEvent.MOUSE_CLICKED, selectionHandler);
+            if (n != null) n.addEventHandler(MouseEvent.MOUSE_CLICKED, selectionHandler);
+        });
+
+        canvas.widthProperty().addListener(redrawListener);
+        canvas.heightProperty().addListener(redrawListener);
+        mapParameters.zoomProperty().addListener(redrawListener);
+        mapParameters.minXProperty().addListener(redrawListener);
+        mapParameters.minYProperty().addListener(redrawListener);
+        selectedAircraftState.addListener(redrawListener);
+
+        aircraftStates.forEach(this::observe);
+        aircraftStates.addListener((SetChangeListener<ObservableAircraftState>) change -> {
+            if (change.wasAdded()) observe(change.getElementAdded());
+            if (change.wasRemoved()) forget(change.getElementRemoved());
+            redrawOnNextPulse();
+        });
+    }
+
+    /**
+     * Redraws the canvas whenever the given aircraft state is updated, which modifies its version once, whatever
+     * the number of modified properties.
+     *
+     * @param aircraftState The observable aircraft state
+     */
+    private void observe(ObservableAircraftState aircraftState) {
+        aircraftState.versionProperty().addListener(versionListener);
+    }
+
+    /**
+     * Stops redrawing the canvas when a property of the given aircraft state changes.
+     *
+     * @param aircraftState The observable aircraft state
+     */
+    private void forget(ObservableAircraftState aircraftState) {
+        aircraftState.versionProperty().removeListener(versionListener);
+    }
+
+    /**
+     * Selects the aircraft drawn closest to the position of a primary click, if any.
+     *
+     * @param event The mouse event of the click
+     */
+    private void selectAircraftAt(MouseEvent event) {
+        if (event.getButton() != MouseButton.PRIMARY || !event.isStillSincePress()) return;
+
+        Point2D point = pane.sceneToLocal(event.getSceneX(), event.getSceneY());
+        ObservableAircraftState aircraftState = drawnAircraft.nearest(point.getX(), point.getY(), HIT_RADIUS);
+        if (aircraftState != null) selectedAircraftState.set(aircraftState);
+    }
+
+    /**
+     * Draws the trajectory of the selected aircraft, then all the aircraft visible on the canvas, the ones
+     * with the highest altitude being drawn last.
+     */
+    private void draw() {
+        GraphicsContext graphicsContext = canvas.getGraphicsContext2D();
+        graphicsContext.clearRect(0, 0, canvas.getWidth(), canvas.getHeight());
+        drawnAircraft.clear();
+
+        ObservableAircraftState selected = selectedAircraftState.get();
+        if (selected != null && aircraftStates.contains(selected))
+            drawTrajectory(graphicsContext, selected);
+
+        // Keep the aircraft whose icon is at least partially visible
+        final double MARGIN = AircraftSprites.SPRITE_SIZE;
+        List<ObservableAircraftState> visibleAircraft = new ArrayList<>();
+        for (ObservableAircraftState aircraftState : aircraftStates) {
+            double x = screenX(aircraftState), y = screenY(aircraftState);
+            if (-MARGIN <= x && x <= canvas.getWidth() + MARGIN && -MARGIN <= y && y <= canvas.getHeight() + MARGIN) {
+                visibleAircraft.add(aircraftState);
+                drawnAircraft.add(x, y, aircraftState);
+            }
+        }
+        visibleAircraft.sort(Comparator.comparingDouble(ObservableAircraftState::getAltitude));
+
+        boolean labelsVisible = mapParameters.getZoom() >= MIN_ZOOM_LEVEL_LABEL;
+        for (ObservableAircraftState aircraftState : visibleAircraft) {
+            double x = screenX(aircraftState), y = screenY(aircraftState);
+            if (labelsVisible || aircraftState == selected)
+                drawLabel(graphicsContext, aircraftState, x, y);
+            drawIcon(graphicsContext, aircraftState, x, y);
+        }
+    }
+
+    /**
+     * Draws the icon of an aircraft, using the sprite of its altitude and track or heading.
+     *
+     * @param graphicsContext The graphics context of the canvas
+     * @param aircraftState   The observable aircraft state
+     * @param x               The x-coordinate of the aircraft on the canvas
+     * @param y               The y-coordinate of the aircraft on the canvas
+     */
+    private void drawIcon(GraphicsContext graphicsContext, ObservableAircraftState aircraftState, double x, double y) {
+        AircraftIcon icon = AircraftController.iconFor(aircraftState.getAircraftData(), aircraftState.getCategory());
+        Image sprite = sprites.spriteFor(icon, aircraftState.getAltitude(), aircraftState.getTrackOrHeading());
+        graphicsContext.drawImage(sprite, x - sprite.getWidth() / 2, y - sprite.getHeight() / 2);
+    }
+
+    /**
+     * Draws the label of an aircraft, below and to the right of its position.
+     *
+     * @param graphicsContext The graphics context of the canvas
+     * @param aircraftState   The observable aircraft state
+     * @param x               The x-coordinate of the aircraft on the canvas
+     * @param y               The y-coordinate of the aircraft on the canvas
+     */
+    private void drawLabel(GraphicsContext graphicsContext, ObservableAircraftState aircraftState, double x, double y) {
+        String text = AircraftController.labelText(aircraftState);
+        labelMeasure.setText(text);
+        Bounds bounds = labelMeasure.getLayoutBounds();
+
+        double labelX = x + LABEL_OFFSET, labelY = y + LABEL_OFFSET;
+        double width = bounds.getWidth() + 2 * LABEL_PADDING, height = bounds.getHeight() + 2 * LABEL_PADDING;
+        graphicsContext.setFill(LABEL_FILL);
+        graphicsContext.fillRoundRect(labelX, labelY, width, height, LABEL_ARC, LABEL_ARC);
+        graphicsContext.setStroke(LABEL_STROKE);
+        graphicsContext.strokeRoundRect(labelX, labelY, width, height, LABEL_ARC, LABEL_ARC);
+
+        graphicsContext.setFont(LABEL_FONT);
+        graphicsContext.setTextBaseline(VPos.TOP);
+        graphicsContext.setFill(Color.BLACK);
+        graphicsContext.fillText(text, labelX + LABEL_PADDING, labelY + LABEL_PADDING);
+        graphicsContext.setStroke(Color.WHITE);
+        graphicsContext.strokeText(text, labelX + LABEL_PADDING, labelY + LABEL_PADDING);
+    }
+
+    /**
+     * Draws the trajectory of an aircraft, each segment going from the colour of the altitude of its start to
+     * the colour of the altitude of its end.
+     *
+     * @param graphicsContext The graphics context of the canvas
+     * @param aircraftState   The observable aircraft state
+     */
+    private void drawTrajectory(GraphicsContext graphicsContext, ObservableAircraftState aircraftState) {
+        List<ObservableAircraftState.AirbornePos> trajectory = aircraftState.getTrajectory();
+        int zoom = mapParameters.getZoom();
+
+        graphicsContext.setLineWidth(TRAJECTORY_STROKE_WIDTH);
+        graphicsContext.setLineCap(StrokeLineCap.ROUND);
+        for (int i = 0; i < trajectory.size() - 1; i++) {
+            ObservableAircraftState.AirbornePos start = trajectory.get(i), end = trajectory.get(i + 1);
+            double x1 = WebMercator.x(zoom, start.geoPos().longitude()) - mapParameters.getMinX();
+            double y1 = WebMercator.y(zoom, start.geoPos().latitude()) - mapParameters.getMinY();
+            double x2 = WebMercator.x(zoom, end.geoPos().longitude()) - mapParameters.getMinX();
+            double y2 = WebMercator.y(zoom, end.geoPos().latitude()) - mapParameters.getMinY();
+
+            graphicsContext.setStroke(new LinearGradient(x1, y1, x2, y2, false, CycleMethod.NO_CYCLE,
+                    new Stop(0, AircraftController.getAltitudeColor(start.altitude())),
+                    new Stop(1, AircraftController.getAltitudeColor(end.altitude()))));
+            graphicsContext.strokeLine(x1, y1, x2, y2);
+        }
+        graphicsContext.setLineWidth(1);
+    }
+
+    /**
+     * Returns the x-coordinate of an aircraft on the canvas
+     *
+     * @param aircraftState The observable aircraft state
+     * @return The x-coordinate of the aircraft
+     */
+    private double screenX(ObservableAircraftState aircraftState) {
+        return WebMercator.x(mapParameters.getZoom(), aircraftState.getPosition().longitude()) - mapParameters.getMinX();
+    }
+
+    /**
+     * Returns the y-coordinate of an aircraft on the canvas
+     *
+     * @param aircraftState The observable aircraft state
+     * @return The y-coordinate of the aircraft
+     */
+    private double screenY(ObservableAircraftState aircraftState) {
+        return WebMercator.y(mapParameters.getZoom(), aircraftState.getPosition().latitude()) - mapParameters.getMinY();
+    }
+
+    /**
+     * If a property of the map or of an aircraft changed, redraw the canvas
+     */
+    private void redrawIfNeeded() {
+        if (!redrawNeeded) return;
+        redrawNeeded = false;
+
+        draw();
+    }
+
+    /**
+     * Redraws the canvas on the next pulse
+     */
+    private void redrawOnNextPulse() {
+        redrawNeeded = true;
+        Platform.requestNextPulse();
+    }
+}
@@ -3,14 +3,19 @@ package ch.epfl.javions.gui;
 import ch.epfl.javions.Units;
 import ch.epfl.javions.WebMercator;
 import ch.epfl.javions.aircraft.*;
+import javafx.application.Platform;
 import javafx.beans.binding.Bindings;
+import javafx.beans.binding.DoubleBinding;
+import javafx.beans.property.DoubleProperty;
 import javafx.beans.property.ObjectProperty;
-import javafx.beans.property.SimpleObjectProperty;
-import javafx.beans.value.ObservableValue;
+import javafx.beans.property.SimpleDoubleProperty;
 import javafx.collections.ListChangeListener;
 import javafx.collections.ObservableSet;
 import javafx.collections.SetChangeListener;
+import javafx.geometry.Point2D;
+import javafx.geometry.Rectangle2D;
 import javafx.scene.Group;
+import javafx.scene.image.ImageView;
 import javafx.scene.input.MouseButton;
 import javafx.scene.layout.Pane;
 import javafx.scene.paint.Color;
@@ -19,25 +24,55 @@ import javafx.scene.paint.LinearGradient;
 import javafx.scene.paint.Stop;
 import javafx.scene.shape.Line;
 import javafx.scene.shape.Rectangle;
-import javafx.scene.shape.SVGPath;
 import javafx.scene.text.Text;
-import java.util.List;
-import java.util.stream.IntStream;
+import javafx.scene.transform.Scale;
+import javafx.scene.transform.Translate;
 
-import static ch.epfl.javions.Units.Angle.DEGREE;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 /**
  * The AircraftController class is responsible for managing and displaying aircraft on a map.
  * It binds the aircraft state to the graphical representation in the GUI.
+ * The icons are displayed as pre-rasterised sprites, shared by all the aircraft with the same icon, colour and orientation.
+ * The aircraft are placed on a layer that is translated as a whole when the map moves, and only the aircraft that are
+ * in the visible part of the map (found with a spatial index of their positions) are attached to this layer,
+ * so that moving the map only costs as much as the number of visible aircraft.
+ * The trajectory of the selected aircraft is drawn incrementally : its lines are expressed at zoom level 0,
+ * relative to the first position of the trajectory, and placed on the map by a transform, so that neither
+ * new positions nor zoom changes require to rebuild the existing lines.
  *
  * @author Arthur Wolf (344200)
  * @author Oussama Ghali (341478)
  */
 public final class AircraftController {
+    // Size of a cell of the aircraft index at zoom level 0, i.e. 256 pixels at zoom level 8
+    private static final double INDEX_CELL_SIZE = 1;
+    // Distance (in pixels) outside the map at which the aircraft are still attached, so that their label stays visible
+    private static final double CULLING_MARGIN = 150;
+    private static final int REFERENCE_ZOOM = 0;
+
     private final MapParameters mapParameters;
     private final ObservableSet<ObservableAircraftState> aircraftState;
     private final ObjectProperty<ObservableAircraftState> selectedAircraftState;
     private final Pane pane;
+    // Layer containing the groups of the visible aircraft, placed at their position on the whole map
+    private final Group aircraftLayer;
+    private final Map<ObservableAircraftState, Group> aircraftGroups = new HashMap<>();
+    // Positions of the aircraft at zoom level 0, indexed to find the visible ones
+    private final SpatialGrid<ObservableAircraftState> aircraftIndex = new SpatialGrid<>(INDEX_CELL_SIZE);
+    private final Map<ObservableAircraftState, Point2D> indexedPositions = new HashMap<>();
+    // Scale factor from zoom level 0 to the current zoom level, shared by all the trajectories
+    private final DoubleBinding trajectoryScale;
+    // Stroke width of the trajectory lines compensating the scale, so that it stays constant on screen
+    private final DoubleBinding trajectoryStrokeWidth;
+    private final AircraftSprites sprites = new AircraftSprites();
+    // Will be true if the visible aircraft have to be found again
+    private boolean cullingNeeded;
 
     /**
      * Constructs a new AircraftController with the given map parameters, aircraft state set,
@@ -54,9 +89,16 @@ public final class AircraftController {
         this.mapParameters = mapParameters;
         this.aircraftState = aircraftState;
         this.selectedAircraftState = selectedAircraftState;
+        final double TRAJECTORY_STROKE_WIDTH = 3;
+        this.trajectoryScale = Bindings.createDoubleBinding(() ->
+                Math.scalb(1d, mapParameters.getZoom()), mapParameters.zoomProperty());
+        this.trajectoryStrokeWidth = Bindings.createDoubleBinding(() ->
+                TRAJECTORY_STROKE_WIDTH / trajectoryScale.get(), trajectoryScale);
+        this.aircraftLayer = new Group();
         this.pane = createAircraftPane();
         this.pane.setPickOnBounds(false);
         bindAircraftSetListeners();
+        bindViewportListeners();
     }
 
     /**
@@ -74,9 +116,13 @@ public final class AircraftController {
      * @return The aircraft pane
      */
     private Pane createAircraftPane() {
-        Pane aircraftPane = new Pane();
+        Pane aircraftPane = new Pane(aircraftLayer);
         aircraftPane.getStylesheets().add("aircraft.css");
 
+        // Moving the map only moves the layer, not every aircraft
+        aircraftLayer.translateXProperty().bind(mapParameters.minXProperty().negate());
+        aircraftLayer.translateYProperty().bind(mapParameters.minYProperty().negate());
+
         return aircraftPane;
     }
 
@@ -86,16 +132,129 @@ public final class AircraftController {
     private void bindAircraftSetListeners() {
         aircraftState.addListener((SetChangeListener<ObservableAircraftState>) change -> {
             if (change.wasAdded()) {
-                Group aircraftGroup = createAircraftGroup(change.getElementAdded());
-                pane.getChildren().add(aircraftGroup);
+                ObservableAircraftState addedAircraft = change.getElementAdded();
+                aircraftGroups.put(addedAircraft, createAircraftGroup(addedAircraft));
+                index(addedAircraft);
+                cull(addedAircraft);
+
+                // Only this aircraft has to be indexed and culled again when it moves
+                addedAircraft.positionProperty().addListener((p, o, n) -> {
+                    if (aircraftGroups.containsKey(addedAircraft)) {
+                        index(addedAircraft);
+                        cull(addedAircraft);
+                    }
+                });
             } else if (change.wasRemoved()) {
                 ObservableAircraftState removedAircraft = change.getElementRemoved();
-                String aircraftId = removedAircraft.getIcaoAddress().string();
-                pane.getChildren().removeIf(node -> node.getId().equals(aircraftId));
+                aircraftLayer.getChildren().remove(aircraftGroups.remove(removedAircraft));
+                Point2D position = indexedPositions.remove(removedAircraft);
+                if (position != null) aircraftIndex.remove(position.getX(), position.getY(), removedAircraft);
             }
         });
-        selectedAircraftState.addListener((observable, oldValue, newValue) -> updateTrajectoryLines());
-        mapParameters.zoomProperty().addListener((observable, oldValue, newValue) -> updateTrajectoryLines());
+    }
+
+    /**
+     * Binds the listeners finding the visible aircraft again when the visible part of the map changes.
+     */
+    private void bindViewportListeners() {
+        pane.sceneProperty().addListener((p, o, n) -> {
+            assert o == null;
+            n.addPreLayoutPulseListener(this::cullIfNeeded);
+        });
+
+        mapParameters.zoomProperty().addListener((p, o, n) -> cullOnNextPulse());
+        mapParameters.minXProperty().addListener((p, o, n) -> cullOnNextPulse());
+        mapParameters.minYProperty().addListener((p, o, n) -> cullOnNextPulse());
+        pane.widthProperty().addListener((p, o, n) -> cullOnNextPulse());
+        pane.heightProperty().addListener((p, o, n) -> cullOnNextPulse());
+        // The selected aircraft stays attached, so that its trajectory is visible even if it is not
+        selectedAircraftState.addListener((p, o, n) -> cullOnNextPulse());
+    }
+
+    /**
+     * Updates the position of an aircraft in the index.
+     *
+     * @param aircraftState The observable aircraft state
+     */
+    private void index(ObservableAircraftState aircraftState) {
+        Point2D oldPosition = indexedPositions.get(aircraftState);
+        if (oldPosition != null) aircraftIndex.remove(oldPosition.getX(), oldPosition.getY(), aircraftState);
+
+        Point2D newPosition = new Point2D(
+                WebMercator.x(REFERENCE_ZOOM, aircraftState.getPosition().longitude()),
+                WebMercator.y(REFERENCE_ZOOM, aircraftState.getPosition().latitude()));
+        aircraftIndex.add(newPosition.getX(), newPosition.getY(), aircraftState);
+        indexedPositions.put(aircraftState, newPosition);
+    }
+
+    /**
+     * Attaches the group of an aircraft to the layer if it is visible, and detaches it otherwise.
+     *
+     * @param aircraftState The observable aircraft state
+     */
+    private void cull(ObservableAircraftState aircraftState) {
+        Point2D position = indexedPositions.get(aircraftState);
+        Rectangle2D viewport = viewport();
+        boolean visible = aircraftState == selectedAircraftState.get()
+                || (viewport.getMinX() <= position.getX() && position.getX() <= viewport.getMaxX()
+                && viewport.getMinY() <= position.getY() && position.getY() <= viewport.getMaxY());
+
+        Group aircraftGroup = aircraftGroups.get(aircraftState);
+        if (visible && aircraftGroup.getParent() == null) aircraftLayer.getChildren().add(aircraftGroup);
+        else if (!visible && aircraftGroup.getParent() != null) aircraftLayer.getChildren().remove(aircraftGroup);
+    }
+
+    /**
+     * Attaches the groups of the visible aircraft to the layer, and detaches the other ones.
+     * Only the aircraft that were visible, and the ones that are visible now, are visited.
+     */
+    private void cullAll() {
+        Set<ObservableAircraftState> visibleAircraft = new HashSet<>();
+        Rectangle2D viewport = viewport();
+        aircraftIndex.forEachIn(viewport.getMinX(), viewport.getMinY(), viewport.getMaxX(), viewport.getMaxY(),
+                visibleAircraft::add);
+        ObservableAircraftState selected = selectedAircraftState.get();
+        if (selected != null && aircraftGroups.containsKey(selected)) visibleAircraft.add(selected);
+
+        aircraftLayer.getChildren().removeIf(node -> !visibleAircraft.contains(node.getUserData()));
+        List<Group> attachedGroups = new ArrayList<>();
+        for (ObservableAircraftState visible : visibleAircraft) {
+            Group aircraftGroup = aircraftGroups.get(visible);
+            if (aircraftGroup.getParent() == null) attachedGroups.add(aircraftGroup);
+        }
+        aircraftLayer.getChildren().addAll(attachedGroups);
+    }
+
+    /**
+     * Returns the visible part of the map, extended by the culling margin, at zoom level 0.
+     *
+     * @return The visible part of the map
+     */
+    private Rectangle2D viewport() {
+        double scale = Math.scalb(1d, -mapParameters.getZoom());
+        return new Rectangle2D(
+                (mapParameters.getMinX() - CULLING_MARGIN) * scale,
+                (mapParameters.getMinY() - CULLING_MARGIN) * scale,
+                (pane.getWidth() + 2 * CULLING_MARGIN) * scale,
+                (pane.getHeight() + 2 * CULLING_MARGIN) * scale);
+    }
+
+    /**
+     * If the visible part of the map changed, find the visible aircraft again
+     */
+    private void cullIfNeeded() {
+        if (!cullingNeeded) return;
+        cullingNeeded = false;
+
+        cullAll();
+    }
+
+    /**
+     * Finds the visible aircraft again on the next pulse
+     */
+    private void cullOnNextPulse() {
+        cullingNeeded = true;
+        Platform.requestNextPulse();
     }
 
     /**
@@ -118,6 +277,7 @@ public final class AircraftController {
         // Set the ID of the aircraft group to the aircraft address
         String aircraftId = aircraftState.getIcaoAddress().string();
         aircraftGroup.setId(aircraftId);
+        aircraftGroup.setUserData(aircraftState);
 
         // Set the view order of the aircraft group based on the altitude (higher altitude appears in front)
         aircraftGroup.viewOrderProperty().bind(aircraftState.altitudeProperty().negate());
@@ -132,7 +292,7 @@ public final class AircraftController {
      * @return The group containing the icon and label
      */
     private Group iconAndLabelGroup(ObservableAircraftState aircraftState) {
-        SVGPath icon = buildIcon(aircraftState);
+        ImageView icon = buildIcon(aircraftState);
         Group label = buildLabel(aircraftState);
 
         // The label is set behind the icon
@@ -141,77 +301,117 @@ public final class AircraftController {
         // Create a group to contain the icon and label
         Group iconAndLabelGroup = new Group(label, icon);
 
-        // Bind the layout X property of the group to the position of the aircraft (longitude)
+        // Bind the layout X property of the group to the position of the aircraft (longitude) on the whole map,
+        // the layer being translated according to the visible part of the map
         iconAndLabelGroup.layoutXProperty().bind(Bindings.createDoubleBinding(() -> WebMercator.x(
                 mapParameters.getZoom(),
-                aircraftState.getPosition().longitude()) - mapParameters.getMinX(),
+                aircraftState.getPosition().longitude()),
                 mapParameters.zoomProperty(),
-                mapParameters.minXProperty(),
                 aircraftState.positionProperty()));
 
-        // Bind the layout Y property of the group to the position of the aircraft (latitude)
+        // Bind the layout Y property of the group to the position of the aircraft (latitude) on the whole map
         iconAndLabelGroup.layoutYProperty().bind(Bindings.createDoubleBinding(() -> WebMercator.y(
                 mapParameters.getZoom(),
-                aircraftState.getPosition().latitude()) - mapParameters.getMinY(),
+                aircraftState.getPosition().latitude()),
                 mapParameters.zoomProperty(),
-                mapParameters.minYProperty(),
                 aircraftState.positionProperty()));
 
         return iconAndLabelGroup;
     }
 
     /**
-     * Builds the icon for the aircraft.
+     * Builds the icon for the aircraft, displaying the sprite of its icon, altitude and track or heading.
      *
      * @param aircraftState The observable aircraft state
      * @return The aircraft icon
      */
-    private SVGPath buildIcon(ObservableAircraftState aircraftState) {
-        final String EMPTY_STRING = "";
-        SVGPath icon = new SVGPath();
-        icon.getStyleClass().add("aircraft");
-
-        ObservableValue<AircraftIcon> aircraftIcon = aircraftState.categoryProperty().map(category -> {
-            AircraftData data = aircraftState.getAircraftData();
-
-            // We need to do all this because some aircraft have their CallSign that might change so their icon have to change too
-            AircraftTypeDesignator typeDesignator = new AircraftTypeDesignator(EMPTY_STRING);
-            AircraftDescription description = new AircraftDescription(EMPTY_STRING);
-            WakeTurbulenceCategory wakeTurbulenceCategory = WakeTurbulenceCategory.of(EMPTY_STRING);
-
-            if (data != null) {
-                typeDesignator = data.typeDesignator();
-                description = data.description();
-                wakeTurbulenceCategory = data.wakeTurbulenceCategory();
-            }
-
-            return AircraftIcon.iconFor(
-                    typeDesignator,
-                    description,
-                    category.intValue(),
-                    wakeTurbulenceCategory);
-        });
-
-        // Bind the content property of the SVGPath to the SVG path of the aircraft icon
-        icon.contentProperty().bind(aircraftIcon.map(AircraftIcon::svgPath));
-
-        // Bind the rotation property of the SVGPath to the track or heading of the aircraft
-        icon.rotateProperty().bind(Bindings.createDoubleBinding(() -> aircraftIcon.getValue().canRotate()
-                        ? Units.convertTo(aircraftState.trackOrHeadingProperty().doubleValue(), DEGREE)
-                        : 0.0,
-                aircraftState.trackOrHeadingProperty()));
+    private ImageView buildIcon(ObservableAircraftState aircraftState) {
+        ImageView icon = new ImageView();
+
+        // The sprites are centred on the position of the aircraft
+        icon.setLayoutX(-AircraftSprites.SPRITE_SIZE / 2d);
+        icon.setLayoutY(-AircraftSprites.SPRITE_SIZE / 2d);
+
+        // Bind the image of the icon to the sprite of the aircraft icon, coloured and rotated according to the
+        // altitude and the track or heading of the aircraft. The binding depends on the version of the state
+        // rather than on these four properties, so that it is invalidated once per update.
+        icon.imageProperty().bind(Bindings.createObjectBinding(() -> sprites.spriteFor(
+                        iconFor(aircraftState.getAircraftData(), aircraftState.getCategory()),
+                        aircraftState.getAltitude(),
+                        aircraftState.getTrackOrHeading()),
+                aircraftState.versionProperty()));
 
         // Set a mouse click event handler to toggle the selected state of the aircraft
         icon.setOnMouseClicked(event -> {
             if (event.getButton() == MouseButton.PRIMARY) selectedAircraftState.set(aircraftState);
         });
 
-        // Bind the fill property of the SVGPath to the altitude-based color of the aircraft
-        icon.fillProperty().bind(getFillProperty(aircraftState));
-
         return icon;
     }
 
+    /**
+     * Returns the icon of an aircraft with the given data and category.
+     *
+     * @param data     The aircraft data, or null if unknown
+     * @param category The category of the aircraft
+     * @return The icon of the aircraft
+     */
+    static AircraftIcon iconFor(AircraftData data, int category) {
+        final String EMPTY_STRING = "";
+
+        // We need to do all this because some aircraft have their CallSign that might change so their icon have to change too
+        AircraftTypeDesignator typeDesignator = new AircraftTypeDesignator(EMPTY_STRING);
+        AircraftDescription description = new AircraftDescription(EMPTY_STRING);
+        WakeTurbulenceCategory wakeTurbulenceCategory = WakeTurbulenceCategory.of(EMPTY_STRING);
+
+        if (data != null) {
+            typeDesignator = data.typeDesignator();
+            description = data.description();
+            wakeTurbulenceCategory = data.wakeTurbulenceCategory();
+        }
+
+        return AircraftIcon.iconFor(
+                typeDesignator,
+                description,
+                category,
+                wakeTurbulenceCategory);
+    }
+
+    /**
+     * Returns the text of the label of an aircraft, made of its identification, velocity and altitude.
+     *
+     * @param aircraftState The observable aircraft state
+     * @return The text of the label
+     */
+    static String labelText(ObservableAircraftState aircraftState) {
+        final String UNKNOWN = "?";
+
+        // If the aircraftData is not null then we show the registration
+        // Else if the CallSign is null then we show the ICAO address
+        // The CallSign might be null first and then appear, so we need to update the label by replacing the ICAO address by the CallSign
+        String identification = aircraftState.getAircraftData() != null
+                ? aircraftState.getAircraftData().registration().string()
+                : (aircraftState.getCallSign() != null
+                    ? aircraftState.getCallSign().string()
+                    : aircraftState.getIcaoAddress().string());
+
+        // Format the velocity and altitude values
+        // If the value is NaN, then the value is unknown and a question mark is displayed
+        String velocity = Double.isNaN(aircraftState.getVelocity())
+                ? UNKNOWN
+                : String.format("%.0f", Units.convertTo(aircraftState.getVelocity(), Units.Speed.KILOMETER_PER_HOUR));
+
+        // Altitude is never NaN, but we still check it
+        String altitude = Double.isNaN(aircraftState.getAltitude())
+                ? UNKNOWN
+                : String.format("%.0f", aircraftState.getAltitude());
+
+        return String.format("%s\n%s\u2002km/h %s\u2002m",
+                identification,
+                velocity,
+                altitude);
+    }
+
     /**
      * Builds the label for the aircraft.
      *
@@ -219,7 +419,6 @@ public final class AircraftController {
      * @return The aircraft label with the information of the aircraft
      */
     private Group buildLabel(ObservableAircraftState aircraftState) {
-        final String UNKNOWN= "?";
         //Maximum zoom level at which the label is visible
         final int MIN_ZOOM_LEVEL_LABEL = 11;
 
@@ -236,34 +435,9 @@ public final class AircraftController {
         labelGroup.getStyleClass().add("label");
 
         // Bind the text property of the label to the formatted string based on registration, callSign, ICAO, altitude and velocity values
-        labelText.textProperty().bind(Bindings.createStringBinding(() -> {
-
-            // If the aircraftData is not null then we show the registration
-            // Else if the CallSign is null then we show the ICAO address
-            // The CallSign might be null first and then appear, so we need to update the label by replacing the ICAO address by the CallSign
-            String identification = aircraftState.getAircraftData() != null
-                    ? aircraftState.getAircraftData().registration().string()
-                    : (aircraftState.getCallSign() != null
-                        ? aircraftState.getCallSign().string()
-                        : aircraftState.getIcaoAddress().string());
-
-            // Format the velocity and altitude values
-            // If the value is NaN, then the value is unknown and a question mark is displayed
-            String velocity = Double.isNaN(aircraftState.getVelocity())
-                    ? UNKNOWN
-                    : String.format("%.0f", Units.convertTo(aircraftState.getVelocity(), Units.Speed.KILOMETER_PER_HOUR));
-
-            // Altitude is never NaN, but we still check it
-            String altitude = Double.isNaN(aircraftState.getAltitude())
-                    ? UNKNOWN
-                    : String.format("%.0f", aircraftState.getAltitude());
-
-            return String.format("%s\n%s\u2002km/h %s\u2002m",
-                    identification,
-                    velocity,
-                    altitude);
-            // The binding depends on these 3 property, because they might change with the time.
-        }, aircraftState.callSignProperty(), aircraftState.altitudeProperty(), aircraftState.velocityProperty()));
+        // The binding depends on the version of the state, which is modified once per update of these values.
+        labelText.textProperty().bind(Bindings.createStringBinding(() -> labelText(aircraftState),
+                aircraftState.versionProperty()));
 
         // Bind the visible property of the label group based on the zoom level and selected state
         labelGroup.visibleProperty().bind(Bindings.createBooleanBinding(() ->
@@ -278,6 +452,8 @@ public final class AircraftController {
 
     /**
      * Builds the trajectory group for an aircraft state.
+     * The lines of the trajectory are only built while the group is visible, and then kept up to date
+     * incrementally when the trajectory changes.
      *
      * @param aircraftState The observable aircraft state
      * @return The trajectory group
@@ -287,31 +463,57 @@ public final class AircraftController {
         trajectoryGroup.getStyleClass().add("trajectory");
         trajectoryGroup.setVisible(false);
 
-        // Add a listener to the trajectory property of the aircraft state
-        aircraftState.getTrajectory().addListener((ListChangeListener<ObservableAircraftState.AirbornePos>) change ->
-                updateTrajectoryLines()
-        );
+        // Origin of the lines, i.e. the first position of the trajectory, at zoom level 0
+        DoubleProperty originX = new SimpleDoubleProperty();
+        DoubleProperty originY = new SimpleDoubleProperty();
+
+        // Place the lines on the layer : first scale them to the current zoom level, then translate the origin
+        Translate translate = new Translate();
+        translate.xProperty().bind(Bindings.createDoubleBinding(() ->
+                        originX.get() * trajectoryScale.get(),
+                originX, trajectoryScale));
+        translate.yProperty().bind(Bindings.createDoubleBinding(() ->
+                        originY.get() * trajectoryScale.get(),
+                originY, trajectoryScale));
+        Scale scale = new Scale();
+        scale.xProperty().bind(trajectoryScale);
+        scale.yProperty().bind(trajectoryScale);
+        trajectoryGroup.getTransforms().addAll(translate, scale);
+
+        // Build the lines when the trajectory becomes visible, and release them when it is hidden
+        trajectoryGroup.visibleProperty().addListener((observable, wasVisible, isVisible) -> {
+            if (isVisible) rebuildTrajectoryLines(aircraftState.getTrajectory(), trajectoryGroup, originX, originY);
+            else trajectoryGroup.getChildren().clear();
+        });
+
+        // Only update the lines of this aircraft when its trajectory changes
+        aircraftState.getTrajectory().addListener((ListChangeListener<ObservableAircraftState.AirbornePos>) change -> {
+            if (trajectoryGroup.isVisible())
+                updateTrajectoryLines(change, trajectoryGroup, originX, originY);
+        });
 
         return trajectoryGroup;
     }
 
     /**
-     * Builds a trajectory line between two aircraft positions.
+     * Builds a trajectory line between two aircraft positions, expressed at zoom level 0 relative to the given origin.
      *
-     * @param start The start position
-     * @param end   The end position
+     * @param start   The start position
+     * @param end     The end position
+     * @param originX The x-coordinate of the origin at zoom level 0
+     * @param originY The y-coordinate of the origin at zoom level 0
      * @return The trajectory line
      */
-    private Line buildTrajectoryLine(ObservableAircraftState.AirbornePos start, ObservableAircraftState.AirbornePos end) {
+    private Line buildTrajectoryLine(ObservableAircraftState.AirbornePos start, ObservableAircraftState.AirbornePos end,
+                                     double originX, double originY) {
         // Create a line with coordinates based on the start and end positions
-        Line line = new Line(WebMercator.x(mapParameters.getZoom(), start.geoPos().longitude()),
-                WebMercator.y(mapParameters.getZoom(), start.geoPos().latitude()),
-                WebMercator.x(mapParameters.getZoom(), end.geoPos().longitude()),
-                WebMercator.y(mapParameters.getZoom(), end.geoPos().latitude()));
+        Line line = new Line(WebMercator.x(REFERENCE_ZOOM, start.geoPos().longitude()) - originX,
+                WebMercator.y(REFERENCE_ZOOM, start.geoPos().latitude()) - originY,
+                WebMercator.x(REFERENCE_ZOOM, end.geoPos().longitude()) - originX,
+                WebMercator.y(REFERENCE_ZOOM, end.geoPos().latitude()) - originY);
 
-        // Bind the layout properties of the line to the map parameters to ensure proper positioning
-        line.layoutXProperty().bind(mapParameters.minXProperty().negate());
-        line.layoutYProperty().bind(mapParameters.minYProperty().negate());
+        // The line is scaled with its group, so its width has to be scaled back
+        line.strokeWidthProperty().bind(trajectoryStrokeWidth);
 
         // Create color stops based on the altitudes of the start and end positions
         Stop s1 = new Stop(0, getAltitudeColor(start.altitude()));
@@ -324,27 +526,70 @@ public final class AircraftController {
     }
 
     /**
-     * Updates the trajectory lines.
+     * Rebuilds all the lines of a trajectory, its first position becoming the new origin of the lines.
+     *
+     * @param trajectory      The trajectory
+     * @param trajectoryGroup The group containing the lines of the trajectory
+     * @param originX         The x-coordinate of the origin at zoom level 0
+     * @param originY         The y-coordinate of the origin at zoom level 0
      */
-    private void updateTrajectoryLines() {
-        for (ObservableAircraftState aircraft : aircraftState) {
-            // Look up the aircraft group by its ID
-            Group aircraftGroup = (Group) pane.lookup("#" + aircraft.getIcaoAddress().string());
-            // Get the trajectory group from the aircraft group
-            Group trajectoryGroup = (Group) aircraftGroup.getChildren().get(0);
-
-            if (trajectoryGroup.isVisible()) {
-                // Clear the existing trajectory lines
-                trajectoryGroup.getChildren().clear();
-
-                // Build trajectory lines between each pair of positions
-                List<Line> trajectoryLines = IntStream.range(0, aircraft.getTrajectory().size() - 1)
-                        .mapToObj(i -> buildTrajectoryLine(aircraft.getTrajectory().get(i), aircraft.getTrajectory().get(i + 1)))
-                        .toList();
-
-                // Add the trajectory lines to the trajectory group
-                trajectoryGroup.getChildren().addAll(trajectoryLines);
-            }
+    private void rebuildTrajectoryLines(List<? extends ObservableAircraftState.AirbornePos> trajectory, Group trajectoryGroup,
+                                        DoubleProperty originX, DoubleProperty originY) {
+        trajectoryGroup.getChildren().clear();
+        if (trajectory.isEmpty()) return;
+
+        ObservableAircraftState.AirbornePos first = trajectory.get(0);
+        originX.set(WebMercator.x(REFERENCE_ZOOM, first.geoPos().longitude()));
+        originY.set(WebMercator.y(REFERENCE_ZOOM, first.geoPos().latitude()));
+        appendTrajectoryLines(trajectory, trajectoryGroup, originX.get(), originY.get());
+    }
+
+    /**
+     * Adds the lines of the positions of the trajectory that do not have one yet.
+     *
+     * @param trajectory      The trajectory
+     * @param trajectoryGroup The group containing the lines of the trajectory
+     * @param originX         The x-coordinate of the origin at zoom level 0
+     * @param originY         The y-coordinate of the origin at zoom level 0
+     */
+    private void appendTrajectoryLines(List<? extends ObservableAircraftState.AirbornePos> trajectory, Group trajectoryGroup,
+                                       double originX, double originY) {
+        // The line i goes from the position i to the position i + 1
+        List<Line> newLines = new ArrayList<>();
+        for (int i = trajectoryGroup.getChildren().size(); i < trajectory.size() - 1; i++)
+            newLines.add(buildTrajectoryLine(trajectory.get(i), trajectory.get(i + 1), originX, originY));
+        trajectoryGroup.getChildren().addAll(newLines);
+    }
+
+    /**
+     * Updates the lines of a trajectory after a change of the trajectory.
+     * Positions removed at the beginning and added at the end of the trajectory only remove or add the
+     * corresponding lines, any other change rebuilds all the lines.
+     *
+     * @param change          The change of the trajectory
+     * @param trajectoryGroup The group containing the lines of the trajectory
+     * @param originX         The x-coordinate of the origin at zoom level 0
+     * @param originY         The y-coordinate of the origin at zoom level 0
+     */
+    private void updateTrajectoryLines(ListChangeListener.Change<? extends ObservableAircraftState.AirbornePos> change,
+                                       Group trajectoryGroup, DoubleProperty originX, DoubleProperty originY) {
+        List<? extends ObservableAircraftState.AirbornePos> trajectory = change.getList();
+        int removedFromStart = 0;
+        boolean incremental = true;
+        while (change.next()) {
+            boolean removedAtStart = change.wasRemoved() && !change.wasAdded() && change.getFrom() == 0;
+            boolean addedAtEnd = change.wasAdded() && !change.wasRemoved() && change.getTo() == trajectory.size();
+            if (removedAtStart) removedFromStart += change.getRemovedSize();
+            else if (!addedAtEnd) incremental = false;
+        }
+
+        int lineCount = trajectoryGroup.getChildren().size();
+        if (!incremental || lineCount == 0 || lineCount - Math.min(removedFromStart, lineCount) > trajectory.size() - 1) {
+            rebuildTrajectoryLines(trajectory, trajectoryGroup, originX, originY);
+        } else {
+            // Each position removed at the beginning of the trajectory removes the line starting from it
+            trajectoryGroup.getChildren().remove(0, Math.min(removedFromStart, lineCount));
+            appendTrajectoryLines(trajectory, trajectoryGroup, originX.get(), originY.get());
         }
     }
 
@@ -355,21 +600,9 @@ public final class AircraftController {
      * @return The corresponding altitude color
      * @see 2.2 Given formula : https://cs108.epfl.ch/p/09_aircraft-view.html
      */
-    private Color getAltitudeColor(double altitude) {
+    static Color getAltitudeColor(double altitude) {
         final double MAX_ALTITUDE = 12000;
         double c = Math.cbrt(altitude / MAX_ALTITUDE);
         return ColorRamp.PLASMA.at(c);
     }
-
-    /**
-     * Returns the fill property for the aircraft state.
-     *
-     * @param aircraftState The observable aircraft state
-     * @return The fill property for the aircraft state
-     */
-    private ObjectProperty<Color> getFillProperty(ObservableAircraftState aircraftState) {
-        double altitude = aircraftState.altitudeProperty().get();
-        return new SimpleObjectProperty<>(getAltitudeColor(altitude));
-    }
 }
-
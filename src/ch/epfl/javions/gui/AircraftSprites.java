@@ -0,0 +1,124 @@
+package ch.epfl.javions.gui;
+
+import ch.epfl.javions.Units;
+import javafx.scene.SnapshotParameters;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.image.Image;
+import javafx.scene.image.WritableImage;
+import javafx.scene.paint.Color;
+import javafx.scene.shape.StrokeLineJoin;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Represents a cache of pre-rasterised aircraft icons. Each icon is rasterised once for every altitude colour
+ * bucket and, if it can rotate, for every rotation bucket, the first time it is needed, so that drawing an
+ * aircraft only costs one image copy instead of the tessellation and rotation of its SVG path.
+ * The sprites are centred on the position of the aircraft, and must only be created on the JavaFX thread.
+ *
+ * @author Arthur Wolf (344200)
+ * @author Oussama Ghali (341478)
+ */
+final class AircraftSprites {
+    // Number of distinct altitude colours, one per colour of the plasma ramp
+    static final int COLOR_BUCKET_COUNT = 32;
+    // Number of distinct orientations of the icons that can rotate, i.e. one every 5 degrees
+    static final int ROTATION_BUCKET_COUNT = 72;
+    // Size of a sprite in pixels, large enough to contain every icon with its stroke, whatever its rotation
+    static final int SPRITE_SIZE = 40;
+    private final Map<AircraftIcon, WritableImage[]> sprites = new EnumMap<>(AircraftIcon.class);
+
+    /**
+     * Returns the sprite of the given icon, coloured according to the given altitude, and rotated according to
+     * the given track or heading if the icon can rotate
+     *
+     * @param icon           The aircraft icon
+     * @param altitude       The altitude of the aircraft in meters
+     * @param trackOrHeading The track or heading of the aircraft in radians
+     * @return The sprite of the icon
+     */
+    Image spriteFor(AircraftIcon icon, double altitude, double trackOrHeading) {
+        WritableImage[] iconSprites = sprites.computeIfAbsent(icon, i ->
+                new WritableImage[COLOR_BUCKET_COUNT * (i.canRotate() ? ROTATION_BUCKET_COUNT : 1)]);
+        int colorBucket = colorBucket(altitude);
+        int rotationBucket = icon.canRotate() ? rotationBucket(trackOrHeading) : 0;
+        int index = icon.canRotate() ? colorBucket * ROTATION_BUCKET_COUNT + rotationBucket : colorBucket;
+        if (iconSprites[index] == null)
+            iconSprites[index] = rasterise(icon, bucketColor(colorBucket), bucketRotation(rotationBucket));
+        return iconSprites[index];
+    }
+
+    /**
+     * Returns the colour bucket of the given altitude
+     *
+     * @param altitude The altitude in meters
+     * @return The index of the colour bucket, in [0, COLOR_BUCKET_COUNT[
+     */
+    static int colorBucket(double altitude) {
+        final double MAX_ALTITUDE = 12000;
+        double c = Math.cbrt(altitude / MAX_ALTITUDE);
+        if (Double.isNaN(c)) return 0;
+        return (int) Math.round(Math.max(0, Math.min(1, c)) * (COLOR_BUCKET_COUNT - 1));
+    }
+
+    /**
+     * Returns the colour of the given bucket
+     *
+     * @param bucket The index of the colour bucket
+     * @return The colour of the bucket
+     */
+    static Color bucketColor(int bucket) {
+        return ColorRamp.PLASMA.at((double) bucket / (COLOR_BUCKET_COUNT - 1));
+    }
+
+    /**
+     * Returns the rotation bucket of the given track or heading, i.e. the closest orientation of the sprites
+     *
+     * @param trackOrHeading The track or heading in radians
+     * @return The index of the rotation bucket, in [0, ROTATION_BUCKET_COUNT[
+     */
+    static int rotationBucket(double trackOrHeading) {
+        if (!Double.isFinite(trackOrHeading)) return 0;
+        double turns = Units.convertTo(trackOrHeading, Units.Angle.TURN);
+        return Math.floorMod(Math.round(turns * ROTATION_BUCKET_COUNT), ROTATION_BUCKET_COUNT);
+    }
+
+    /**
+     * Returns the rotation of the given bucket
+     *
+     * @param bucket The index of the rotation bucket
+     * @return The rotation of the bucket in degrees
+     */
+    static double bucketRotation(int bucket) {
+        final double FULL_TURN_IN_DEGREES = 360;
+        return bucket * FULL_TURN_IN_DEGREES / ROTATION_BUCKET_COUNT;
+    }
+
+    /**
+     * Rasterises an icon, filled with the given colour and stroked in black, after rotating it clockwise
+     *
+     * @param icon     The aircraft icon
+     * @param color    The fill colour
+     * @param rotation The rotation in degrees
+     * @return The rasterised icon
+     */
+    private static WritableImage rasterise(AircraftIcon icon, Color color, double rotation) {
+        Canvas canvas = new Canvas(SPRITE_SIZE, SPRITE_SIZE);
+        GraphicsContext graphicsContext = canvas.getGraphicsContext2D();
+        graphicsContext.translate(SPRITE_SIZE / 2d, SPRITE_SIZE / 2d);
+        graphicsContext.rotate(rotation);
+        graphicsContext.beginPath();
+        graphicsContext.appendSVGPath(icon.svgPath());
+        graphicsContext.setFill(color);
+        graphicsContext.fill();
+        graphicsContext.setStroke(Color.BLACK);
+        graphicsContext.setLineJoin(StrokeLineJoin.ROUND);
+        graphicsContext.stroke();
+
+        SnapshotParameters parameters = new SnapshotParameters();
+        parameters.setFill(Color.TRANSPARENT);
+        return canvas.snapshot(parameters, null);
+    }
+}
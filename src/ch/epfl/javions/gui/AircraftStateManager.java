@@ -2,15 +2,23 @@ package ch.epfl.javions.gui;
 
 import ch.epfl.javions.adsb.AircraftStateAccumulator;
 import ch.epfl.javions.adsb.Message;
+import ch.epfl.javions.aircraft.AircraftData;
 import ch.epfl.javions.aircraft.AircraftDatabase;
 import ch.epfl.javions.aircraft.IcaoAddress;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableSet;
 
 import java.io.IOException;
-import java.util.HashMap;
+import java.io.UncheckedIOException;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
 
 
 /**
@@ -21,6 +29,13 @@ import java.util.Map;
  * The class supports adding and removing accumulators from the table, updating an accumulator with a message,
  * and purging the table of old aircraft states based on their last message timestamp. The purging process
  * helps to maintain the efficiency of the system and avoid unnecessary memory usage.
+ * The table is kept in access-order, so that the aircraft that has been silent for the longest time is always
+ * at its head and a purge only has to visit the states that actually expired.
+ * Several messages can be applied in a batch, in which case each aircraft state publishes its new values only
+ * once, at the end of the batch.
+ * The data of a new aircraft is looked up in the database by a lookup executor, so that a slow database does not
+ * block the updates : the state is created at once, and its data is set by a completion executor once known.
+ * The results of the recent lookups, including the addresses that are not in the database, are cached.
  *
  * @author Arthur Wolf (344200)
  * @author Oussama Ghali (341478)
@@ -30,16 +45,47 @@ public final class AircraftStateManager {
     private final ObservableSet<ObservableAircraftState> observableAircraftStates;
     private final ObservableSet<ObservableAircraftState> observableAircraftStatesView;
     private final AircraftDatabase database;
+    private final Executor lookupExecutor;
+    private final Executor completionExecutor;
+    // Recent lookups, in progress or done, in access-order so that the least recently used one is evicted first
+    private final Map<IcaoAddress, CompletableFuture<AircraftData>> lookups;
     private long lastTimeStampsNs;
+    // States modified since the beginning of the current batch, null if there is no batch in progress
+    private Set<ObservableAircraftState> batchedStates;
+    private static final int INITIAL_CAPACITY = 16;
+    private static final float LOAD_FACTOR = 0.75f;
+    private static final int LOOKUP_CACHE_CAPACITY = 4096;
 
     /**
-     * Constructs an aircraft state manager
+     * Constructs an aircraft state manager looking up the data of the aircraft synchronously
      *
      * @param database The aircraft database
      */
     public AircraftStateManager(AircraftDatabase database) {
+        this(database, Runnable::run, Runnable::run);
+    }
+
+    /**
+     * Constructs an aircraft state manager looking up the data of the aircraft with the given executors
+     *
+     * @param database           The aircraft database
+     * @param lookupExecutor     The executor looking up the data of the aircraft in the database
+     * @param completionExecutor The executor setting the data of the aircraft states once looked up, which must run
+     *                           its actions on the thread using the manager (e.g. Platform::runLater)
+     * @throws NullPointerException If one of the executors is null
+     */
+    public AircraftStateManager(AircraftDatabase database, Executor lookupExecutor, Executor completionExecutor) {
         this.database = database;
-        table = new HashMap<>();
+        this.lookupExecutor = Objects.requireNonNull(lookupExecutor);
+        this.completionExecutor = Objects.requireNonNull(completionExecutor);
+        lookups = new LinkedHashMap<>(INITIAL_CAPACITY, LOAD_FACTOR, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<IcaoAddress, CompletableFuture<AircraftData>> eldest) {
+                return size() > LOOKUP_CACHE_CAPACITY;
+            }
+        };
+        // Access-order : every message moves its aircraft to the tail of the table
+        table = new LinkedHashMap<>(INITIAL_CAPACITY, LOAD_FACTOR, true);
         observableAircraftStates = FXCollections.observableSet();
         observableAircraftStatesView = FXCollections.unmodifiableObservableSet(observableAircraftStates);
     }
@@ -57,10 +103,10 @@ public final class AircraftStateManager {
      * Updates the aircraft state manager with a given message.
      * This method first retrieves the IcaoAddress from the message and attempts to get the associated
      * AircraftStateAccumulator from the table.
-     * If the address is null or not found in the database, the method does not make any changes.
+     * If the address is not in the table, a new state is created, whose data is looked up in the database.
      *
      * @param message The message used to update the aircraft state manager
-     * @throws IOException If an I/O error occurs
+     * @throws IOException If an I/O error occurs while looking up the data synchronously
      */
     public void updateWithMessage(Message message) throws IOException {
         // Get the IcaoAddress from the message
@@ -71,25 +117,149 @@ public final class AircraftStateManager {
 
         // If the accumulator is not found in the table, create a new one and add it to the table
         if (accumulator == null) {
-            accumulator = new AircraftStateAccumulator<>(new ObservableAircraftState(address, database.get(address)));
+            accumulator = new AircraftStateAccumulator<>(newState(address));
             table.put(address, accumulator);
         }
 
-        // Update the accumulator with the message
-        accumulator.update(message);
+        // Update the accumulator with the message, all the fields it modifies being published at once
+        ObservableAircraftState state = accumulator.stateSetter();
+        if (batchedStates == null) {
+            state.beginUpdate();
+            try {
+                accumulator.update(message);
+            } finally {
+                state.endUpdate();
+            }
+            publish(state);
+        } else {
+            // The state is published at the end of the batch
+            if (batchedStates.add(state))
+                state.beginUpdate();
+            accumulator.update(message);
+        }
 
-        // If the accumulator's state setter's position is not null, add the accumulator's state setter
-        // to the observable aircraft states and update the last timestamp with the message's timestamp
-        if (!(accumulator.stateSetter().getPosition() == null)) {
-            observableAircraftStates.add(accumulator.stateSetter());
+        // If the accumulator's state setter's position is not null, update the last timestamp with the message's timestamp
+        if (state.getPosition() != null)
             lastTimeStampsNs = message.timeStampNs();
+    }
+
+    /**
+     * Creates the state of a new aircraft, with its data if it is already known, or sets it once looked up.
+     *
+     * @param address The ICAO address of the aircraft
+     * @return The state of the aircraft
+     * @throws IOException If an I/O error occurs while looking up the data synchronously
+     */
+    private ObservableAircraftState newState(IcaoAddress address) throws IOException {
+        CompletableFuture<AircraftData> lookup = lookup(address);
+        if (!lookup.isDone()) {
+            ObservableAircraftState state = new ObservableAircraftState(address, null);
+            setDataOnceLookedUp(state, lookup);
+            return state;
         }
+
+        try {
+            return new ObservableAircraftState(address, lookup.join());
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof UncheckedIOException ioException) throw ioException.getCause();
+            throw e;
+        }
+    }
+
+    /**
+     * Sets the data of the given aircraft state once it is looked up. If the lookup fails, the data is unchanged.
+     *
+     * @param state  The aircraft state
+     * @param lookup The lookup of the data of the aircraft
+     */
+    private void setDataOnceLookedUp(ObservableAircraftState state, CompletableFuture<AircraftData> lookup) {
+        lookup.whenCompleteAsync((data, e) -> {
+            // A failed lookup leaves the aircraft without data, as if it were not in the database
+            if (e == null) state.setAircraftData(data);
+        }, completionExecutor);
+    }
+
+    /**
+     * Looks up again the data of every aircraft, for example after the database has been reloaded.
+     * The cached lookups are discarded, and the data of each aircraft state is replaced once looked up.
+     */
+    public void refreshAircraftData() {
+        lookups.clear();
+        for (AircraftStateAccumulator<ObservableAircraftState> accumulator : table.values()) {
+            ObservableAircraftState state = accumulator.stateSetter();
+            setDataOnceLookedUp(state, lookup(state.getIcaoAddress()));
+        }
+    }
+
+    /**
+     * Returns the lookup of the data of the given aircraft, starting it unless it is cached.
+     * A failed lookup is removed from the cache, so that it is retried the next time the aircraft appears.
+     *
+     * @param address The ICAO address of the aircraft
+     * @return The lookup of the data of the aircraft, whose result is null if it is not in the database
+     */
+    private CompletableFuture<AircraftData> lookup(IcaoAddress address) {
+        CompletableFuture<AircraftData> lookup = lookups.get(address);
+        if (lookup != null) return lookup;
+
+        CompletableFuture<AircraftData> newLookup = CompletableFuture.supplyAsync(() -> {
+            try {
+                return database.get(address);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, lookupExecutor);
+        lookups.put(address, newLookup);
+        newLookup.whenCompleteAsync((data, e) -> {
+            if (e != null) lookups.remove(address, newLookup);
+        }, completionExecutor);
+        return newLookup;
+    }
+
+    /**
+     * Starts a batch of updates. Until the end of the batch, the aircraft states modified by updateWithMessage
+     * do not publish their new values, and new aircraft are not added to the observable aircraft states.
+     *
+     * @throws IllegalStateException If a batch is already in progress
+     */
+    public void beginBatch() {
+        if (batchedStates != null) throw new IllegalStateException();
+        batchedStates = new LinkedHashSet<>();
+    }
+
+    /**
+     * Ends the current batch of updates, publishing the last values of every aircraft state modified during it.
+     *
+     * @throws IllegalStateException If there is no batch in progress
+     */
+    public void endBatch() {
+        if (batchedStates == null) throw new IllegalStateException();
+        Set<ObservableAircraftState> states = batchedStates;
+        batchedStates = null;
+
+        // The states purged during the batch have been removed from it
+        for (ObservableAircraftState state : states) {
+            state.endUpdate();
+            publish(state);
+        }
+    }
+
+    /**
+     * Adds the given state to the observable aircraft states if its position is known.
+     *
+     * @param state The aircraft state
+     */
+    private void publish(ObservableAircraftState state) {
+        if (state.getPosition() != null)
+            observableAircraftStates.add(state);
     }
 
     /**
      * Purges the aircraft state manager.
-     * This method iterates over the entries in the table. Each entry contains an IcaoAddress
-     * and an associated AircraftStateAccumulator.
+     * This method iterates over the entries in the table, from the least recently updated one, and removes
+     * the aircraft that did not send any message during the last minute. Since the table is in access-order,
+     * the iteration stops at the first aircraft that is still active, so that the cost of a purge is
+     * proportional to the number of removed aircraft and not to the number of tracked ones.
      * This method is keeping the data up-to-date.
      */
     public void purge() {
@@ -98,18 +268,20 @@ public final class AircraftStateManager {
 
         // Create an iterator for the entry set of the table
         Iterator<Map.Entry<IcaoAddress, AircraftStateAccumulator<ObservableAircraftState>>> it = table.entrySet().iterator();
-        // Iterate over the entries in the table
+        // Iterate over the entries in the table, the oldest ones come first
         while (it.hasNext()) {
-            // Get the AircraftStateAccumulator associated with the current entry
-            Map.Entry<IcaoAddress, AircraftStateAccumulator<ObservableAircraftState>> entry = it.next();
-            AircraftStateAccumulator<ObservableAircraftState> accumulator = entry.getValue();
-            // If the difference between the last timestamp and the accumulator's last message
-            // timestamp is greater than DT, remove the accumulator from the observable aircraft states and the table
-
-            if (lastTimeStampsNs - accumulator.stateSetter().getLastMessageTimeStampNs() > DT) {
-                observableAircraftStates.remove(accumulator.stateSetter());
-                it.remove();
-            }
+            AircraftStateAccumulator<ObservableAircraftState> accumulator = it.next().getValue();
+            // All the following accumulators received a message after this one, so none of them is outdated
+            if (lastTimeStampsNs - accumulator.stateSetter().getLastMessageTimeStampNs() <= DT)
+                return;
+
+            // Remove the outdated accumulator from the observable aircraft states and the table
+            ObservableAircraftState state = accumulator.stateSetter();
+            observableAircraftStates.remove(state);
+            // A state purged during a batch is not published at its end, even if its aircraft reappears meanwhile
+            if (batchedStates != null && batchedStates.remove(state))
+                state.endUpdate();
+            it.remove();
         }
     }
 }
@@ -149,24 +149,24 @@ public final class AircraftTableController {
         // ---------------------------------Registration-----------------------------------
         TableColumn<ObservableAircraftState, String> registrationColumn = createColumn("Immatriculation", REGISTRATION_COLUMN_WIDTH);
         registrationColumn.setCellValueFactory(cellData ->
-                    wrap(cellData.getValue().getAircraftData())
+                    cellData.getValue().aircraftDataProperty()
                     .map(f -> f.registration().string()));
         // ---------------------------------Model------------------------------------------
         TableColumn<ObservableAircraftState, String> modelColumn = createColumn("Modèle", MODEL_COLUMN_WIDTH);
         modelColumn.setCellValueFactory(cellData ->
-                    wrap(cellData.getValue().getAircraftData())
+                    cellData.getValue().aircraftDataProperty()
                     .map(AircraftData::model));
 
         // ---------------------------------Type Designator---------------------------------
         TableColumn<ObservableAircraftState, String> typeColumn = createColumn("Type", DESIGNATOR_COLUMN_WIDTH);
         typeColumn.setCellValueFactory(cellData ->
-                    wrap(cellData.getValue().getAircraftData())
+                    cellData.getValue().aircraftDataProperty()
                     .map(f -> f.typeDesignator().string()));
 
         // ---------------------------------Description-------------------------------------
         TableColumn<ObservableAircraftState, String> descriptionColumn = createColumn("Description", DESCRIPTION_COLUMN_WIDTH);
         descriptionColumn.setCellValueFactory(cellData ->
-                    wrap(cellData.getValue().getAircraftData())
+                    cellData.getValue().aircraftDataProperty()
                     .map(f -> f.description().string()));
 
         // ---------------------------------Longitude---------------------------------------
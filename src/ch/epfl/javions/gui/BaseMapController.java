@@ -12,8 +12,7 @@ import javafx.scene.canvas.Canvas;
 import javafx.scene.canvas.GraphicsContext;
 import javafx.scene.image.Image;
 import javafx.scene.layout.Pane;
-
-import java.io.IOException;
+import javafx.scene.paint.Color;
 
 /**
  * Manages the display and interaction with the background map.
@@ -25,6 +24,8 @@ import java.io.IOException;
  * @author Oussama Ghali (341478)
  */
 public final class BaseMapController {
+    // Colour of the tiles that are being loaded
+    private static final Color PLACEHOLDER_COLOR = Color.gray(0.9);
     private final TileManager tileManager;
     private final MapParameters mapParameters;
     private final Pane pane;
@@ -33,6 +34,13 @@ public final class BaseMapController {
     // Will be true if redraw is needed
     private boolean redrawNeeded;
 
+    // Visible part of the map at the last draw, and direction of its last movement, used to prefetch the tiles
+    private int lastDrawZoom;
+    private double lastDrawMinX;
+    private double lastDrawMinY;
+    private double movementX;
+    private double movementY;
+
     /**
      * Constructs a BaseMapController with the specified TileManager and MapParameters.
      *
@@ -80,6 +88,9 @@ public final class BaseMapController {
      * Draws the map using tiles obtained from the TileManager.
      * This function calculates which tiles are needed based on the current map parameters,
      * obtains these tiles from the TileManager, and then draws them onto the map canvas.
+     * The tiles that are not in the memory cache yet are drawn from the cached tiles of other zoom levels, or as
+     * placeholders, while they are loaded asynchronously, the map being redrawn once they are available.
+     * The tiles likely to be needed next are then prefetched.
      */
     private void draw() {
         // Size of an OSM Tile in pixels
@@ -101,23 +112,111 @@ public final class BaseMapController {
 
         for (int xTileMap = topLeftXIndexTile; xTileMap <= bottomRightXIndexTile; xTileMap++) {
             for (int yTileMap = topLeftYIndexTile; yTileMap <= bottomRightYIndexTile; yTileMap++) {
-                try {
-                    if (TileManager.TileId.isValid(mapParameters.getZoom(), xTileMap, yTileMap)) {
-                        // Get the image corresponding to each tile displayed (at least partially) on the map portion
-                        Image image = tileManager.imageForTileAt(new TileManager.TileId(mapParameters.getZoom(),
-                                xTileMap,
-                                yTileMap));
-
+                if (TileManager.TileId.isValid(mapParameters.getZoom(), xTileMap, yTileMap)) {
+                    TileManager.TileId tileId = new TileManager.TileId(mapParameters.getZoom(), xTileMap, yTileMap);
+                    double x = xTileMap * OSM_TILE_SIZE - mapParameters.getMinX();
+                    double y = yTileMap * OSM_TILE_SIZE - mapParameters.getMinY();
+
+                    // Get the image corresponding to each tile displayed (at least partially) on the map portion
+                    Image image = tileManager.cachedImageForTileAt(tileId);
+                    if (image != null) {
                         // Draw the image to the corresponding position using the topLeft point
-                        graphicsContext.drawImage(image,
-                                xTileMap * OSM_TILE_SIZE - mapParameters.getMinX(),
-                                yTileMap * OSM_TILE_SIZE - mapParameters.getMinY());
+                        graphicsContext.drawImage(image, x, y);
+                    } else {
+                        drawFallback(graphicsContext, tileId, x, y);
+                        loadTile(tileId);
                     }
-                } catch (IOException e) {
-                    e.printStackTrace();
                 }
             }
         }
+
+        prefetchTiles();
+    }
+
+    /**
+     * Prefetches the tiles around the visible part of the map, favouring the direction in which it moves,
+     * and the tiles of the adjacent zoom levels.
+     */
+    private void prefetchTiles() {
+        // Maximal number of tiles prefetched at a time, about the number of tiles of a full-HD map
+        final int MAX_PREFETCHED_TILE_COUNT = 48;
+
+        // The direction is the one of the last movement of the map, until the zoom level changes
+        if (mapParameters.getZoom() != lastDrawZoom) {
+            movementX = 0;
+            movementY = 0;
+        } else if (mapParameters.getMinX() != lastDrawMinX || mapParameters.getMinY() != lastDrawMinY) {
+            movementX = mapParameters.getMinX() - lastDrawMinX;
+            movementY = mapParameters.getMinY() - lastDrawMinY;
+        }
+        lastDrawZoom = mapParameters.getZoom();
+        lastDrawMinX = mapParameters.getMinX();
+        lastDrawMinY = mapParameters.getMinY();
+
+        tileManager.prefetch(TilePrefetcher.tilesToPrefetch(mapParameters.getZoom(),
+                mapParameters.getMinX(), mapParameters.getMinY(), canvas.getWidth(), canvas.getHeight(),
+                movementX, movementY, MAX_PREFETCHED_TILE_COUNT));
+    }
+
+    /**
+     * Draws a tile that is not loaded yet using the tiles of the other zoom levels that are in the memory cache :
+     * the region of the closest cached ancestor covering the tile, scaled up, and over it the cached children of the
+     * tile, scaled down. The parts that are not covered by any of them are drawn as a placeholder.
+     * The other tiles are only peeked at, so that they neither count in the statistics of the cache nor are kept
+     * in it longer.
+     *
+     * @param graphicsContext The graphics context of the canvas.
+     * @param tileId          The ID of the tile.
+     * @param x               The x-coordinate of the tile on the canvas.
+     * @param y               The y-coordinate of the tile on the canvas.
+     */
+    private void drawFallback(GraphicsContext graphicsContext, TileManager.TileId tileId, double x, double y) {
+        // Size of an OSM Tile in pixels
+        final int OSM_TILE_SIZE = 256;
+        // Maximal number of zoom levels between a tile and the ancestor replacing it, the region of the ancestor
+        // being then 8 pixels wide
+        final int MAX_ANCESTOR_DEPTH = 5;
+
+        graphicsContext.setFill(PLACEHOLDER_COLOR);
+        graphicsContext.fillRect(x, y, OSM_TILE_SIZE, OSM_TILE_SIZE);
+
+        for (int depth = 1; depth <= MAX_ANCESTOR_DEPTH && depth <= tileId.zoomLevel(); depth++) {
+            Image ancestor = tileManager.peekImageForTileAt(new TileManager.TileId(tileId.zoomLevel() - depth,
+                    tileId.indexX() >> depth, tileId.indexY() >> depth));
+            if (ancestor != null) {
+                // Region of the ancestor covered by the tile
+                double regionSize = Math.scalb((double) OSM_TILE_SIZE, -depth);
+                int mask = (1 << depth) - 1;
+                graphicsContext.drawImage(ancestor,
+                        (tileId.indexX() & mask) * regionSize, (tileId.indexY() & mask) * regionSize, regionSize, regionSize,
+                        x, y, OSM_TILE_SIZE, OSM_TILE_SIZE);
+                break;
+            }
+        }
+
+        // The children are more detailed than the ancestor, and drawn over it
+        final int HALF_TILE_SIZE = OSM_TILE_SIZE / 2;
+        for (int childX = 0; childX <= 1; childX++) {
+            for (int childY = 0; childY <= 1; childY++) {
+                Image child = tileManager.peekImageForTileAt(new TileManager.TileId(tileId.zoomLevel() + 1,
+                        2 * tileId.indexX() + childX, 2 * tileId.indexY() + childY));
+                if (child != null)
+                    graphicsContext.drawImage(child, x + childX * HALF_TILE_SIZE, y + childY * HALF_TILE_SIZE,
+                            HALF_TILE_SIZE, HALF_TILE_SIZE);
+            }
+        }
+    }
+
+    /**
+     * Loads a tile asynchronously, and redraws the map on the JavaFX thread once it is loaded.
+     *
+     * @param tileId The ID of the tile to load.
+     */
+    private void loadTile(TileManager.TileId tileId) {
+        tileManager.loadImageForTileAt(tileId).whenCompleteAsync((image, e) -> {
+            // A failed tile stays a placeholder until the next redraw, to avoid retrying it continuously
+            if (e == null) redrawOnNextPulse();
+        }, Platform::runLater);
     }
 
     /**
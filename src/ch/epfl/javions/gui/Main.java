@@ -1,17 +1,21 @@
 package ch.epfl.javions.gui;
 
-import ch.epfl.javions.ByteString;
+import ch.epfl.javions.RingBuffer;
 import ch.epfl.javions.adsb.Message;
 import ch.epfl.javions.adsb.MessageParser;
 import ch.epfl.javions.adsb.RawMessage;
+import ch.epfl.javions.adsb.RawMessageRecorder;
+import ch.epfl.javions.adsb.RawMessageReplay;
 import ch.epfl.javions.aircraft.AircraftDatabase;
 import ch.epfl.javions.demodulation.AdsbDemodulator;
 import javafx.application.Application;
+import javafx.application.Platform;
 import javafx.beans.binding.Bindings;
 import javafx.beans.property.SimpleObjectProperty;
 import javafx.scene.Scene;
 import javafx.scene.control.*;
 import javafx.scene.layout.BorderPane;
+import javafx.scene.layout.Pane;
 import javafx.scene.layout.StackPane;
 import javafx.stage.Stage;
 
@@ -20,7 +24,8 @@ import java.net.URL;
 import java.nio.file.Path;
 import java.util.List;
 import java.util.Objects;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.function.Supplier;
 
 import javafx.animation.AnimationTimer;
@@ -29,9 +34,12 @@ import javafx.animation.AnimationTimer;
  * This is the main class for the Javions application.
  * It sets up the graphical user interface and starts the application.
  * It also handles the process of parsing incoming ADS-B messages and updating the displayed aircraft states.
- * This class employs multithreading and uses a thread-safe queue for storing the incoming messages.
+ * This class employs multithreading and uses a bounded, lock-free queue for storing the incoming messages.
+ * When the queue is full, a file replay waits for the interface to catch up, while live messages replace the oldest ones.
  * A separate thread reads incoming messages and adds them to the queue.
+ * The live messages can be recorded to rolling logs with --record=directory, and these logs replayed later, possibly faster.
  * The application periodically updates the aircraft states and the application status based on the messages in the queue.
+ * On every frame, the queue is drained in a batch, for at most a fixed amount of time so that the interface stays fluid.
  * The GUI includes a map for displaying aircraft, a table for displaying a list of all aircraft, and a status line for displaying application status.
  * The map and the status bar are displayed in a split pane. The user can select an aircraft in the table by clicking on it.
  * For a double-click, the map centers on the aircraft.
@@ -41,6 +49,10 @@ import javafx.animation.AnimationTimer;
  */
 public class Main extends Application {
     private long lastPurge = System.nanoTime();
+    // Records the live messages with --record=<directory>, null if they are not recorded
+    private RawMessageRecorder recorder;
+    // Stops watching the file of the aircraft database, null until the database is watched
+    private Closeable aircraftDatabaseWatch;
 
     /**
      * This method starts the application.
@@ -50,24 +62,6 @@ public class Main extends Application {
         launch(args);
     }
 
-    /**
-     * This method reads a raw ADS-B message from an input stream.
-     * @param inputStream The input stream to read from.
-     * @return The raw ADS-B message or null if the length of the read bytes does not match the expected length.
-     * @throws IOException If an I/O error occurs.
-     */
-    private static RawMessage readMessage(DataInputStream inputStream) throws IOException {
-        final int RAW_MESSAGE_LENGTH = RawMessage.LENGTH;
-        byte[] bytes = new byte[RAW_MESSAGE_LENGTH];
-        long timeStampNs = inputStream.readLong();
-        int bytesRead = inputStream.readNBytes(bytes, 0, bytes.length);
-
-        if (bytesRead == RAW_MESSAGE_LENGTH)
-            return new RawMessage(timeStampNs, new ByteString(bytes));
-
-        return null;
-    }
-
     /**
      * This method initializes the JavaFX application.
      * It sets up the map, aircraft database, status line, and starts the message handling threads.
@@ -83,10 +77,18 @@ public class Main extends Application {
         final String TITLE = "Javions";
         final int MIN_WIDTH = 800;
         final int MIN_HEIGHT = 600;
-        final ConcurrentLinkedQueue<RawMessage> messageQueue = new ConcurrentLinkedQueue<>();
+        final int MESSAGE_QUEUE_CAPACITY = 1 << 16;
+        final String RENDERER_PARAMETER = "renderer";
+        final String CANVAS_RENDERER = "canvas";
+        final String TILE_MEMORY_CACHE_PARAMETER = "tile-cache-mb";
+        final String DEFAULT_TILE_MEMORY_CACHE_SIZE_IN_MB = "128";
+        final RingBuffer<RawMessage> messageQueue = new RingBuffer<>(MESSAGE_QUEUE_CAPACITY,
+                getParameters().getUnnamed().isEmpty()
+                        ? RingBuffer.OverflowPolicy.DROP_OLDEST
+                        : RingBuffer.OverflowPolicy.BLOCK);
 
-        long startTime = System.nanoTime();
         Path tileCachePath = Path.of("tile-cache");
+        Path aircraftIndexPath = Path.of("aircraft.index");
         URL dbUrl = getClass().getResource("/aircraft.zip");
         Objects.requireNonNull(dbUrl, "Database URL cannot be null");
         String dbFilePath = Path.of(dbUrl.toURI()).toString();
@@ -98,23 +100,45 @@ public class Main extends Application {
         // - baseMapController: controls the base map
         // - aircraftDatabase: a database of all the aircraft
         // - aircraftStateManager: manages the state of all the aircraft
-        // - aircraftController: controls the aircraft, including movement and selection
+        // - aircraftPane: displays the aircraft, including movement and selection, either as scene-graph nodes
+        //   (aircraftController) or drawn on a canvas (aircraftCanvasController)
         // - aircraftTableController: controls the table that displays the list of aircraft
         // - statusLineController: controls the line that displays the status of the application
 
         SimpleObjectProperty<ObservableAircraftState> selectedAircraftProperty = new SimpleObjectProperty<>();
         MapParameters mapParameters = new MapParameters(INITIAL_ZOOM, INITIAL_LONGITUDE, INITIAL_LATITUDE);
-        TileManager tileManager = new TileManager(tileCachePath, TILE_SERVER_ADDRESS);
+        // The size of the memory cache of the tiles can be given in megabytes with --tile-cache-mb=N
+        int tileMemoryCacheSizeInMb = Integer.parseInt(getParameters().getNamed()
+                .getOrDefault(TILE_MEMORY_CACHE_PARAMETER, DEFAULT_TILE_MEMORY_CACHE_SIZE_IN_MB));
+        TileManager tileManager = new TileManager(tileCachePath, TILE_SERVER_ADDRESS, tileMemoryCacheSizeInMb);
         BaseMapController baseMapController = new BaseMapController(tileManager, mapParameters);
-        AircraftDatabase aircraftDatabase = new AircraftDatabase(dbFilePath);
-        AircraftStateManager aircraftStateManager = new AircraftStateManager(aircraftDatabase);
-        AircraftController aircraftController = new AircraftController(mapParameters, aircraftStateManager.states(), selectedAircraftProperty);
+        // The database is indexed in a file on the first start, and this index is then memory-mapped,
+        // so that looking up an aircraft only requires reads from the page cache
+        AircraftDatabase aircraftDatabase = AircraftDatabase.mapped(dbFilePath, aircraftIndexPath);
+        // The aircraft data is looked up in the background, and set on the JavaFX thread
+        ExecutorService aircraftLookupExecutor = Executors.newSingleThreadExecutor(task -> {
+            Thread lookupThread = new Thread(task, "aircraft-lookup");
+            lookupThread.setDaemon(true);
+            return lookupThread;
+        });
+        AircraftStateManager aircraftStateManager =
+                new AircraftStateManager(aircraftDatabase, aircraftLookupExecutor, Platform::runLater);
+        // The aircraft are drawn on a single canvas instead of the scene graph with --renderer=canvas
+        Pane aircraftPane = CANVAS_RENDERER.equals(getParameters().getNamed().get(RENDERER_PARAMETER))
+                ? new AircraftCanvasController(mapParameters, aircraftStateManager.states(), selectedAircraftProperty).pane()
+                : new AircraftController(mapParameters, aircraftStateManager.states(), selectedAircraftProperty).pane();
         AircraftTableController aircraftTableController = new AircraftTableController(aircraftStateManager.states(), selectedAircraftProperty);
         StatusLineController statusLineController = new StatusLineController();
 
         statusLineController.aircraftCountProperty().bind(Bindings.size(aircraftStateManager.states()));
+        statusLineController.databaseInformationProperty().set(databaseInformation(aircraftDatabase));
+        // When the database file is replaced, the database is reloaded and the tracked aircraft are looked up again
+        aircraftDatabaseWatch = aircraftDatabase.watch(() -> Platform.runLater(() -> {
+            aircraftStateManager.refreshAircraftData();
+            statusLineController.databaseInformationProperty().set(databaseInformation(aircraftDatabase));
+        }));
 
-        StackPane stackPane = new StackPane(baseMapController.pane(), aircraftController.pane());
+        StackPane stackPane = new StackPane(baseMapController.pane(), aircraftPane);
         BorderPane statusBar = new BorderPane(aircraftTableController.pane(), statusLineController.pane(), null, null, null);
         SplitPane root = new SplitPane(stackPane, statusBar);
 
@@ -127,7 +151,7 @@ public class Main extends Application {
         primaryStage.setMinHeight(MIN_HEIGHT);
         primaryStage.show();
 
-        Supplier<RawMessage> messageSupplier = createMessageSupplier(startTime);
+        Supplier<RawMessage> messageSupplier = createMessageSupplier();
         Thread messageThread = createMessageThread(messageSupplier, messageQueue);
         messageThread.setDaemon(true);
         messageThread.start();
@@ -141,89 +165,153 @@ public class Main extends Application {
     }
 
     /**
-     * Purge old aircraft states and update with new messages if at least a second has passed since the last purge.
+     * This method is called when the application exits. It stops watching the aircraft database, and writes the
+     * messages recorded so far.
+     * @throws IOException If an I/O error occurred while recording the messages.
+     */
+    @Override
+    public void stop() throws IOException {
+        try {
+            if (aircraftDatabaseWatch != null)
+                aircraftDatabaseWatch.close();
+        } finally {
+            if (recorder != null)
+                recorder.close();
+        }
+    }
+
+    /**
+     * Returns the information about the aircraft database shown in the status line: the size of its index and the
+     * time taken to load it.
+     * @param aircraftDatabase The aircraft database.
+     * @return The information about the database, or null if it is not indexed.
+     */
+    private static String databaseInformation(AircraftDatabase aircraftDatabase) {
+        final double BYTES_PER_MB = 1 << 20;
+        final long NANOSECONDS_PER_MILLISECOND = 1_000_000;
+        AircraftDatabase.IndexStatistics indexStatistics = aircraftDatabase.indexStatistics();
+        if (indexStatistics == null) return null;
+        return String.format("Base de données : %d aéronefs, %d chaînes, %.1f Mo chargés en %d ms",
+                indexStatistics.aircraftCount(),
+                indexStatistics.stringCount(),
+                indexStatistics.sizeInBytes() / BYTES_PER_MB,
+                indexStatistics.loadTimeNs() / NANOSECONDS_PER_MILLISECOND);
+    }
+
+    /**
+     * Purge old aircraft states if at least a second has passed since the last purge, and update them with the
+     * messages waiting in the queue. The messages are applied in a batch, until the queue is empty or the time
+     * budget of the frame is exhausted, the remaining ones being handled on the next frame.
      * @param now Current time in nanoseconds.
      * @param aircraftStateManager The aircraft state manager responsible for managing aircraft states.
      * @param statusLineController The controller responsible for managing the status line.
+     * @param messageQueue The queue containing the messages that have not been handled yet.
      */
-    private void purgeAndUpdateStatesIfNeeded(long now, AircraftStateManager aircraftStateManager, StatusLineController statusLineController,ConcurrentLinkedQueue<RawMessage> messageQueue) {
+    private void purgeAndUpdateStatesIfNeeded(long now, AircraftStateManager aircraftStateManager, StatusLineController statusLineController, RingBuffer<RawMessage> messageQueue) {
         final int ONE_SECOND_IN_NANO = 1_000_000_000;
+        // Half of a frame at 60 fps, the other half being left to the layout and the rendering
+        final long FRAME_BUDGET_IN_NANO = 8_000_000;
         if (now - lastPurge > ONE_SECOND_IN_NANO) {
             aircraftStateManager.purge();
             lastPurge = now;
         }
+
+        long deadline = System.nanoTime() + FRAME_BUDGET_IN_NANO;
+        long parsedMessageCount = 0;
+        // Every aircraft publishes its state only once per frame
+        aircraftStateManager.beginBatch();
         try {
-            if (messageQueue.peek() != null) {
-                Message parsedMessage = MessageParser.parse(messageQueue.poll());
+            RawMessage rawMessage;
+            while (System.nanoTime() < deadline && (rawMessage = messageQueue.poll()) != null) {
+                Message parsedMessage = MessageParser.parse(rawMessage);
                 if (parsedMessage != null) {
                     aircraftStateManager.updateWithMessage(parsedMessage);
-                    statusLineController.messageCountProperty().set(statusLineController.messageCountProperty().get() + 1);
+                    parsedMessageCount++;
                 }
             }
         } catch (IOException e) {
             throw new UncheckedIOException(e);
+        } finally {
+            aircraftStateManager.endBatch();
         }
+
+        // The properties are only updated once per frame, whatever the size of the batch
+        if (parsedMessageCount > 0)
+            statusLineController.messageCountProperty().set(statusLineController.messageCountProperty().get() + parsedMessageCount);
+        statusLineController.backlogSizeProperty().set(messageQueue.size());
     }
 
     /**
      * This method creates a new supplier of raw ADS-B messages based on the input source (file or System.in).
      *
-     * @param startTime Start time of the application in nanoseconds.
      * @return The supplier of raw ADS-B messages.
      * @throws IOException If an I/O error occurs.
      */
-    private Supplier<RawMessage> createMessageSupplier(long startTime) throws IOException {
-        List<String> params = getParameters().getRaw();
+    private Supplier<RawMessage> createMessageSupplier() throws IOException {
+        final String RECORD_PARAMETER = "record";
+        final long MAX_LOG_SIZE_IN_BYTES = 64L << 20;
+        final long MAX_LOG_DURATION_NS = 3_600_000_000_000L;
+        List<String> params = getParameters().getUnnamed();
         if (!params.isEmpty())
-            return createFileSupplier(params.get(0), startTime);
+            return createFileSupplier(params.get(0));
         else {
             var adsbDemodulator = new AdsbDemodulator(System.in);
-            return createSystemInSupplier(adsbDemodulator);
+            String recordDirectory = getParameters().getNamed().get(RECORD_PARAMETER);
+            if (recordDirectory != null)
+                recorder = new RawMessageRecorder(Path.of(recordDirectory), MAX_LOG_SIZE_IN_BYTES, MAX_LOG_DURATION_NS);
+            return createSystemInSupplier(adsbDemodulator, recorder);
         }
     }
 
     /**
-     * This method creates a new supplier of raw ADS-B messages from a file.
+     * This method creates a new supplier of raw ADS-B messages from a file, replayed at the speed given by
+     * --replay-speed=factor (1 by default, "max" to replay the file as fast as possible), from the time given in
+     * seconds by --replay-from=seconds (the start of the file by default).
      * @param filePath Path to the file containing raw ADS-B messages.
-     * @param startTime Start time of the application in nanoseconds.
-     * @return The supplier of raw ADS-B messages.
+     * @return The supplier of raw ADS-B messages, which returns null at the end of the file.
+     * @throws IOException If the file cannot be opened.
      */
-    private Supplier<RawMessage> createFileSupplier(String filePath, long startTime) {
-        final long TO_MILLISECONDS = 1_000_000;
-        try {
-            File rawFile = new File(filePath);
-            FileInputStream fileInputStream = new FileInputStream(rawFile);
-            BufferedInputStream bufferedInputStream = new BufferedInputStream(fileInputStream);
-            DataInputStream inputStream = new DataInputStream(bufferedInputStream);
-
-            return () -> {
-                try {
-                    if (inputStream.available() == 0)
-                        inputStream.close();
-                    RawMessage currentMessage = readMessage(inputStream);
-                    Objects.requireNonNull(currentMessage, "Current message cannot be null");
-                    long currentTime = currentMessage.timeStampNs() - (System.nanoTime() - startTime);
-                    if (currentTime >= 0)
-                        Thread.sleep(currentTime / TO_MILLISECONDS);
-
-                    return currentMessage;
-                } catch (InterruptedException | IOException e) {
-                    throw new RuntimeException(e);
-                }
-            };
-        } catch (FileNotFoundException e) {
-            throw new RuntimeException(e);
-        }
+    private Supplier<RawMessage> createFileSupplier(String filePath) throws IOException {
+        final String REPLAY_SPEED_PARAMETER = "replay-speed";
+        final String REPLAY_FROM_PARAMETER = "replay-from";
+        final String UNTHROTTLED_REPLAY_SPEED = "max";
+        final double TO_NANOSECONDS = 1e9;
+        String speedParameter = getParameters().getNamed().getOrDefault(REPLAY_SPEED_PARAMETER, "1");
+        double speed = UNTHROTTLED_REPLAY_SPEED.equals(speedParameter)
+                ? RawMessageReplay.UNTHROTTLED
+                : Double.parseDouble(speedParameter);
+        RawMessageReplay replay = new RawMessageReplay(Path.of(filePath), speed);
+        String fromParameter = getParameters().getNamed().get(REPLAY_FROM_PARAMETER);
+        if (fromParameter != null)
+            replay.seek((long) (Double.parseDouble(fromParameter) * TO_NANOSECONDS));
+
+        return () -> {
+            try {
+                // The replay waits until the message is due
+                RawMessage currentMessage = replay.next();
+                // The end of the log ends the message thread
+                if (currentMessage == null) replay.close();
+                return currentMessage;
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        };
     }
 
     /**
      * This method creates a new supplier of raw ADS-B messages from System.in.
+     * @param adsbDemodulator The demodulator of the samples read from System.in.
+     * @param recorder The recorder of the messages, or null if they are not recorded.
      * @return The supplier of raw ADS-B messages.
      */
-    private Supplier<RawMessage> createSystemInSupplier(AdsbDemodulator adsbDemodulator) {
+    private Supplier<RawMessage> createSystemInSupplier(AdsbDemodulator adsbDemodulator, RawMessageRecorder recorder) {
         return () -> {
             try {
-                return adsbDemodulator.nextMessage();
+                RawMessage message = adsbDemodulator.nextMessage();
+                // The recorder never blocks the demodulation, the messages are written by its own thread
+                if (message != null && recorder != null)
+                    recorder.record(message);
+                return message;
             } catch (IOException e) {
                 throw new RuntimeException(e);
             }
@@ -234,14 +322,15 @@ public class Main extends Application {
      * This method creates a new thread for handling raw ADS-B messages.
      * It continuously reads messages from a supplier and adds them to a queue.
      * @param messageSupplier The supplier of raw ADS-B messages.
+     * @param messageQueue The queue in which the messages are added.
      * @return The new thread.
      */
-    private Thread createMessageThread(Supplier<RawMessage> messageSupplier, ConcurrentLinkedQueue<RawMessage> messageQueue) {
+    private Thread createMessageThread(Supplier<RawMessage> messageSupplier, RingBuffer<RawMessage> messageQueue) {
         return new Thread(() -> {
             while (true) {
                 RawMessage message = messageSupplier.get();
                 if (message == null) break;
-                messageQueue.add(message);
+                messageQueue.offer(message);
             }
         });
     }
@@ -0,0 +1,122 @@
+package ch.epfl.javions.gui;
+
+import ch.epfl.javions.Preconditions;
+import javafx.scene.image.Image;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Represents the memory cache of the tile images, bounded by the size of the decoded images rather than by their
+ * number, and evicting the least recently used images first.
+ * The cache is thread-safe, so that the images can be added by the loader threads while they are read
+ * by the JavaFX thread.
+ *
+ * @author Arthur Wolf (344200)
+ * @author Oussama Ghali (341478)
+ */
+final class MemoryTileCache {
+    // Number of bytes of a decoded pixel (ARGB)
+    private static final int BYTES_PER_PIXEL = 4;
+
+    private final long maxSizeInBytes;
+    // Images in insertion order, an image being moved to the end when it is used, so that the images can also be
+    // read without marking them as used
+    private final LinkedHashMap<TileManager.TileId, Image> images;
+    private long sizeInBytes;
+    private long hitCount;
+    private long missCount;
+    private long evictionCount;
+
+    /**
+     * Constructs an empty cache with the given maximal size
+     *
+     * @param maxSizeInBytes The maximal total size of the decoded images, in bytes
+     * @throws IllegalArgumentException If the maximal size is not strictly positive
+     */
+    MemoryTileCache(long maxSizeInBytes) {
+        Preconditions.checkArgument(maxSizeInBytes > 0);
+        this.maxSizeInBytes = maxSizeInBytes;
+        images = new LinkedHashMap<>();
+    }
+
+    /**
+     * Returns the image of the given tile, and marks it as the most recently used one
+     *
+     * @param tileId The ID of the tile
+     * @return The image of the tile, or null if it is not in the cache
+     */
+    synchronized Image get(TileManager.TileId tileId) {
+        Image image = images.remove(tileId);
+        if (image != null) {
+            images.put(tileId, image);
+            hitCount++;
+        } else {
+            missCount++;
+        }
+        return image;
+    }
+
+    /**
+     * Returns the image of the given tile, without marking it as used nor counting a hit or a miss
+     *
+     * @param tileId The ID of the tile
+     * @return The image of the tile, or null if it is not in the cache
+     */
+    synchronized Image peek(TileManager.TileId tileId) {
+        return images.get(tileId);
+    }
+
+    /**
+     * Returns true if the cache contains the image of the given tile, without marking it as used
+     * nor counting a hit or a miss
+     *
+     * @param tileId The ID of the tile
+     * @return True if the cache contains the image of the tile
+     */
+    synchronized boolean contains(TileManager.TileId tileId) {
+        return images.containsKey(tileId);
+    }
+
+    /**
+     * Adds the image of the given tile, evicting the least recently used images until the size of the cache is
+     * at most its maximal size. The added image itself is never evicted.
+     *
+     * @param tileId The ID of the tile
+     * @param image  The image of the tile
+     */
+    synchronized void put(TileManager.TileId tileId, Image image) {
+        Image oldImage = images.remove(tileId);
+        images.put(tileId, image);
+        if (oldImage != null) sizeInBytes -= sizeOf(oldImage);
+        sizeInBytes += sizeOf(image);
+
+        Iterator<Map.Entry<TileManager.TileId, Image>> iterator = images.entrySet().iterator();
+        while (sizeInBytes > maxSizeInBytes && images.size() > 1) {
+            Image evictedImage = iterator.next().getValue();
+            iterator.remove();
+            sizeInBytes -= sizeOf(evictedImage);
+            evictionCount++;
+        }
+    }
+
+    /**
+     * Returns the statistics of the cache
+     *
+     * @return The statistics of the cache
+     */
+    synchronized TileManager.CacheStatistics statistics() {
+        return new TileManager.CacheStatistics(hitCount, missCount, evictionCount, images.size(), sizeInBytes, maxSizeInBytes);
+    }
+
+    /**
+     * Returns the size of an image once decoded
+     *
+     * @param image The image
+     * @return The size of the decoded image, in bytes
+     */
+    static long sizeOf(Image image) {
+        return (long) Math.ceil(image.getWidth()) * (long) Math.ceil(image.getHeight()) * BYTES_PER_PIXEL;
+    }
+}
@@ -6,9 +6,10 @@ import ch.epfl.javions.adsb.CallSign;
 import ch.epfl.javions.aircraft.AircraftData;
 import ch.epfl.javions.aircraft.IcaoAddress;
 import javafx.beans.property.*;
-import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Objects;
 
 /**
@@ -17,13 +18,19 @@ import java.util.Objects;
  * category, call sign, position, altitude, velocity, and track or heading.
  * It also provides methods to access and modify the aircraft state.
  * The class implements the AircraftStateSetter interface to provide methods for setting the state values.
+ * The state can be modified in a batched way : between a call to beginUpdate and the matching call to endUpdate,
+ * the getters already return the new values, but the properties and the trajectory are only modified once,
+ * at the end of the update, so that the observers are not notified of every intermediate value.
+ * As an update may still modify several properties, the version of the state is incremented once at the end of
+ * each update, so that an observer depending on several properties can be invalidated only once per update.
+ * The aircraft data can be unknown when the state is constructed, and set once it has been looked up.
  *
  * @author Arthur Wolf (344200)
  * @author Oussama Ghali (341478)
  */
 public final class ObservableAircraftState implements AircraftStateSetter {
     private final IcaoAddress icaoAddress;
-    private final AircraftData aircraftData;
+    private final ObjectProperty<AircraftData> aircraftData;
     private final LongProperty lastMessageTimeStampsNs;    // ns
     private final IntegerProperty category;
     private final ObjectProperty<CallSign> callSign;  // 8 chars
@@ -31,24 +38,53 @@ public final class ObservableAircraftState implements AircraftStateSetter {
     private final DoubleProperty altitude;    // m
     private final DoubleProperty velocity;    // m/s
     private final DoubleProperty trackOrHeading; // Radians
-    private final ObservableList<AirbornePos> trajectory = FXCollections.observableArrayList();
-    private final ObservableList<AirbornePos> trajectoryView = FXCollections.unmodifiableObservableList(trajectory);
+    private final Trajectory trajectory;
+    private final LongProperty version;
+
+    // Current values of the state, published to the properties at the end of each update
+    private AircraftData currentAircraftData;
+    private long currentLastMessageTimeStampNs;
+    private int currentCategory;
+    private CallSign currentCallSign;
+    private GeoPos currentPosition;
+    private double currentAltitude;
+    private double currentVelocity;
+    private double currentTrackOrHeading;
+    private final List<AirbornePos> pendingTrajectory = new ArrayList<>();
+    private AirbornePos pendingLastTrajectoryElement;
+    private int updateDepth;
 
     /**
-     * Constructs an observable aircraft state with the given ICAO address and aircraft data.
+     * Constructs an observable aircraft state with the given ICAO address and aircraft data,
+     * whose trajectory has the default retention.
      *
      * @param icaoAddress  The ICAO address of the aircraft
-     * @param aircraftData The aircraft data
+     * @param aircraftData The aircraft data, or null if it is unknown
      * @throws NullPointerException If the ICAO address is null
      */
     public ObservableAircraftState(IcaoAddress icaoAddress, AircraftData aircraftData) {
+        this(icaoAddress, aircraftData, Trajectory.Retention.DEFAULT);
+    }
+
+    /**
+     * Constructs an observable aircraft state with the given ICAO address, aircraft data and trajectory retention.
+     *
+     * @param icaoAddress         The ICAO address of the aircraft
+     * @param aircraftData        The aircraft data, or null if it is unknown
+     * @param trajectoryRetention The retention of the trajectory of the aircraft
+     * @throws NullPointerException If the ICAO address or the trajectory retention is null
+     */
+    public ObservableAircraftState(IcaoAddress icaoAddress, AircraftData aircraftData, Trajectory.Retention trajectoryRetention) {
         Objects.requireNonNull(icaoAddress);
         // Value for unknown altitude and velocity (Update : Altitude is never unknown) : https://edstem.org/eu/courses/237/discussion/34517
         final int INITIAL_VALUE = 0;
         final double UNKNOWN = Double.NaN;
 
         this.icaoAddress = icaoAddress;
-        this.aircraftData = aircraftData;
+        this.aircraftData = new SimpleObjectProperty<>(aircraftData);
+        currentAircraftData = aircraftData;
+        this.trajectory = new Trajectory(Objects.requireNonNull(trajectoryRetention));
+        version = new SimpleLongProperty(INITIAL_VALUE);
 
         lastMessageTimeStampsNs = new SimpleLongProperty(INITIAL_VALUE);
         category = new SimpleIntegerProperty(INITIAL_VALUE);
@@ -58,6 +94,87 @@ public final class ObservableAircraftState implements AircraftStateSetter {
         altitude = new SimpleDoubleProperty(UNKNOWN);
         velocity = new SimpleDoubleProperty(UNKNOWN);
         trackOrHeading = new SimpleDoubleProperty(INITIAL_VALUE);
+
+        currentAltitude = UNKNOWN;
+        currentVelocity = UNKNOWN;
+    }
+
+    /**
+     * Starts a batched update of the state. Until the matching call to endUpdate, the modifications are not
+     * published to the properties. Batched updates can be nested, only the outermost one publishes the values.
+     */
+    public void beginUpdate() {
+        updateDepth++;
+    }
+
+    /**
+     * Ends a batched update of the state, and publishes the modifications to the properties if it is the
+     * outermost one. Each property is modified at most once, with its last value.
+     *
+     * @throws IllegalStateException If there is no batched update in progress
+     */
+    public void endUpdate() {
+        if (updateDepth == 0) throw new IllegalStateException();
+        updateDepth--;
+        publishIfNeeded();
+    }
+
+    /**
+     * Publishes the current values of the state to the properties and the trajectory, then increments the version,
+     * unless a batched update is in progress. Properties whose value did not change do not notify their observers.
+     */
+    private void publishIfNeeded() {
+        if (updateDepth > 0) return;
+
+        aircraftData.set(currentAircraftData);
+        lastMessageTimeStampsNs.set(currentLastMessageTimeStampNs);
+        category.set(currentCategory);
+        callSign.set(currentCallSign);
+        position.set(currentPosition);
+        altitude.set(currentAltitude);
+        velocity.set(currentVelocity);
+        trackOrHeading.set(currentTrackOrHeading);
+
+        if (pendingLastTrajectoryElement != null) {
+            trajectory.replaceLast(pendingLastTrajectoryElement);
+            pendingLastTrajectoryElement = null;
+        }
+        if (!pendingTrajectory.isEmpty()) {
+            trajectory.addAll(pendingTrajectory, currentLastMessageTimeStampNs);
+            pendingTrajectory.clear();
+        }
+        version.set(version.get() + 1);
+    }
+
+    /**
+     * Adds an element at the end of the trajectory, once the current update is over.
+     *
+     * @param element The element to add
+     */
+    private void addToTrajectory(AirbornePos element) {
+        pendingTrajectory.add(element);
+    }
+
+    /**
+     * Replaces the last element of the trajectory, once the current update is over.
+     *
+     * @param element The new last element
+     */
+    private void replaceLastOfTrajectory(AirbornePos element) {
+        if (pendingTrajectory.isEmpty())
+            pendingLastTrajectoryElement = element;
+        else
+            pendingTrajectory.set(pendingTrajectory.size() - 1, element);
+    }
+
+    /**
+     * Returns the property of the version of the state, incremented once at the end of each update, after all the
+     * other properties and the trajectory have been modified
+     *
+     * @return The property of the version of the state
+     */
+    public ReadOnlyLongProperty versionProperty() {
+        return version;
     }
 
     /**
@@ -69,13 +186,32 @@ public final class ObservableAircraftState implements AircraftStateSetter {
         return icaoAddress;
     }
 
+    /**
+     * Returns the aircraft data property
+     *
+     * @return The aircraft data property
+     */
+    public ReadOnlyObjectProperty<AircraftData> aircraftDataProperty() {
+        return aircraftData;
+    }
+
     /**
      * Returns the aircraft data
      *
-     * @return The aircraft data
+     * @return The aircraft data, or null if it is unknown
      */
     public AircraftData getAircraftData() {
-        return aircraftData;
+        return currentAircraftData;
+    }
+
+    /**
+     * Sets the aircraft data, once it has been looked up
+     *
+     * @param aircraftData The aircraft data, or null if it is unknown
+     */
+    public void setAircraftData(AircraftData aircraftData) {
+        currentAircraftData = aircraftData;
+        publishIfNeeded();
     }
 
     // ----------------- Timestamp -----------------
@@ -94,7 +230,7 @@ public final class ObservableAircraftState implements AircraftStateSetter {
      * @return The last message timestamp in nanoseconds
      */
     public long getLastMessageTimeStampNs() {
-        return lastMessageTimeStampsNs.get();
+        return currentLastMessageTimeStampNs;
     }
 
     /**
@@ -104,7 +240,8 @@ public final class ObservableAircraftState implements AircraftStateSetter {
      */
     @Override
     public void setLastMessageTimeStampNs(long timeStampNs) {
-        lastMessageTimeStampsNs.set(timeStampNs);
+        currentLastMessageTimeStampNs = timeStampNs;
+        publishIfNeeded();
     }
 
     // ----------------- Category -----------------
@@ -123,7 +260,7 @@ public final class ObservableAircraftState implements AircraftStateSetter {
      * @return The category
      */
     public int getCategory() {
-        return category.get();
+        return currentCategory;
     }
 
     /**
@@ -133,7 +270,8 @@ public final class ObservableAircraftState implements AircraftStateSetter {
      */
     @Override
     public void setCategory(int category) {
-        this.category.set(category);
+        currentCategory = category;
+        publishIfNeeded();
     }
 
     // ----------------- CallSign -----------------
@@ -152,7 +290,7 @@ public final class ObservableAircraftState implements AircraftStateSetter {
      * @return The CallSign
      */
     public CallSign getCallSign() {
-        return callSign.get();
+        return currentCallSign;
     }
 
     /**
@@ -162,7 +300,8 @@ public final class ObservableAircraftState implements AircraftStateSetter {
      */
     @Override
     public void setCallSign(CallSign callSign) {
-        this.callSign.set(callSign);
+        currentCallSign = callSign;
+        publishIfNeeded();
     }
 
     // ----------------- Position -----------------
@@ -181,7 +320,7 @@ public final class ObservableAircraftState implements AircraftStateSetter {
      * @return The position
      */
     public GeoPos getPosition() {
-        return position.get();
+        return currentPosition;
     }
 
     /**
@@ -191,23 +330,25 @@ public final class ObservableAircraftState implements AircraftStateSetter {
      */
     @Override
     public void setPosition(GeoPos position) {
-        this.position.set(position);
+        currentPosition = position;
 
         // Compute Trajectory if altitude is known
         if (!Double.isNaN(getAltitude())) {
             AirbornePos newEl = new AirbornePos(getPosition(), getAltitude());
-            trajectory.add(newEl);
+            addToTrajectory(newEl);
         }
+        publishIfNeeded();
     }
 
     // ----------------- Trajectory -----------------
     /**
-     * Returns the trajectory
+     * Returns the trajectory, as an unmodifiable observable list whose oldest positions are removed
+     * according to its retention
      *
      * @return The trajectory
      */
     public ObservableList<AirbornePos> getTrajectory() {
-        return trajectoryView;
+        return trajectory;
     }
 
 
@@ -227,7 +368,7 @@ public final class ObservableAircraftState implements AircraftStateSetter {
      * @return The altitude
      */
     public double getAltitude() {
-        return altitude.get();
+        return currentAltitude;
     }
 
     /**
@@ -237,17 +378,18 @@ public final class ObservableAircraftState implements AircraftStateSetter {
      */
     @Override
     public void setAltitude(double altitude) {
-        this.altitude.set(altitude);
+        currentAltitude = altitude;
 
         final long lastMessageTimeStamps = -1L;
         // Compute Trajectory if position is known
         if (getPosition() != null) {
             AirbornePos newEl = new AirbornePos(getPosition(), getAltitude());
-            if (trajectory.isEmpty())
-                trajectory.add(newEl);
+            if (trajectory.isEmpty() && pendingTrajectory.isEmpty())
+                addToTrajectory(newEl);
             else if (lastMessageTimeStamps == getLastMessageTimeStampNs())
-                trajectory.set(trajectory.size() - 1,newEl);
+                replaceLastOfTrajectory(newEl);
         }
+        publishIfNeeded();
     }
 
     // ----------------- Velocity -----------------
@@ -266,7 +408,7 @@ public final class ObservableAircraftState implements AircraftStateSetter {
      * @return The velocity
      */
     public double getVelocity() {
-        return velocity.get();
+        return currentVelocity;
     }
 
     /**
@@ -276,7 +418,8 @@ public final class ObservableAircraftState implements AircraftStateSetter {
      */
     @Override
     public void setVelocity(double velocity) {
-        this.velocity.set(velocity);
+        currentVelocity = velocity;
+        publishIfNeeded();
     }
 
     // ----------------- Track or Heading -----------------
@@ -295,7 +438,7 @@ public final class ObservableAircraftState implements AircraftStateSetter {
      * @return The track or heading
      */
     public double getTrackOrHeading() {
-        return trackOrHeading.get();
+        return currentTrackOrHeading;
     }
 
     /**
@@ -305,7 +448,8 @@ public final class ObservableAircraftState implements AircraftStateSetter {
      */
     @Override
     public void setTrackOrHeading(double trackOrHeading) {
-        this.trackOrHeading.set(trackOrHeading);
+        currentTrackOrHeading = trackOrHeading;
+        publishIfNeeded();
     }
 
     /**
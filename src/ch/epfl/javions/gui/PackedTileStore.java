@@ -0,0 +1,303 @@
+package ch.epfl.javions.gui;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static java.nio.file.StandardOpenOption.*;
+
+/**
+ * Represents the disk cache of the tiles, packed in a few files per zoom level instead of one file per tile.
+ * The images of the tiles of a zoom level are appended to a single data file, and the position of each of them
+ * is appended to an index file. The index is loaded in a hash table of primitive values when the zoom level is
+ * first used, so that finding a tile takes constant time, and reading it a single positional read.
+ * If a write is interrupted, the index entries that refer to data beyond the end of the data file are ignored.
+ * The store is thread-safe.
+ *
+ * @author Arthur Wolf (344200)
+ * @author Oussama Ghali (341478)
+ */
+final class PackedTileStore implements Closeable {
+    private static final String DATA_FILE_EXTENSION = ".tiles";
+    private static final String INDEX_FILE_EXTENSION = ".index";
+    // Size of an index entry : x-index and y-index (int), offset (long) and length (int) of the image
+    private static final int INDEX_ENTRY_SIZE = 3 * Integer.BYTES + Long.BYTES;
+
+    private final Path directory;
+    // Zoom levels opened so far, by zoom level
+    private ZoomLevel[] zoomLevels = new ZoomLevel[0];
+
+    /**
+     * Constructs a store whose files are in the given directory, created if needed when the first tile is written
+     *
+     * @param directory The directory of the store
+     */
+    PackedTileStore(Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Returns the image of the given tile, as stored
+     *
+     * @param tileId The ID of the tile
+     * @return The bytes of the image, or null if the tile is not in the store
+     * @throws IOException If an error occurs while reading the store
+     */
+    byte[] read(TileManager.TileId tileId) throws IOException {
+        ZoomLevel zoomLevel = zoomLevel(tileId.zoomLevel(), false);
+        return zoomLevel == null ? null : zoomLevel.read(tileId.indexX(), tileId.indexY());
+    }
+
+    /**
+     * Writes the image of the given tile, replacing the previous one if any
+     *
+     * @param tileId     The ID of the tile
+     * @param imageBytes The bytes of the image
+     * @throws IOException If an error occurs while writing the store
+     */
+    void write(TileManager.TileId tileId, byte[] imageBytes) throws IOException {
+        zoomLevel(tileId.zoomLevel(), true).write(tileId.indexX(), tileId.indexY(), imageBytes);
+    }
+
+    /**
+     * Returns the number of tiles in the store, for the zoom levels opened so far
+     *
+     * @return The number of tiles in the opened zoom levels
+     */
+    synchronized int openedTileCount() {
+        int count = 0;
+        for (ZoomLevel zoomLevel : zoomLevels)
+            if (zoomLevel != null) count += zoomLevel.size();
+        return count;
+    }
+
+    /**
+     * Closes the files of the store
+     *
+     * @throws IOException If an error occurs while closing the files
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        for (ZoomLevel zoomLevel : zoomLevels)
+            if (zoomLevel != null) zoomLevel.close();
+        zoomLevels = new ZoomLevel[0];
+    }
+
+    /**
+     * Returns the given zoom level, opening it if needed
+     *
+     * @param zoom   The zoom level
+     * @param create True if the files of the zoom level have to be created if they do not exist
+     * @return The zoom level, or null if its files do not exist and must not be created
+     * @throws IOException If an error occurs while opening the files
+     */
+    private synchronized ZoomLevel zoomLevel(int zoom, boolean create) throws IOException {
+        if (zoom < zoomLevels.length && zoomLevels[zoom] != null) return zoomLevels[zoom];
+
+        Path dataFile = directory.resolve(zoom + DATA_FILE_EXTENSION);
+        Path indexFile = directory.resolve(zoom + INDEX_FILE_EXTENSION);
+        if (!create && !Files.exists(dataFile)) return null;
+
+        Files.createDirectories(directory);
+        ZoomLevel zoomLevel = new ZoomLevel(dataFile, indexFile);
+        if (zoom >= zoomLevels.length) zoomLevels = Arrays.copyOf(zoomLevels, zoom + 1);
+        zoomLevels[zoom] = zoomLevel;
+        return zoomLevel;
+    }
+
+    /**
+     * Represents the data and index files of a zoom level, along with the index loaded in memory.
+     * The index is an open-addressing hash table, mapping the packed indices of a tile to its offset and length.
+     */
+    private static final class ZoomLevel implements Closeable {
+        private static final long EMPTY_KEY = -1;
+        private static final int INITIAL_CAPACITY = 1 << 10;
+
+        private final FileChannel data;
+        private final FileChannel index;
+        private long dataSize;
+        private long[] keys;
+        private long[] offsets;
+        private int[] lengths;
+        private int size;
+
+        /**
+         * Opens the files of a zoom level, and loads its index
+         *
+         * @param dataFile  The data file
+         * @param indexFile The index file
+         * @throws IOException If an error occurs while opening or reading the files
+         */
+        private ZoomLevel(Path dataFile, Path indexFile) throws IOException {
+            data = FileChannel.open(dataFile, CREATE, READ, WRITE);
+            index = FileChannel.open(indexFile, CREATE, READ, WRITE);
+            dataSize = data.size();
+            allocate(INITIAL_CAPACITY);
+
+            ByteBuffer entries = ByteBuffer.allocate((int) (index.size() / INDEX_ENTRY_SIZE * INDEX_ENTRY_SIZE));
+            while (entries.hasRemaining()) {
+                if (index.read(entries, entries.position()) < 0) break;
+            }
+            entries.flip();
+            while (entries.remaining() >= INDEX_ENTRY_SIZE) {
+                int x = entries.getInt(), y = entries.getInt();
+                long offset = entries.getLong();
+                int length = entries.getInt();
+                // The image of an entry written during an interrupted write might be incomplete,
+                // and so might be the images of the following entries
+                if (offset + length > dataSize) {
+                    entries.position(entries.position() - INDEX_ENTRY_SIZE);
+                    break;
+                }
+                put(key(x, y), offset, length);
+            }
+            // The invalid or partial entries at the end of the index are overwritten by the next ones
+            index.truncate(entries.position());
+            index.position(entries.position());
+        }
+
+        /**
+         * Returns the image of a tile
+         *
+         * @param x The x-index of the tile
+         * @param y The y-index of the tile
+         * @return The bytes of the image, or null if the tile is not in the zoom level
+         * @throws IOException If an error occurs while reading the data file
+         */
+        private byte[] read(int x, int y) throws IOException {
+            long offset;
+            int length;
+            synchronized (this) {
+                int slot = slot(key(x, y));
+                if (keys[slot] == EMPTY_KEY) return null;
+                offset = offsets[slot];
+                length = lengths[slot];
+            }
+
+            // Positional reads do not need to be synchronized
+            ByteBuffer image = ByteBuffer.allocate(length);
+            while (image.hasRemaining()) {
+                if (data.read(image, offset + image.position()) < 0)
+                    throw new IOException("Truncated tile data");
+            }
+            return image.array();
+        }
+
+        /**
+         * Appends the image of a tile to the data file, and its position to the index file
+         *
+         * @param x          The x-index of the tile
+         * @param y          The y-index of the tile
+         * @param imageBytes The bytes of the image
+         * @throws IOException If an error occurs while writing the files
+         */
+        private synchronized void write(int x, int y, byte[] imageBytes) throws IOException {
+            long offset = dataSize;
+            ByteBuffer image = ByteBuffer.wrap(imageBytes);
+            while (image.hasRemaining())
+                data.write(image, offset + image.position());
+            dataSize += imageBytes.length;
+
+            // The entry is only written once the image is, so that it never refers to missing data
+            ByteBuffer entry = ByteBuffer.allocate(INDEX_ENTRY_SIZE)
+                    .putInt(x).putInt(y).putLong(offset).putInt(imageBytes.length)
+                    .flip();
+            while (entry.hasRemaining())
+                index.write(entry);
+
+            put(key(x, y), offset, imageBytes.length);
+        }
+
+        private synchronized int size() {
+            return size;
+        }
+
+        @Override
+        public synchronized void close() throws IOException {
+            try {
+                data.close();
+            } finally {
+                index.close();
+            }
+        }
+
+        /**
+         * Adds or replaces an entry of the hash table, growing it if it is half full
+         *
+         * @param key    The key of the tile
+         * @param offset The offset of the image in the data file
+         * @param length The length of the image
+         */
+        private void put(long key, long offset, int length) {
+            int slot = slot(key);
+            if (keys[slot] == EMPTY_KEY) {
+                if (2 * (size + 1) > keys.length) {
+                    grow();
+                    slot = slot(key);
+                }
+                keys[slot] = key;
+                size++;
+            }
+            offsets[slot] = offset;
+            lengths[slot] = length;
+        }
+
+        /**
+         * Returns the slot of the given key in the hash table, i.e. the slot containing the key,
+         * or the empty slot where it would be added
+         *
+         * @param key The key of the tile
+         * @return The slot of the key
+         */
+        private int slot(long key) {
+            int mask = keys.length - 1;
+            int slot = Long.hashCode(key * 0x9E37_79B9_7F4A_7C15L) & mask;
+            while (keys[slot] != EMPTY_KEY && keys[slot] != key)
+                slot = (slot + 1) & mask;
+            return slot;
+        }
+
+        /**
+         * Doubles the capacity of the hash table
+         */
+        private void grow() {
+            long[] oldKeys = keys, oldOffsets = offsets;
+            int[] oldLengths = lengths;
+            allocate(2 * oldKeys.length);
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] == EMPTY_KEY) continue;
+                int slot = slot(oldKeys[i]);
+                keys[slot] = oldKeys[i];
+                offsets[slot] = oldOffsets[i];
+                lengths[slot] = oldLengths[i];
+            }
+        }
+
+        /**
+         * Allocates an empty hash table of the given capacity, keeping the current size
+         *
+         * @param capacity The capacity, a power of two
+         */
+        private void allocate(int capacity) {
+            keys = new long[capacity];
+            Arrays.fill(keys, EMPTY_KEY);
+            offsets = new long[capacity];
+            lengths = new int[capacity];
+        }
+
+        /**
+         * Returns the key of the tile with the given indices
+         *
+         * @param x The x-index of the tile
+         * @param y The y-index of the tile
+         * @return The key of the tile
+         */
+        private static long key(int x, int y) {
+            return ((long) x << Integer.SIZE) | (y & 0xFFFF_FFFFL);
+        }
+    }
+}
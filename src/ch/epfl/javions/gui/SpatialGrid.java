@@ -0,0 +1,181 @@
+package ch.epfl.javions.gui;
+
+import ch.epfl.javions.Preconditions;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Represents a spatial index of items placed on a plane, made of a uniform grid of square cells.
+ * Finding the items close to a point, or in a rectangle, only requires to visit the cells that intersect it.
+ *
+ * @param <T> the type of the items
+ * @author Arthur Wolf (344200)
+ * @author Oussama Ghali (341478)
+ */
+final class SpatialGrid<T> {
+    private final double cellSize;
+    private final Map<Long, List<Entry<T>>> cells = new HashMap<>();
+    private int size;
+
+    /**
+     * Represents an item of the grid, along with its position
+     *
+     * @param x    The x-coordinate of the item
+     * @param y    The y-coordinate of the item
+     * @param item The item
+     */
+    private record Entry<T>(double x, double y, T item) {
+    }
+
+    /**
+     * Constructs an empty grid with the given cell size
+     *
+     * @param cellSize The size of the side of a cell
+     * @throws IllegalArgumentException If the cell size is not strictly positive
+     */
+    SpatialGrid(double cellSize) {
+        Preconditions.checkArgument(cellSize > 0);
+        this.cellSize = cellSize;
+    }
+
+    /**
+     * Adds an item at the given position
+     *
+     * @param x    The x-coordinate of the item
+     * @param y    The y-coordinate of the item
+     * @param item The item
+     */
+    void add(double x, double y, T item) {
+        cells.computeIfAbsent(key(cell(x), cell(y)), k -> new ArrayList<>()).add(new Entry<>(x, y, item));
+        size++;
+    }
+
+    /**
+     * Removes an item that was added at the given position
+     *
+     * @param x    The x-coordinate of the item when it was added
+     * @param y    The y-coordinate of the item when it was added
+     * @param item The item
+     * @return True if the item was in the grid at this position
+     */
+    boolean remove(double x, double y, T item) {
+        long key = key(cell(x), cell(y));
+        List<Entry<T>> entries = cells.get(key);
+        if (entries == null || !entries.removeIf(entry -> entry.item().equals(item))) return false;
+        if (entries.isEmpty()) cells.remove(key);
+        size--;
+        return true;
+    }
+
+    /**
+     * Removes all the items of the grid
+     */
+    void clear() {
+        cells.clear();
+        size = 0;
+    }
+
+    /**
+     * Returns the number of items in the grid
+     *
+     * @return The number of items in the grid
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Returns the item closest to the given point, within the given distance.
+     *
+     * @param x           The x-coordinate of the point
+     * @param y           The y-coordinate of the point
+     * @param maxDistance The maximal distance between the point and the item
+     * @return The closest item, or null if there is no item within the given distance
+     */
+    T nearest(double x, double y, double maxDistance) {
+        T nearest = null;
+        double nearestDistance = maxDistance;
+        for (long cellX = cell(x - maxDistance); cellX <= cell(x + maxDistance); cellX++) {
+            for (long cellY = cell(y - maxDistance); cellY <= cell(y + maxDistance); cellY++) {
+                List<Entry<T>> entries = cells.get(key(cellX, cellY));
+                if (entries == null) continue;
+                for (Entry<T> entry : entries) {
+                    double distance = Math.hypot(entry.x() - x, entry.y() - y);
+                    if (distance <= nearestDistance) {
+                        nearestDistance = distance;
+                        nearest = entry.item();
+                    }
+                }
+            }
+        }
+        return nearest;
+    }
+
+    /**
+     * Applies the given action to every item in the given rectangle
+     *
+     * @param minX   The minimal x-coordinate of the rectangle
+     * @param minY   The minimal y-coordinate of the rectangle
+     * @param maxX   The maximal x-coordinate of the rectangle
+     * @param maxY   The maximal y-coordinate of the rectangle
+     * @param action The action to apply
+     */
+    void forEachIn(double minX, double minY, double maxX, double maxY, Consumer<? super T> action) {
+        double cellCount = (double) (cell(maxX) - cell(minX) + 1) * (cell(maxY) - cell(minY) + 1);
+        // If the rectangle covers more cells than there are non-empty ones, visit the non-empty ones instead
+        if (cellCount > cells.size()) {
+            for (List<Entry<T>> entries : cells.values())
+                forEachIn(entries, minX, minY, maxX, maxY, action);
+        } else {
+            for (long cellX = cell(minX); cellX <= cell(maxX); cellX++) {
+                for (long cellY = cell(minY); cellY <= cell(maxY); cellY++) {
+                    List<Entry<T>> entries = cells.get(key(cellX, cellY));
+                    if (entries != null) forEachIn(entries, minX, minY, maxX, maxY, action);
+                }
+            }
+        }
+    }
+
+    /**
+     * Applies the given action to every entry of the given list that is in the given rectangle
+     *
+     * @param entries The entries
+     * @param minX    The minimal x-coordinate of the rectangle
+     * @param minY    The minimal y-coordinate of the rectangle
+     * @param maxX    The maximal x-coordinate of the rectangle
+     * @param maxY    The maximal y-coordinate of the rectangle
+     * @param action  The action to apply
+     */
+    private static <T> void forEachIn(List<Entry<T>> entries, double minX, double minY, double maxX, double maxY,
+                                      Consumer<? super T> action) {
+        for (Entry<T> entry : entries) {
+            if (minX <= entry.x() && entry.x() <= maxX && minY <= entry.y() && entry.y() <= maxY)
+                action.accept(entry.item());
+        }
+    }
+
+    /**
+     * Returns the index of the cell containing the given coordinate
+     *
+     * @param coordinate The coordinate
+     * @return The index of the cell
+     */
+    private long cell(double coordinate) {
+        return (long) Math.floor(coordinate / cellSize);
+    }
+
+    /**
+     * Returns the key of the cell with the given indices
+     *
+     * @param cellX The x-index of the cell
+     * @param cellY The y-index of the cell
+     * @return The key of the cell
+     */
+    private static long key(long cellX, long cellY) {
+        return (cellX << Integer.SIZE) ^ (cellY & 0xFFFF_FFFFL);
+    }
+}
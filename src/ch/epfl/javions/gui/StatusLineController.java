@@ -5,15 +5,20 @@ import javafx.beans.property.IntegerProperty;
 import javafx.beans.property.LongProperty;
 import javafx.beans.property.SimpleIntegerProperty;
 import javafx.beans.property.SimpleLongProperty;
+import javafx.beans.property.SimpleStringProperty;
+import javafx.beans.property.StringProperty;
+import javafx.scene.control.Tooltip;
 import javafx.scene.layout.BorderPane;
 import javafx.scene.text.Text;
 
 /**
  * This is the controller for the status line of the Javions application.
- * The status line displays the number of visible aircraft and the number of
- * received messages. These values are updated through binding to the respective properties.
- * The status line is composed of two text nodes, one for each property,
- * placed on the left and right side of the BorderPane.
+ * The status line displays the number of visible aircraft, the number of
+ * received messages and the number of messages waiting to be handled.
+ * These values are updated through binding to the respective properties.
+ * The status line is composed of three text nodes, one for each property,
+ * placed on the left, center and right side of the BorderPane.
+ * Information about the aircraft database is shown in a tooltip of the status line.
  *
  * @author Arthur Wolf (344200)
  * @author Oussama Ghali (341478)
@@ -22,16 +27,19 @@ public final class StatusLineController {
     private final BorderPane pane;
     private final IntegerProperty aircraftCountProperty;
     private final LongProperty messageCountProperty;
-
+    private final IntegerProperty backlogSizeProperty;
+    private final StringProperty databaseInformationProperty;
 
     /**
-     * The constructor for the StatusLineController. Initializes the aircraft and
-     * message count properties and binds them to text nodes for display.
+     * The constructor for the StatusLineController. Initializes the aircraft count, message
+     * count and backlog size properties and binds them to text nodes for display.
      */
     public StatusLineController() {
         final int INITIAL_VALUE = 0;
         aircraftCountProperty = new SimpleIntegerProperty(INITIAL_VALUE);
         messageCountProperty = new SimpleLongProperty(INITIAL_VALUE);
+        backlogSizeProperty = new SimpleIntegerProperty(INITIAL_VALUE);
+        databaseInformationProperty = new SimpleStringProperty();
 
         // Create nodes
         Text aircraftCountText = new Text();
@@ -42,9 +50,21 @@ public final class StatusLineController {
         messageCountText.textProperty().bind(Bindings.createStringBinding(() ->
                 "Messages reçus : " + messageCountProperty.getValue(), messageCountProperty));
 
+        Text backlogSizeText = new Text();
+        backlogSizeText.textProperty().bind(Bindings.createStringBinding(() ->
+                "Messages en attente : " + backlogSizeProperty.getValue(), backlogSizeProperty));
+
         // Build scene graph
         pane = new BorderPane();
-        buildScene(aircraftCountText, messageCountText);
+        buildScene(aircraftCountText, messageCountText, backlogSizeText);
+
+        // The tooltip is only shown when there is some information about the database
+        Tooltip databaseTooltip = new Tooltip();
+        databaseTooltip.textProperty().bind(databaseInformationProperty);
+        databaseInformationProperty.addListener((p, oldValue, newValue) -> {
+            if (newValue == null) Tooltip.uninstall(pane, databaseTooltip);
+            else if (oldValue == null) Tooltip.install(pane, databaseTooltip);
+        });
     }
 
     /**
@@ -52,11 +72,13 @@ public final class StatusLineController {
      *
      * @param aircraftCountText The text node for the aircraft count.
      * @param messageCountText The text node for the message count.
+     * @param backlogSizeText The text node for the backlog size.
      */
-    private void buildScene(Text aircraftCountText, Text messageCountText) {
+    private void buildScene(Text aircraftCountText, Text messageCountText, Text backlogSizeText) {
         pane.getStylesheets().add("status.css");
         pane.getStyleClass().add("BorderPane");
         pane.setLeft(aircraftCountText);
+        pane.setCenter(backlogSizeText);
         pane.setRight(messageCountText);
     }
 
@@ -86,4 +108,22 @@ public final class StatusLineController {
     public LongProperty messageCountProperty() {
         return messageCountProperty;
     }
+
+    /**
+     * Returns the IntegerProperty that represents the number of messages waiting to be handled.
+     *
+     * @return The IntegerProperty for the backlog size.
+     */
+    public IntegerProperty backlogSizeProperty() {
+        return backlogSizeProperty;
+    }
+
+    /**
+     * Returns the StringProperty that represents the information about the aircraft database, shown in a tooltip.
+     *
+     * @return The StringProperty for the database information, null if there is no information.
+     */
+    public StringProperty databaseInformationProperty() {
+        return databaseInformationProperty;
+    }
 }
@@ -4,16 +4,31 @@ import ch.epfl.javions.Preconditions;
 import javafx.scene.image.Image;
 
 import java.io.*;
+import java.net.URI;
 import java.net.URL;
 import java.net.URLConnection;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.LinkedHashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Represents an OpenStreetMap (OSM) tile manager. Its role is to get tiles from a tile server
  * and store them in a memory cache and a disk cache. It manages fetching and caching of map tiles
- * with some degree of thread safety.
+ * with some degree of thread safety. The memory cache is bounded by the size of the decoded images, and the disk
+ * cache packs the tiles of each zoom level in a few files.
+ * The tiles can be loaded asynchronously by a bounded pool of loader threads, so that the disk and network
+ * accesses never block the JavaFX thread. Several requests for a tile that is being loaded share the same load.
+ * Tiles can also be prefetched : they are loaded at a lower priority than the requested ones, and the prefetches
+ * that are not wanted anymore are cancelled before they start.
  *
  * @author Arthur Wolf (344200)
  * @author Oussama Ghali (341478)
@@ -21,111 +36,330 @@ import java.util.LinkedHashMap;
 
 public final class TileManager {
 
-    //Memory cache array with access-order
-    private final LinkedHashMap<TileId, Image> memoryCache;
+    private final MemoryTileCache memoryCache;
     private final Path pathToMemoryDisk;
-    private final String tileServerName;
-    private static final int CACHE_CAPACITY = 100;
+    private final PackedTileStore diskCache;
+    private final URI tileServerUri;
+    private final ThreadPoolExecutor loaders;
+    // Loads waiting or in progress, shared by all the requests of the same tile
+    private final Map<TileId, TileLoad> pendingTiles = new ConcurrentHashMap<>();
+    // Order in which the loads of the same priority are started
+    private long nextLoadSequence;
+    private static final String IMAGE_EXTENSION_FORMAT = ".png";
+    // Number of loader threads, the OSM tile usage policy allowing at most 2 connections
+    private static final int DEFAULT_LOADER_COUNT = 2;
+    // Size of the memory cache, i.e. 512 decoded tiles of 256 KB
+    private static final int DEFAULT_MEMORY_CACHE_SIZE_IN_MB = 128;
 
     /**
      * Constructs a TileManager with the specified disk cache path and tile server name.
+     * The tiles are fetched with HTTPS on the default port of the server.
      *
      * @param pathFolder  The path of the disk cache.
      * @param tileServerN The name of the tile server.
      */
     public TileManager(Path pathFolder, String tileServerN) {
-        final float LOAD_FACTOR = 0.75f;
-        pathToMemoryDisk = pathFolder;
-        tileServerName = tileServerN;
+        this(pathFolder, tileServerN, DEFAULT_MEMORY_CACHE_SIZE_IN_MB);
+    }
 
-        memoryCache = new LinkedHashMap<>(CACHE_CAPACITY, LOAD_FACTOR, true);
+    /**
+     * Constructs a TileManager with the specified disk cache path, tile server name and memory cache size.
+     * The tiles are fetched with HTTPS on the default port of the server.
+     *
+     * @param pathFolder          The path of the disk cache.
+     * @param tileServerN         The name of the tile server.
+     * @param memoryCacheSizeInMb The maximal size of the decoded images in the memory cache, in megabytes.
+     * @throws IllegalArgumentException If the memory cache size is not strictly positive.
+     */
+    public TileManager(Path pathFolder, String tileServerN, int memoryCacheSizeInMb) {
+        this(pathFolder, URI.create("https://" + tileServerN + "/"), DEFAULT_LOADER_COUNT, memoryCacheSizeInMb);
     }
 
     /**
-     * Adds a pair of tile ID and its corresponding image to the memory cache.
-     * If the memory cache is at maximum capacity, removes the least recently used pair.
+     * Constructs a TileManager with the specified disk cache path, tile server address, number of loader threads
+     * and memory cache size.
      *
-     * @param tileIdentity The ID of the tile associated with the image.
-     * @param image        The image of the tile.
+     * @param pathFolder          The path of the disk cache.
+     * @param tileServerUri       The address of the tile server, to which the path zoomLevel/indexX/indexY.png of a tile is appended.
+     * @param loaderCount         The number of threads loading the tiles asynchronously.
+     * @param memoryCacheSizeInMb The maximal size of the decoded images in the memory cache, in megabytes.
+     * @throws IllegalArgumentException If the number of loader threads or the memory cache size is not strictly positive.
      */
-    private void addToCache(TileId tileIdentity, Image image) {
-        if (memoryCache.size() >= CACHE_CAPACITY)
-            memoryCache.remove(memoryCache.entrySet().iterator().next().getKey());
+    public TileManager(Path pathFolder, URI tileServerUri, int loaderCount, int memoryCacheSizeInMb) {
+        final int BYTES_PER_MB = 1 << 20;
+        Preconditions.checkArgument(loaderCount > 0 && memoryCacheSizeInMb > 0);
+        pathToMemoryDisk = pathFolder;
+        diskCache = new PackedTileStore(pathFolder);
+        this.tileServerUri = tileServerUri;
 
-        memoryCache.put(tileIdentity, image);
+        memoryCache = new MemoryTileCache((long) memoryCacheSizeInMb * BYTES_PER_MB);
+
+        AtomicInteger loaderIndex = new AtomicInteger();
+        // The waiting loads are ordered by priority, see TileLoad
+        loaders = new ThreadPoolExecutor(loaderCount, loaderCount, 0, TimeUnit.MILLISECONDS,
+                new PriorityBlockingQueue<>(), task -> {
+            Thread loader = new Thread(task, "tile-loader-" + loaderIndex.incrementAndGet());
+            // The loaders must not keep the application alive
+            loader.setDaemon(true);
+            return loader;
+        });
+    }
+
+    /**
+     * Returns the image corresponding to the given tile ID if it is in the memory cache.
+     * This method never blocks on a disk or network access.
+     *
+     * @param tileIdentity The ID of the tile.
+     * @return The image of this tile, or null if it is not in the memory cache.
+     */
+    public Image cachedImageForTileAt(TileId tileIdentity) {
+        return memoryCache.get(tileIdentity);
     }
 
     /**
-     * Returns true if the memory cache contains the image corresponding to the given tile ID.
+     * Returns the image corresponding to the given tile ID if it is in the memory cache, without marking it as
+     * used nor counting it in the statistics of the cache.
+     * This method never blocks on a disk or network access.
      *
      * @param tileIdentity The ID of the tile.
-     * @return True if the memory cache contains the image of this tile; false otherwise.
+     * @return The image of this tile, or null if it is not in the memory cache.
+     */
+    public Image peekImageForTileAt(TileId tileIdentity) {
+        return memoryCache.peek(tileIdentity);
+    }
+
+    /**
+     * Returns the statistics of the memory cache.
+     *
+     * @return The statistics of the memory cache.
      */
-    private boolean cacheContains(TileId tileIdentity) {
-        return memoryCache.containsKey(tileIdentity);
+    public CacheStatistics memoryCacheStatistics() {
+        return memoryCache.statistics();
     }
 
     /**
      * Returns the image associated with a tile ID.
      * This method first looks in the memory cache, then in the disk cache, and finally on the tile server.
+     * It blocks until the image is loaded, and should therefore not be called on the JavaFX thread.
      *
      * @param tileIdentity The ID of the tile.
      * @return The image associated with the tile ID.
      * @throws IOException If an error occurs while getting the image from the tile server.
+     * @see #loadImageForTileAt(TileId)
      */
     public Image imageForTileAt(TileId tileIdentity) throws IOException {
         //Look in memory cache first
-        if (cacheContains(tileIdentity))
-            return memoryCache.get(tileIdentity);
-        else {
-            //Look in memory disk
-            final String IMAGE_EXTENSION_FORMAT = ".png";
-            Path pathToFile = pathToMemoryDisk.resolve(String.valueOf(tileIdentity.zoomLevel))
-                    .resolve(String.valueOf(tileIdentity.indexX))
-                    .resolve(tileIdentity.indexY + IMAGE_EXTENSION_FORMAT);
-
-            if (Files.exists(pathToFile)) {
-                //We load the image and place it in the memory cache
-                Image imageTile = new Image(pathToFile.toUri().toString());
-                addToCache(tileIdentity, imageTile);
-                return imageTile;
-            } else {
-                //We are going to load the image from the tile server
-                final String PROTOCOL_NAME = "https";
-                final String USER_AGENT_NAME = "Javions";
-                final String URL_DELIMITER = "/";
-                final int PORT_NUMBER = 443;
-                final int TIMEOUT_IN_MS = 5000;
-
-                URL u = new URL(PROTOCOL_NAME, tileServerName, PORT_NUMBER, URL_DELIMITER + tileIdentity.zoomLevel
-                        + URL_DELIMITER + tileIdentity.indexX + URL_DELIMITER
-                        + tileIdentity.indexY + IMAGE_EXTENSION_FORMAT);
-
-                URLConnection c = u.openConnection();
-                c.setRequestProperty("User-Agent", USER_AGENT_NAME);
-                //5 seconds timeout in case something went wrong with url / the server isn't reachable
-                c.setConnectTimeout(TIMEOUT_IN_MS);
-
-                try (InputStream i = c.getInputStream()) {
-                    //Create the directory in cache folder /zoomLevel/xIndex/
-                    Files.createDirectories(pathToFile.getParent());
-
-                    try (OutputStream outStream = new FileOutputStream(pathToFile.toFile())) {
-                        //Save image to file
-                        i.transferTo(outStream);
-
-                        Image imageTile = new Image(pathToFile.toUri().toString());
-
-                        //Save image in memory cache
-                        addToCache(tileIdentity, imageTile);
-
-                        return imageTile;
-                    }
-                }
+        Image cachedImage = cachedImageForTileAt(tileIdentity);
+        return cachedImage != null ? cachedImage : loadImage(tileIdentity);
+    }
+
+    /**
+     * Loads asynchronously the image associated with a tile ID, from the memory cache, the disk cache or the tile server.
+     * If the tile is already being loaded, the returned future is the one of this load, and if it is only waiting
+     * to be prefetched, it is given the priority of a requested tile.
+     *
+     * @param tileIdentity The ID of the tile.
+     * @return The future image associated with the tile ID, completed on a loader thread,
+     * or completed exceptionally with an {@link UncheckedIOException} if the image could not be loaded.
+     */
+    public synchronized CompletableFuture<Image> loadImageForTileAt(TileId tileIdentity) {
+        Image cachedImage = cachedImageForTileAt(tileIdentity);
+        if (cachedImage != null) return CompletableFuture.completedFuture(cachedImage);
+
+        TileLoad load = pendingTiles.get(tileIdentity);
+        if (load == null) {
+            load = new TileLoad(tileIdentity, false, nextLoadSequence++);
+            pendingTiles.put(tileIdentity, load);
+            loaders.execute(load);
+        } else if (load.prefetch && loaders.getQueue().remove(load)) {
+            // The priority of a waiting load can only be changed outside the queue
+            load.prefetch = false;
+            load.sequence = nextLoadSequence++;
+            loaders.execute(load);
+        }
+        return load.image;
+    }
+
+    /**
+     * Prefetches the given tiles, in the memory and disk caches, at a lower priority than the requested tiles.
+     * The prefetches requested by a previous call that are not in the given tiles, and that did not start yet,
+     * are cancelled.
+     *
+     * @param tileIdentities The IDs of the tiles to prefetch, by decreasing order of priority.
+     */
+    public synchronized void prefetch(List<TileId> tileIdentities) {
+        Set<TileId> wantedTiles = new HashSet<>(tileIdentities);
+        // The iterator of the queue is a snapshot, and can be used while removing the loads
+        for (Runnable waitingLoad : loaders.getQueue()) {
+            TileLoad load = (TileLoad) waitingLoad;
+            if (load.prefetch && !wantedTiles.contains(load.tileIdentity) && loaders.getQueue().remove(load)) {
+                pendingTiles.remove(load.tileIdentity, load);
+                load.image.cancel(false);
+            }
+        }
+
+        for (TileId tileIdentity : tileIdentities) {
+            if (!memoryCache.contains(tileIdentity) && !pendingTiles.containsKey(tileIdentity)) {
+                TileLoad load = new TileLoad(tileIdentity, true, nextLoadSequence++);
+                pendingTiles.put(tileIdentity, load);
+                loaders.execute(load);
             }
         }
     }
 
+    /**
+     * Represents the load of a tile by a loader thread. The requested tiles are loaded before the prefetched ones,
+     * and the tiles of the same priority in the order in which they were requested.
+     */
+    private final class TileLoad implements Runnable, Comparable<TileLoad> {
+        private final TileId tileIdentity;
+        private final CompletableFuture<Image> image = new CompletableFuture<>();
+        // Only modified while the load is not in the queue
+        private boolean prefetch;
+        private long sequence;
+
+        /**
+         * Constructs the load of a tile
+         *
+         * @param tileIdentity The ID of the tile.
+         * @param prefetch     True if the tile is prefetched, false if it is requested.
+         * @param sequence     The order of the load among the loads of the same priority.
+         */
+        private TileLoad(TileId tileIdentity, boolean prefetch, long sequence) {
+            this.tileIdentity = tileIdentity;
+            this.prefetch = prefetch;
+            this.sequence = sequence;
+        }
+
+        @Override
+        public void run() {
+            try {
+                Image loadedImage = loadImage(tileIdentity);
+                // The tile is in the memory cache before the load stops being pending
+                removePendingLoad();
+                image.complete(loadedImage);
+            } catch (IOException | RuntimeException e) {
+                removePendingLoad();
+                image.completeExceptionally(e instanceof IOException io ? new UncheckedIOException(io) : e);
+            }
+        }
+
+        /**
+         * Removes this load from the pending loads. The manager is locked so that a request, which looks in the
+         * memory cache and then in the pending loads, sees the tile in one or the other, and never fetches it again.
+         */
+        private void removePendingLoad() {
+            synchronized (TileManager.this) {
+                pendingTiles.remove(tileIdentity, this);
+            }
+        }
+
+        @Override
+        public int compareTo(TileLoad that) {
+            int priorityComparison = Boolean.compare(this.prefetch, that.prefetch);
+            return priorityComparison != 0 ? priorityComparison : Long.compare(this.sequence, that.sequence);
+        }
+    }
+
+    /**
+     * Loads the image associated with a tile ID from the disk cache, or from the tile server if it is not on the disk,
+     * and places it in the memory cache.
+     *
+     * @param tileIdentity The ID of the tile.
+     * @return The image associated with the tile ID.
+     * @throws IOException If an error occurs while getting the image from the disk or the tile server.
+     */
+    private Image loadImage(TileId tileIdentity) throws IOException {
+        //Look in memory disk, then in the tile files of the previous versions, and finally on the tile server
+        byte[] imageBytes = diskCache.read(tileIdentity);
+        boolean onDisk = imageBytes != null;
+        if (!onDisk) {
+            imageBytes = readLegacyTile(tileIdentity);
+            if (imageBytes == null) imageBytes = fetchTile(tileIdentity);
+        }
+
+        Image imageTile = new Image(new ByteArrayInputStream(imageBytes));
+        if (imageTile.isError()) throw new IOException("Invalid image for tile " + tileIdentity, imageTile.getException());
+
+        //Only valid images are saved on the disk
+        if (!onDisk) diskCache.write(tileIdentity, imageBytes);
+
+        //Save image in memory cache
+        memoryCache.put(tileIdentity, imageTile);
+
+        return imageTile;
+    }
+
+    /**
+     * Reads the image of a tile from the disk cache of the previous versions, which stored every tile in its own file
+     * zoomLevel/indexX/indexY.png. The file is deleted once read, as the tile is then moved to the packed disk cache.
+     *
+     * @param tileIdentity The ID of the tile.
+     * @return The bytes of the image, or null if there is no such file.
+     * @throws IOException If an error occurs while reading the file.
+     */
+    private byte[] readLegacyTile(TileId tileIdentity) throws IOException {
+        Path pathToFile = pathToMemoryDisk.resolve(String.valueOf(tileIdentity.zoomLevel))
+                .resolve(String.valueOf(tileIdentity.indexX))
+                .resolve(tileIdentity.indexY + IMAGE_EXTENSION_FORMAT);
+        if (!Files.exists(pathToFile)) return null;
+
+        byte[] imageBytes = Files.readAllBytes(pathToFile);
+        Files.delete(pathToFile);
+        return imageBytes;
+    }
+
+    /**
+     * Fetches the image of a tile from the tile server.
+     *
+     * @param tileIdentity The ID of the tile.
+     * @return The bytes of the image.
+     * @throws IOException If an error occurs while getting the image from the tile server.
+     */
+    private byte[] fetchTile(TileId tileIdentity) throws IOException {
+        final String USER_AGENT_NAME = "Javions";
+        final String URL_DELIMITER = "/";
+        final int TIMEOUT_IN_MS = 5000;
+
+        URL u = tileServerUri.resolve(tileIdentity.zoomLevel
+                + URL_DELIMITER + tileIdentity.indexX + URL_DELIMITER
+                + tileIdentity.indexY + IMAGE_EXTENSION_FORMAT).toURL();
+
+        URLConnection c = u.openConnection();
+        c.setRequestProperty("User-Agent", USER_AGENT_NAME);
+        //5 seconds timeout in case something went wrong with url / the server isn't reachable
+        c.setConnectTimeout(TIMEOUT_IN_MS);
+        c.setReadTimeout(TIMEOUT_IN_MS);
+
+        try (InputStream i = c.getInputStream()) {
+            return i.readAllBytes();
+        }
+    }
+
+    /**
+     * Represents the statistics of the memory cache of the tiles.
+     *
+     * @param hitCount       The number of lookups that found their tile.
+     * @param missCount      The number of lookups that did not find their tile.
+     * @param evictionCount  The number of tiles evicted to respect the maximal size.
+     * @param tileCount      The number of tiles in the cache.
+     * @param sizeInBytes    The total size of the decoded images in the cache, in bytes.
+     * @param maxSizeInBytes The maximal total size of the decoded images, in bytes.
+     */
+    public record CacheStatistics(long hitCount, long missCount, long evictionCount, int tileCount,
+                                  long sizeInBytes, long maxSizeInBytes) {
+
+        /**
+         * Returns the proportion of lookups that found their tile.
+         *
+         * @return The hit rate, in [0, 1], or 0 if there was no lookup.
+         */
+        public double hitRate() {
+            long lookupCount = hitCount + missCount;
+            return lookupCount == 0 ? 0 : (double) hitCount / lookupCount;
+        }
+    }
+
     /**
      * Represents the ID of an OSM Tile.
      *
@@ -0,0 +1,148 @@
+package ch.epfl.javions.gui;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Predicts the tiles that the map is likely to need next, so that they can be loaded before being visible.
+ * The predicted tiles are, in decreasing order of priority : the tiles ahead of the visible part of the map in the
+ * direction in which it moves, the ring of tiles around it, the tiles of the next zoom level around its centre,
+ * and the tiles of the previous zoom level covering it.
+ *
+ * @author Arthur Wolf (344200)
+ * @author Oussama Ghali (341478)
+ */
+final class TilePrefetcher {
+    // Size of an OSM Tile in pixels
+    private static final int OSM_TILE_SIZE = 256;
+
+    private TilePrefetcher() {
+    }
+
+    /**
+     * Represents a tile of a ring around the visible tiles
+     *
+     * @param x    The x-index of the tile
+     * @param y    The y-index of the tile
+     * @param ring The index of the ring, 1 being the closest to the visible tiles
+     */
+    private record RingTile(int x, int y, int ring) {
+    }
+
+    /**
+     * Returns the tiles to prefetch for the given visible part of the map, by decreasing order of priority.
+     * The visible tiles themselves are not included.
+     *
+     * @param zoom          The zoom level of the map
+     * @param minX          The x-coordinate of the top left corner of the visible part of the map
+     * @param minY          The y-coordinate of the top left corner of the visible part of the map
+     * @param width         The width of the visible part of the map
+     * @param height        The height of the visible part of the map
+     * @param directionX    The x-component of the last movement of the map, or 0
+     * @param directionY    The y-component of the last movement of the map, or 0
+     * @param maxTileCount  The maximal number of tiles to return
+     * @return The tiles to prefetch
+     */
+    static List<TileManager.TileId> tilesToPrefetch(int zoom, double minX, double minY, double width, double height,
+                                                    double directionX, double directionY, int maxTileCount) {
+        // Range of the visible tiles
+        int minTileX = Math.floorDiv((int) Math.floor(minX), OSM_TILE_SIZE);
+        int minTileY = Math.floorDiv((int) Math.floor(minY), OSM_TILE_SIZE);
+        int maxTileX = Math.floorDiv((int) Math.floor(minX + width), OSM_TILE_SIZE);
+        int maxTileY = Math.floorDiv((int) Math.floor(minY + height), OSM_TILE_SIZE);
+
+        Set<TileManager.TileId> tiles = new LinkedHashSet<>();
+
+        // Two rings of tiles around the visible ones, the tiles behind the movement being excluded from the second one
+        double centerX = minX + width / 2, centerY = minY + height / 2;
+        double length = Math.hypot(directionX, directionY);
+        List<RingTile> ring = new ArrayList<>();
+        for (int x = minTileX - 2; x <= maxTileX + 2; x++) {
+            for (int y = minTileY - 2; y <= maxTileY + 2; y++) {
+                boolean visible = minTileX <= x && x <= maxTileX && minTileY <= y && y <= maxTileY;
+                boolean firstRing = minTileX - 1 <= x && x <= maxTileX + 1 && minTileY - 1 <= y && y <= maxTileY + 1;
+                if (visible || (!firstRing && alignment(x, y, centerX, centerY, directionX, directionY, length) <= 0))
+                    continue;
+                ring.add(new RingTile(x, y, firstRing ? 1 : 2));
+            }
+        }
+        // Tiles of the first ring, ahead of the movement, then closest to the centre
+        ring.sort(Comparator.comparingInt(RingTile::ring)
+                .thenComparingDouble(t -> -alignment(t.x(), t.y(), centerX, centerY, directionX, directionY, length))
+                .thenComparingDouble(t -> distance(t.x(), t.y(), centerX, centerY)));
+        for (RingTile tile : ring)
+            addIfValid(tiles, zoom, tile.x(), tile.y());
+
+        // Tiles of the next zoom level covering the visible part of the map once zoomed in around its centre
+        if (zoom < MapParameters.MAXIMUM_ZOOM_LEVEL) {
+            double childCenterX = 2 * centerX, childCenterY = 2 * centerY;
+            for (int x = Math.floorDiv((int) (childCenterX - width / 2), OSM_TILE_SIZE);
+                 x <= Math.floorDiv((int) (childCenterX + width / 2), OSM_TILE_SIZE); x++) {
+                for (int y = Math.floorDiv((int) (childCenterY - height / 2), OSM_TILE_SIZE);
+                     y <= Math.floorDiv((int) (childCenterY + height / 2), OSM_TILE_SIZE); y++) {
+                    addIfValid(tiles, zoom + 1, x, y);
+                }
+            }
+        }
+
+        // Tiles of the previous zoom level covering the visible tiles
+        if (zoom > MapParameters.MINIMUM_ZOOM_LEVEL) {
+            for (int x = Math.floorDiv(minTileX, 2); x <= Math.floorDiv(maxTileX, 2); x++) {
+                for (int y = Math.floorDiv(minTileY, 2); y <= Math.floorDiv(maxTileY, 2); y++)
+                    addIfValid(tiles, zoom - 1, x, y);
+            }
+        }
+
+        List<TileManager.TileId> tilesToPrefetch = new ArrayList<>(tiles);
+        return tilesToPrefetch.subList(0, Math.min(maxTileCount, tilesToPrefetch.size()));
+    }
+
+    /**
+     * Returns how much the direction from the given centre to the centre of a tile is aligned with the given
+     * direction, from -1 (opposite) to 1 (same direction), or 0 if there is no direction.
+     *
+     * @param x          The x-index of the tile
+     * @param y          The y-index of the tile
+     * @param centerX    The x-coordinate of the centre
+     * @param centerY    The y-coordinate of the centre
+     * @param directionX The x-component of the direction
+     * @param directionY The y-component of the direction
+     * @param length     The length of the direction
+     * @return The alignment of the tile with the direction
+     */
+    private static double alignment(int x, int y, double centerX, double centerY,
+                                    double directionX, double directionY, double length) {
+        double distance = distance(x, y, centerX, centerY);
+        if (length == 0 || distance == 0) return 0;
+        double tileCenterX = (x + 0.5) * OSM_TILE_SIZE, tileCenterY = (y + 0.5) * OSM_TILE_SIZE;
+        return ((tileCenterX - centerX) * directionX + (tileCenterY - centerY) * directionY) / (distance * length);
+    }
+
+    /**
+     * Returns the distance between the centre of a tile and the given point
+     *
+     * @param x       The x-index of the tile
+     * @param y       The y-index of the tile
+     * @param centerX The x-coordinate of the point
+     * @param centerY The y-coordinate of the point
+     * @return The distance between the centre of the tile and the point
+     */
+    private static double distance(int x, int y, double centerX, double centerY) {
+        return Math.hypot((x + 0.5) * OSM_TILE_SIZE - centerX, (y + 0.5) * OSM_TILE_SIZE - centerY);
+    }
+
+    /**
+     * Adds a tile to the given set if its indices are valid at the given zoom level
+     *
+     * @param tiles The set of tiles
+     * @param zoom  The zoom level of the tile
+     * @param x     The x-index of the tile
+     * @param y     The y-index of the tile
+     */
+    private static void addIfValid(Set<TileManager.TileId> tiles, int zoom, int x, int y) {
+        if (TileManager.TileId.isValid(zoom, x, y)) tiles.add(new TileManager.TileId(zoom, x, y));
+    }
+}
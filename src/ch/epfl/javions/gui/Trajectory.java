@@ -0,0 +1,284 @@
+package ch.epfl.javions.gui;
+
+import ch.epfl.javions.GeoPos;
+import ch.epfl.javions.Preconditions;
+import ch.epfl.javions.Units;
+import javafx.collections.ObservableListBase;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+import static ch.epfl.javions.gui.ObservableAircraftState.AirbornePos;
+
+/**
+ * Represents the trajectory of an aircraft, stored as a bounded ring of packed primitive values
+ * (longitude and latitude in t32, altitude as a float, and the time stamp of each position).
+ * The trajectory is observable, its elements being created on demand when they are read, and it can
+ * only be modified by the aircraft state owning it.
+ * The oldest positions are removed according to the retention of the trajectory, either because they are
+ * too old or because the ring is full. In the latter case, the trajectory can first be thinned with the
+ * Douglas–Peucker algorithm, in order to keep its shape with fewer positions, down to 3/4 of its capacity.
+ *
+ * @author Arthur Wolf (344200)
+ * @author Oussama Ghali (341478)
+ */
+public final class Trajectory extends ObservableListBase<AirbornePos> {
+    private final Retention retention;
+    private final int[] longitudesT32;
+    private final int[] latitudesT32;
+    private final float[] altitudes;
+    private final long[] timeStampsNs;
+    // Index in the arrays of the first (oldest) position
+    private int head;
+    private int size;
+
+    /**
+     * Represents the retention of a trajectory
+     *
+     * @param maxPositionCount   The maximal number of positions kept in the trajectory
+     * @param maxAgeNs           The maximal age of a position (in nanoseconds) compared to the newest one
+     * @param thinningTolerance  The tolerance (in radians) of the Douglas–Peucker thinning applied when the
+     *                           trajectory is full, or 0 to simply drop the oldest positions
+     */
+    public record Retention(int maxPositionCount, long maxAgeNs, double thinningTolerance) {
+        /**
+         * The default retention, keeping at most 4096 positions of the last 2 hours, and thinning the trajectory
+         * with a tolerance of about 50 meters when it is full
+         */
+        public static final Retention DEFAULT = new Retention(4096, 7_200_000_000_000L, 8e-6);
+
+        /**
+         * Validates the retention
+         *
+         * @throws IllegalArgumentException If the maximal position count is smaller than 2, or if the maximal
+         *                                  age or the thinning tolerance is negative
+         */
+        public Retention {
+            Preconditions.checkArgument(maxPositionCount >= 2 && maxAgeNs >= 0 && thinningTolerance >= 0);
+        }
+    }
+
+    /**
+     * Constructs an empty trajectory with the given retention
+     *
+     * @param retention The retention of the trajectory
+     */
+    Trajectory(Retention retention) {
+        this.retention = retention;
+        int capacity = retention.maxPositionCount();
+        longitudesT32 = new int[capacity];
+        latitudesT32 = new int[capacity];
+        altitudes = new float[capacity];
+        timeStampsNs = new long[capacity];
+    }
+
+    /**
+     * Returns the position at the given index, the oldest one being at index 0
+     *
+     * @param index The index of the position
+     * @return The position at the given index
+     * @throws IndexOutOfBoundsException If the index is not in the trajectory
+     */
+    @Override
+    public AirbornePos get(int index) {
+        Objects.checkIndex(index, size);
+        int i = slot(index);
+        return new AirbornePos(new GeoPos(longitudesT32[i], latitudesT32[i]), altitudes[i]);
+    }
+
+    /**
+     * Returns the number of positions in the trajectory
+     *
+     * @return The number of positions in the trajectory
+     */
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Adds the given positions at the end of the trajectory, notifying the observers only once.
+     *
+     * @param positions   The positions to add
+     * @param timeStampNs The time stamp of the positions (in nanoseconds)
+     */
+    void addAll(List<AirbornePos> positions, long timeStampNs) {
+        if (positions.isEmpty()) return;
+
+        beginChange();
+        for (AirbornePos position : positions) {
+            if (size == longitudesT32.length) makeRoom();
+            write(slot(size), position, timeStampNs);
+            size++;
+            nextAdd(size - 1, size);
+        }
+        removeOlderThan(timeStampNs - retention.maxAgeNs());
+        endChange();
+    }
+
+    /**
+     * Replaces the newest position of the trajectory
+     *
+     * @param position The new position
+     * @throws IndexOutOfBoundsException If the trajectory is empty
+     */
+    void replaceLast(AirbornePos position) {
+        AirbornePos old = get(size - 1);
+        int i = slot(size - 1);
+        beginChange();
+        write(i, position, timeStampsNs[i]);
+        nextSet(size - 1, old);
+        endChange();
+    }
+
+    /**
+     * Makes room for a new position in the full trajectory, by removing its oldest position if thinning is disabled.
+     * Otherwise, the trajectory is thinned and, if it still contains more than 3/4 of its capacity (for example
+     * because it cannot be simplified), its oldest positions are removed down to 3/4 of its capacity, so that the
+     * cost of a thinning is shared by the many positions added until the trajectory is full again.
+     * Must be called during a change.
+     */
+    private void makeRoom() {
+        if (retention.thinningTolerance() == 0) {
+            removeFirst(1);
+            return;
+        }
+        int lowWaterMark = longitudesT32.length * 3 / 4;
+        thin(retention.thinningTolerance());
+        if (size > lowWaterMark) removeFirst(size - lowWaterMark);
+    }
+
+    /**
+     * Removes the positions older than the given time stamp. Must be called during a change.
+     *
+     * @param oldestTimeStampNs The time stamp of the oldest position to keep
+     */
+    private void removeOlderThan(long oldestTimeStampNs) {
+        int count = 0;
+        while (count < size && timeStampsNs[slot(count)] < oldestTimeStampNs)
+            count++;
+        if (count > 0) removeFirst(count);
+    }
+
+    /**
+     * Removes the given number of oldest positions. Must be called during a change.
+     *
+     * @param count The number of positions to remove
+     */
+    private void removeFirst(int count) {
+        List<AirbornePos> removed = new ArrayList<>(count);
+        for (int i = 0; i < count; i++)
+            removed.add(get(i));
+        head = slot(count);
+        size -= count;
+        nextRemove(0, removed);
+    }
+
+    /**
+     * Removes the positions that are not needed to keep the shape of the trajectory within the given tolerance,
+     * using the Douglas–Peucker algorithm. The first and last positions are always kept.
+     * Must be called during a change.
+     *
+     * @param tolerance The maximal distance (in radians) between a removed position and the thinned trajectory
+     */
+    private void thin(double tolerance) {
+        if (size < 3) return;
+
+        boolean[] keep = new boolean[size];
+        keep[0] = true;
+        keep[size - 1] = true;
+
+        // Ranges [from, to] still to simplify, stored as pairs
+        int[] stack = new int[2 * size];
+        int top = 0;
+        stack[top++] = 0;
+        stack[top++] = size - 1;
+        while (top > 0) {
+            int to = stack[--top];
+            int from = stack[--top];
+            int farthest = -1;
+            double maxDistance = tolerance;
+            for (int i = from + 1; i < to; i++) {
+                double distance = distanceToSegment(i, from, to);
+                if (distance > maxDistance) {
+                    maxDistance = distance;
+                    farthest = i;
+                }
+            }
+            if (farthest >= 0) {
+                keep[farthest] = true;
+                stack[top++] = from;
+                stack[top++] = farthest;
+                stack[top++] = farthest;
+                stack[top++] = to;
+            }
+        }
+
+        // Compact the kept positions at the beginning of the ring, notifying every removal
+        int kept = 0;
+        for (int i = 0; i < size; i++) {
+            if (keep[i]) {
+                int from = slot(i), to = slot(kept);
+                longitudesT32[to] = longitudesT32[from];
+                latitudesT32[to] = latitudesT32[from];
+                altitudes[to] = altitudes[from];
+                timeStampsNs[to] = timeStampsNs[from];
+                kept++;
+            } else {
+                nextRemove(kept, new AirbornePos(new GeoPos(longitudesT32[slot(i)], latitudesT32[slot(i)]), altitudes[slot(i)]));
+            }
+        }
+        size = kept;
+    }
+
+    /**
+     * Returns the distance (in radians) between the position at the given index and the segment between the
+     * two other given positions, the longitude and the latitude being used as plane coordinates.
+     *
+     * @param index The index of the position
+     * @param from  The index of the start of the segment
+     * @param to    The index of the end of the segment
+     * @return The distance between the position and the segment
+     */
+    private double distanceToSegment(int index, int from, int to) {
+        double x = longitude(index), y = latitude(index);
+        double x1 = longitude(from), y1 = latitude(from);
+        double dx = longitude(to) - x1, dy = latitude(to) - y1;
+        double lengthSquared = dx * dx + dy * dy;
+        double t = lengthSquared == 0 ? 0 : Math.max(0, Math.min(1, ((x - x1) * dx + (y - y1) * dy) / lengthSquared));
+        return Math.hypot(x - (x1 + t * dx), y - (y1 + t * dy));
+    }
+
+    private double longitude(int index) {
+        return Units.convertFrom(longitudesT32[slot(index)], Units.Angle.T32);
+    }
+
+    private double latitude(int index) {
+        return Units.convertFrom(latitudesT32[slot(index)], Units.Angle.T32);
+    }
+
+    /**
+     * Writes a position in the arrays
+     *
+     * @param slot        The index in the arrays
+     * @param position    The position to write
+     * @param timeStampNs The time stamp of the position
+     */
+    private void write(int slot, AirbornePos position, long timeStampNs) {
+        longitudesT32[slot] = position.geoPos().longitudeT32();
+        latitudesT32[slot] = position.geoPos().latitudeT32();
+        altitudes[slot] = (float) position.altitude();
+        timeStampsNs[slot] = timeStampNs;
+    }
+
+    /**
+     * Returns the index in the arrays of the position at the given index of the trajectory
+     *
+     * @param index The index in the trajectory
+     * @return The index in the arrays
+     */
+    private int slot(int index) {
+        return (head + index) % longitudesT32.length;
+    }
+}
@@ -0,0 +1,71 @@
+package ch.epfl.javions;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RingBufferTest {
+    @Test
+    void ringBufferConstructorThrowsOnInvalidArguments() {
+        assertThrows(IllegalArgumentException.class, () -> new RingBuffer<>(0, RingBuffer.OverflowPolicy.BLOCK));
+        assertThrows(IllegalArgumentException.class, () -> new RingBuffer<>(-1, RingBuffer.OverflowPolicy.BLOCK));
+        assertThrows(NullPointerException.class, () -> new RingBuffer<>(8, null));
+    }
+
+    @Test
+    void ringBufferCapacityIsRoundedToPowerOfTwo() {
+        assertEquals(1, new RingBuffer<>(1, RingBuffer.OverflowPolicy.BLOCK).capacity());
+        assertEquals(8, new RingBuffer<>(8, RingBuffer.OverflowPolicy.BLOCK).capacity());
+        assertEquals(16, new RingBuffer<>(9, RingBuffer.OverflowPolicy.BLOCK).capacity());
+    }
+
+    @Test
+    void ringBufferIsFifo() {
+        var buffer = new RingBuffer<Integer>(4, RingBuffer.OverflowPolicy.DROP_NEWEST);
+        assertNull(buffer.poll());
+        for (int round = 0; round < 10; round++) {
+            for (int i = 0; i < 3; i++) assertTrue(buffer.offer(round * 3 + i));
+            assertEquals(3, buffer.size());
+            for (int i = 0; i < 3; i++) assertEquals(round * 3 + i, buffer.poll());
+            assertNull(buffer.poll());
+        }
+        assertEquals(0, buffer.droppedCount());
+    }
+
+    @Test
+    void ringBufferDropNewestKeepsOldestElements() {
+        var buffer = new RingBuffer<Integer>(4, RingBuffer.OverflowPolicy.DROP_NEWEST);
+        for (int i = 0; i < 6; i++) buffer.offer(i);
+        assertEquals(2, buffer.droppedCount());
+        assertEquals(4, buffer.size());
+        for (int i = 0; i < 4; i++) assertEquals(i, buffer.poll());
+    }
+
+    @Test
+    void ringBufferDropOldestKeepsNewestElements() {
+        var buffer = new RingBuffer<Integer>(4, RingBuffer.OverflowPolicy.DROP_OLDEST);
+        for (int i = 0; i < 6; i++) assertTrue(buffer.offer(i));
+        assertEquals(2, buffer.droppedCount());
+        assertEquals(4, buffer.size());
+        for (int i = 2; i < 6; i++) assertEquals(i, buffer.poll());
+    }
+
+    @Test
+    void ringBufferBlockTransfersAllElementsBetweenThreads() throws InterruptedException {
+        final int COUNT = 100_000;
+        var buffer = new RingBuffer<Integer>(16, RingBuffer.OverflowPolicy.BLOCK);
+        Thread producer = new Thread(() -> {
+            for (int i = 0; i < COUNT; i++) buffer.offer(i);
+        });
+        producer.start();
+
+        int expected = 0;
+        while (expected < COUNT) {
+            Integer element = buffer.poll();
+            if (element != null) assertEquals(expected++, element);
+        }
+        producer.join();
+        assertEquals(0, buffer.droppedCount());
+        assertNull(buffer.poll());
+    }
+}
@@ -0,0 +1,118 @@
+package ch.epfl.javions.adsb;
+
+import ch.epfl.javions.GeoPos;
+import ch.epfl.javions.aircraft.IcaoAddress;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ConcurrentAircraftStateTableTest {
+    private static final class CountingState implements AircraftStateSetter {
+        private int messageCount;
+        private long lastMessageTimeStampNs;
+
+        @Override
+        public void setLastMessageTimeStampNs(long timeStampNs) {
+            messageCount += 1;
+            lastMessageTimeStampNs = timeStampNs;
+        }
+
+        @Override
+        public void setCategory(int category) {}
+
+        @Override
+        public void setCallSign(CallSign callSign) {}
+
+        @Override
+        public void setPosition(GeoPos position) {}
+
+        @Override
+        public void setAltitude(double altitude) {}
+
+        @Override
+        public void setVelocity(double velocity) {}
+
+        @Override
+        public void setTrackOrHeading(double trackOrHeading) {}
+    }
+
+    private static IcaoAddress address(int i) {
+        return new IcaoAddress(HexFormat.of().withUpperCase().toHexDigits(i).substring(2));
+    }
+
+    private static Message message(long timeStampNs, IcaoAddress address) {
+        return new AircraftIdentificationMessage(timeStampNs, address, 0xA0, new CallSign("TEST"));
+    }
+
+    @Test
+    void concurrentAircraftStateTableThrowsOnInvalidArguments() {
+        assertThrows(IllegalArgumentException.class, () -> new ConcurrentAircraftStateTable<>(0, a -> new CountingState()));
+        assertThrows(NullPointerException.class, () -> new ConcurrentAircraftStateTable<CountingState>(4, null));
+    }
+
+    @Test
+    void concurrentAircraftStateTableReadReturnsNullForUnknownAircraft() {
+        var table = new ConcurrentAircraftStateTable<>(4, a -> new CountingState());
+        assertNull(table.read(address(1), s -> s.messageCount));
+        assertEquals(0, table.size());
+    }
+
+    @Test
+    void concurrentAircraftStateTableAppliesConcurrentUpdates() throws InterruptedException {
+        final int THREADS = 8, AIRCRAFT = 100, MESSAGES = 50;
+        var table = new ConcurrentAircraftStateTable<>(4, a -> new CountingState());
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            Thread thread = new Thread(() -> {
+                for (int m = 0; m < MESSAGES; m++)
+                    for (int a = 0; a < AIRCRAFT; a++)
+                        table.update(message(m, address(a)));
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) thread.join();
+
+        assertEquals(AIRCRAFT, table.size());
+        for (int a = 0; a < AIRCRAFT; a++)
+            assertEquals((Integer) (THREADS * MESSAGES), table.read(address(a), s -> s.messageCount));
+        assertEquals(AIRCRAFT, table.snapshot(s -> s.messageCount).size());
+    }
+
+    @Test
+    void concurrentAircraftStateTablePurgeRemovesOnlyOutdatedAircraft() {
+        var table = new ConcurrentAircraftStateTable<>(3, a -> new CountingState());
+        for (int a = 0; a < 10; a++)
+            table.update(message(a, address(a)));
+        // Aircraft 0 sends a new message, it must not be purged anymore
+        table.update(message(20, address(0)));
+
+        List<CountingState> removed = table.purge(5);
+        assertEquals(4, removed.size());
+        for (CountingState state : removed)
+            assertTrue(state.lastMessageTimeStampNs < 5);
+        assertEquals(6, table.size());
+        assertNotNull(table.read(address(0), s -> s.messageCount));
+        assertNull(table.read(address(1), s -> s.messageCount));
+    }
+
+    @Test
+    void concurrentAircraftStateTablePurgeIgnoresReadsAndOutOfOrderMessages() {
+        var table = new ConcurrentAircraftStateTable<>(1, a -> new CountingState());
+        table.update(message(1, address(0)));
+        table.update(message(10, address(1)));
+        // Reading aircraft 0 must not keep it in the table
+        table.read(address(0), s -> s.messageCount);
+        // A late message of another feed must not make aircraft 1 older
+        table.update(message(2, address(1)));
+
+        List<CountingState> removed = table.purge(5);
+        assertEquals(1, removed.size());
+        assertNull(table.read(address(0), s -> s.messageCount));
+        assertNotNull(table.read(address(1), s -> s.messageCount));
+    }
+}
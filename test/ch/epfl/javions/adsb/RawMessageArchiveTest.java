@@ -0,0 +1,229 @@
+package ch.epfl.javions.adsb;
+
+import ch.epfl.javions.ByteString;
+import ch.epfl.javions.Crc24;
+import ch.epfl.javions.aircraft.IcaoAddress;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RawMessageArchiveTest {
+    private static final Crc24 CRC_24 = new Crc24(Crc24.GENERATOR);
+    private static final int AIRCRAFT_COUNT = 40;
+
+    @TempDir
+    Path directory;
+
+    private static RawMessage message(long timeStampNs, int address, long me) {
+        byte[] bytes = new byte[RawMessage.LENGTH];
+        bytes[0] = (byte) 0x8D;
+        for (int i = 0; i < 3; i++)
+            bytes[1 + i] = (byte) (address >>> (16 - 8 * i));
+        for (int i = 0; i < 7; i++)
+            bytes[4 + i] = (byte) (me >>> (48 - 8 * i));
+        int crc = CRC_24.crc(Arrays.copyOf(bytes, 11));
+        for (int i = 0; i < 3; i++)
+            bytes[11 + i] = (byte) (crc >>> (16 - 8 * i));
+        return new RawMessage(timeStampNs, new ByteString(bytes));
+    }
+
+    // Messages resembling those of a receiver, with time stamps counted in samples of 100 ns: positions, velocities
+    // and identifications of a few aircraft flying at several hundred knots, whose speed drifts and which sometimes
+    // turn, climb or descend. The first aircraft is only seen at the beginning.
+    private static List<RawMessage> messages(int count) {
+        final double KNOT_IN_DEGREES_PER_NS = 1.0 / 60 / 3_600e9;
+        SplittableRandom random = new SplittableRandom(2023);
+        double[] latitudes = new double[AIRCRAFT_COUNT], longitudes = new double[AIRCRAFT_COUNT];
+        double[] speeds = new double[AIRCRAFT_COUNT], headings = new double[AIRCRAFT_COUNT];
+        double[] turnRates = new double[AIRCRAFT_COUNT];
+        double[] altitudes = new double[AIRCRAFT_COUNT], verticalRates = new double[AIRCRAFT_COUNT];
+        long[] lastTimeStampsNs = new long[AIRCRAFT_COUNT];
+        int[] parities = new int[AIRCRAFT_COUNT];
+        for (int a = 0; a < AIRCRAFT_COUNT; a++) {
+            latitudes[a] = 46 + random.nextDouble();
+            longitudes[a] = 6 + random.nextDouble();
+            speeds[a] = 150 + random.nextDouble(350);
+            headings[a] = random.nextDouble(2 * Math.PI);
+            altitudes[a] = 2_000 + random.nextDouble(36_000);
+        }
+
+        List<RawMessage> messages = new ArrayList<>();
+        long timeStampNs = 0;
+        for (int i = 0; i < count; i++) {
+            timeStampNs += 100L * random.nextInt(50_000);
+            int a = i < count / 10 ? random.nextInt(AIRCRAFT_COUNT) : 1 + random.nextInt(AIRCRAFT_COUNT - 1);
+
+            // The aircraft moves since its last message, and sometimes starts or stops a turn, a climb or a descent
+            double elapsedS = (timeStampNs - lastTimeStampsNs[a]) / 1e9;
+            lastTimeStampsNs[a] = timeStampNs;
+            if (random.nextInt(200) == 0) turnRates[a] = Math.toRadians(random.nextInt(-1, 2) * 3);
+            if (random.nextInt(200) == 0) verticalRates[a] = random.nextInt(-2, 3) * 1_000;
+            speeds[a] = Math.max(100, speeds[a] + random.nextDouble(-1, 1) * elapsedS);
+            headings[a] += turnRates[a] * elapsedS;
+            altitudes[a] = Math.max(0, Math.min(40_000, altitudes[a] + verticalRates[a] / 60 * elapsedS));
+            double distance = speeds[a] * KNOT_IN_DEGREES_PER_NS * elapsedS * 1e9;
+            latitudes[a] += distance * Math.cos(headings[a]);
+            longitudes[a] += distance * Math.sin(headings[a]) / Math.cos(Math.toRadians(latitudes[a]));
+
+            int address = 0x4B0000 + a * 0x111;
+            int kind = random.nextInt(10);
+            long me;
+            if (kind < 5) {
+                int parity = parities[a];
+                parities[a] ^= 1;
+                double zones = parity == 0 ? 60 : 59;
+                long latitude = (long) (latitudes[a] * zones / 360 * (1 << 17)) & 0x1FFFF;
+                long longitude = (long) (longitudes[a] * (zones - 20) / 360 * (1 << 17)) & 0x1FFFF;
+                // Altitude in steps of 25 feet, with the Q bit set
+                long n = Math.round((altitudes[a] + 1_000) / 25);
+                long altitude = ((n >>> 4) << 5) | (1 << 4) | (n & 0xF);
+                me = (11L << 51) | (altitude << 36) | ((long) parity << 34) | (latitude << 17) | longitude;
+            } else if (kind < 9) {
+                long eastSpeed = Math.round(speeds[a] * Math.sin(headings[a]));
+                long northSpeed = Math.round(speeds[a] * Math.cos(headings[a]));
+                long verticalRate = Math.round(verticalRates[a] / 64);
+                me = (19L << 51) | (1L << 48)
+                        | ((eastSpeed < 0 ? 1L : 0) << 42) | ((Math.abs(eastSpeed) + 1) << 32)
+                        | ((northSpeed < 0 ? 1L : 0) << 31) | ((Math.abs(northSpeed) + 1) << 21)
+                        | ((verticalRate < 0 ? 1L : 0) << 19) | ((Math.abs(verticalRate) + 1) << 10)
+                        | random.nextInt(4);
+            } else {
+                me = (4L << 51) | (0x0C3871C3L << 8) ^ a;
+            }
+            messages.add(message(timeStampNs, address, me));
+        }
+        return messages;
+    }
+
+    private Path archive(List<RawMessage> messages, int blockRecordCount) throws IOException {
+        Path archive = directory.resolve("archive.bin");
+        try (var writer = new RawMessageArchiveWriter(archive, blockRecordCount)) {
+            for (RawMessage message : messages) writer.write(message);
+        }
+        return archive;
+    }
+
+    private static List<RawMessage> readAll(RawMessageArchiveReader reader) throws IOException {
+        List<RawMessage> messages = new ArrayList<>();
+        RawMessage message;
+        while ((message = reader.read()) != null) messages.add(message);
+        return messages;
+    }
+
+    @Test
+    void rawMessageArchiveRoundTripsMessages() throws IOException {
+        List<RawMessage> messages = new ArrayList<>(messages(10_000));
+        // Messages received with errors and time stamps out of order are preserved too
+        byte[] random = new byte[RawMessage.LENGTH];
+        new Random(1).nextBytes(random);
+        messages.add(new RawMessage(5, new ByteString(random)));
+        messages.add(new RawMessage(0, messages.get(0).bytes()));
+
+        Path archive = archive(messages, 1_000);
+        try (var reader = new RawMessageArchiveReader(archive)) {
+            assertEquals(messages, readAll(reader));
+            assertEquals(11, reader.blockCount());
+            assertEquals(11, reader.decompressedBlockCount());
+        }
+    }
+
+    @Test
+    void rawMessageArchiveIsAtLeastFourTimesSmallerThanLog() throws IOException {
+        List<RawMessage> messages = messages(100_000);
+        Path log = directory.resolve("log.bin");
+        try (var writer = new RawMessageWriter(log)) {
+            for (RawMessage message : messages) writer.write(message);
+        }
+        Path archive = directory.resolve("archive.bin");
+        RawMessageArchiveWriter.archive(log, archive);
+
+        long logSize = Files.size(log), archiveSize = Files.size(archive);
+        assertTrue(logSize >= 4 * archiveSize, () -> "Compression ratio: " + (double) logSize / archiveSize);
+        try (var reader = new RawMessageArchiveReader(archive)) {
+            assertEquals(messages, readAll(reader));
+        }
+    }
+
+    @Test
+    void rawMessageArchiveReaderFiltersByTimeStampWithoutDecompressingOtherBlocks() throws IOException {
+        List<RawMessage> messages = messages(10_000);
+        long from = messages.get(4_321).timeStampNs(), to = messages.get(5_678).timeStampNs();
+        Path archive = archive(messages, 1_000);
+
+        try (var reader = new RawMessageArchiveReader(archive, from, to, null)) {
+            List<RawMessage> expected = messages.stream()
+                    .filter(m -> m.timeStampNs() >= from && m.timeStampNs() < to)
+                    .toList();
+            assertEquals(expected, readAll(reader));
+            assertEquals(10, reader.blockCount());
+            assertEquals(2, reader.decompressedBlockCount());
+        }
+    }
+
+    @Test
+    void rawMessageArchiveReaderFiltersByAddressWithoutDecompressingOtherBlocks() throws IOException {
+        List<RawMessage> messages = messages(10_000);
+        IcaoAddress address = new IcaoAddress("4B0000");
+        Path archive = archive(messages, 1_000);
+
+        try (var reader = new RawMessageArchiveReader(archive, 0, Long.MAX_VALUE, address)) {
+            List<RawMessage> expected = messages.stream()
+                    .filter(m -> m.icaoAddress().equals(address))
+                    .toList();
+            assertFalse(expected.isEmpty());
+            assertEquals(expected, readAll(reader));
+            assertEquals(1, reader.decompressedBlockCount());
+        }
+    }
+
+    @Test
+    void rawMessageArchiveReaderThrowsOnInvalidArchive() throws IOException {
+        Path file = directory.resolve("log.bin");
+        try (var writer = new RawMessageWriter(file)) {
+            writer.write(messages(1).get(0));
+        }
+        assertThrows(IOException.class, () -> new RawMessageArchiveReader(file));
+
+        Path archive = archive(messages(100), 1_000);
+        Files.write(archive, Arrays.copyOf(Files.readAllBytes(archive), (int) Files.size(archive) - 1));
+        try (var reader = new RawMessageArchiveReader(archive)) {
+            assertThrows(IOException.class, reader::read);
+        }
+
+        // A block whose columns are shorter than its messages require, read after a larger block
+        List<RawMessage> messages = messages(200);
+        archive = archive(messages, 100);
+        // In the header of a block, the sizes of the dictionary, of the columns and of the compressed columns follow
+        // three longs and an int
+        int dictionarySizeOffset = 3 * Long.BYTES + Integer.BYTES;
+        ByteBuffer bytes = ByteBuffer.wrap(Files.readAllBytes(archive));
+        int firstBlock = Integer.BYTES;
+        int secondBlock = firstBlock + RawMessageArchiveReader.BLOCK_HEADER_SIZE
+                + bytes.getInt(firstBlock + dictionarySizeOffset) * RawMessageArchiveReader.ADDRESS_SIZE
+                + bytes.getInt(firstBlock + dictionarySizeOffset + 2 * Integer.BYTES);
+        bytes.putInt(secondBlock + dictionarySizeOffset + Integer.BYTES, 1);
+        Files.write(archive, bytes.array());
+        try (var reader = new RawMessageArchiveReader(archive)) {
+            for (int i = 0; i < 100; i++)
+                assertEquals(messages.get(i), reader.read());
+            assertThrows(IOException.class, reader::read);
+        }
+    }
+
+    @Test
+    void rawMessageArchiveWriterThrowsOnInvalidBlockSize() {
+        assertThrows(IllegalArgumentException.class,
+                () -> new RawMessageArchiveWriter(directory.resolve("archive.bin"), 0));
+    }
+}
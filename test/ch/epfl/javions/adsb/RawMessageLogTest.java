@@ -0,0 +1,156 @@
+package ch.epfl.javions.adsb;
+
+import ch.epfl.javions.ByteString;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RawMessageLogTest {
+    @TempDir
+    Path directory;
+
+    private static RawMessage message(int i) {
+        byte[] bytes = new byte[RawMessage.LENGTH];
+        for (int j = 0; j < bytes.length; j++)
+            bytes[j] = (byte) (i * 31 + j);
+        return new RawMessage(1_000L * i, new ByteString(bytes));
+    }
+
+    private static List<RawMessage> messages(int count) {
+        List<RawMessage> messages = new ArrayList<>();
+        for (int i = 0; i < count; i++) messages.add(message(i));
+        return messages;
+    }
+
+    private static List<RawMessage> readAll(RawMessageReader reader) throws IOException {
+        List<RawMessage> messages = new ArrayList<>();
+        RawMessage message;
+        while ((message = reader.read()) != null) messages.add(message);
+        return messages;
+    }
+
+    @Test
+    void rawMessageLogRoundTripsAcrossBufferBoundaries() throws IOException {
+        Path log = directory.resolve("log.bin");
+        List<RawMessage> messages = messages(10);
+        try (var writer = new RawMessageWriter(log, 3)) {
+            for (RawMessage message : messages) writer.write(message);
+            assertEquals(10L * RawMessageReader.RECORD_SIZE, writer.size());
+        }
+        assertEquals(10L * RawMessageReader.RECORD_SIZE, Files.size(log));
+
+        try (var reader = new RawMessageReader(log, 4)) {
+            assertEquals(messages, readAll(reader));
+            assertNull(reader.read());
+        }
+    }
+
+    @Test
+    void rawMessageReaderReadsLogsWrittenWithDataOutputStream() throws IOException {
+        Path log = directory.resolve("log.bin");
+        List<RawMessage> messages = messages(5);
+        try (var stream = new DataOutputStream(Files.newOutputStream(log))) {
+            for (RawMessage message : messages) {
+                stream.writeLong(message.timeStampNs());
+                for (int i = 0; i < RawMessage.LENGTH; i++) stream.writeByte(message.bytes().byteAt(i));
+            }
+        }
+        try (var reader = new RawMessageReader(log)) {
+            assertEquals(messages, readAll(reader));
+        }
+    }
+
+    @Test
+    void rawMessageReaderReadsMessagesInBulk() throws IOException {
+        Path log = directory.resolve("log.bin");
+        List<RawMessage> messages = messages(7);
+        try (var writer = new RawMessageWriter(log)) {
+            for (RawMessage message : messages) writer.write(message);
+        }
+
+        long[] timeStampsNs = new long[5];
+        byte[] bytes = new byte[5 * RawMessage.LENGTH];
+        try (var reader = new RawMessageReader(log, 2)) {
+            assertEquals(5, reader.read(timeStampsNs, bytes));
+            for (int i = 0; i < 5; i++) {
+                assertEquals(messages.get(i).timeStampNs(), timeStampsNs[i]);
+                assertEquals(messages.get(i).bytes(),
+                        new ByteString(Arrays.copyOfRange(bytes, i * RawMessage.LENGTH, (i + 1) * RawMessage.LENGTH)));
+            }
+            assertEquals(2, reader.read(timeStampsNs, bytes));
+            assertEquals(messages.get(6).timeStampNs(), timeStampsNs[1]);
+            assertEquals(0, reader.read(timeStampsNs, bytes));
+        }
+    }
+
+    @Test
+    void rawMessageWriterWritesMessagesInBulk() throws IOException {
+        Path log = directory.resolve("log.bin");
+        long[] timeStampsNs = {1, 2, 3};
+        byte[] bytes = new byte[3 * RawMessage.LENGTH];
+        for (int i = 0; i < bytes.length; i++) bytes[i] = (byte) i;
+        try (var writer = new RawMessageWriter(log, 2)) {
+            writer.write(timeStampsNs, bytes, 3);
+            assertThrows(IndexOutOfBoundsException.class, () -> writer.write(timeStampsNs, bytes, 4));
+        }
+
+        try (var reader = new RawMessageReader(log)) {
+            List<RawMessage> messages = readAll(reader);
+            assertEquals(3, messages.size());
+            assertEquals(3, messages.get(2).timeStampNs());
+            assertEquals(2 * RawMessage.LENGTH, messages.get(2).bytes().byteAt(0));
+        }
+    }
+
+    @Test
+    void rawMessageReaderIgnoresPartialLastRecord() throws IOException {
+        Path log = directory.resolve("log.bin");
+        try (var writer = new RawMessageWriter(log)) {
+            writer.write(message(0));
+            writer.write(message(1));
+        }
+        Files.write(log, new byte[]{1, 2, 3}, StandardOpenOption.APPEND);
+
+        try (var reader = new RawMessageReader(log, 1)) {
+            assertEquals(messages(2), readAll(reader));
+        }
+    }
+
+    @Test
+    void rawMessageLogThrowsOnInvalidBufferSize() {
+        Path log = directory.resolve("log.bin");
+        assertThrows(IllegalArgumentException.class, () -> new RawMessageWriter(log, 0));
+        assertThrows(IllegalArgumentException.class, () -> new RawMessageReader(log, 0));
+    }
+
+    @Test
+    void rawMessageReaderSeeksToRecords() throws IOException {
+        Path log = directory.resolve("log.bin");
+        List<RawMessage> messages = messages(10);
+        try (var writer = new RawMessageWriter(log)) {
+            for (RawMessage message : messages) writer.write(message);
+        }
+
+        try (var reader = new RawMessageReader(log, 3)) {
+            assertEquals(10, reader.recordCount());
+            assertEquals(7_000L, reader.timeStampNsAt(7));
+            assertThrows(IndexOutOfBoundsException.class, () -> reader.timeStampNsAt(10));
+
+            assertEquals(messages.get(0), reader.read());
+            reader.seek(6);
+            assertEquals(messages.subList(6, 10), readAll(reader));
+            reader.seek(1);
+            assertEquals(messages.get(1), reader.read());
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package ch.epfl.javions.adsb;
+
+import ch.epfl.javions.ByteString;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RawMessageRecorderTest {
+    @TempDir
+    Path directory;
+
+    private static RawMessage message(long timeStampNs, int i) {
+        byte[] bytes = new byte[RawMessage.LENGTH];
+        bytes[0] = (byte) i;
+        return new RawMessage(timeStampNs, new ByteString(bytes));
+    }
+
+    private List<Path> logs() throws IOException {
+        try (Stream<Path> files = Files.list(directory.resolve("logs"))) {
+            return files.sorted().toList();
+        }
+    }
+
+    private static List<RawMessage> read(Path log) throws IOException {
+        List<RawMessage> messages = new ArrayList<>();
+        try (var reader = new RawMessageReader(log)) {
+            RawMessage message;
+            while ((message = reader.read()) != null) messages.add(message);
+        }
+        return messages;
+    }
+
+    @Test
+    void rawMessageRecorderWritesEveryMessageToASingleLog() throws IOException {
+        try (var recorder = new RawMessageRecorder(directory.resolve("logs"), 1 << 20, Long.MAX_VALUE)) {
+            for (int i = 0; i < 1000; i++)
+                assertTrue(recorder.record(message(100 + i, i)));
+        }
+
+        List<Path> logs = logs();
+        assertEquals(1, logs.size());
+        assertTrue(logs.get(0).getFileName().toString().matches("messages_\\d{8}_\\d{6}_000\\.bin"));
+        List<RawMessage> messages = read(logs.get(0));
+        assertEquals(1000, messages.size());
+        // The time stamps are relative to the first message of the log
+        assertEquals(0, messages.get(0).timeStampNs());
+        assertEquals(999, messages.get(999).timeStampNs());
+        assertEquals(message(999, 999).bytes(), messages.get(999).bytes());
+    }
+
+    @Test
+    void rawMessageRecorderRotatesLogsBySize() throws IOException {
+        try (var recorder = new RawMessageRecorder(directory.resolve("logs"),
+                4L * RawMessageReader.RECORD_SIZE, Long.MAX_VALUE)) {
+            for (int i = 0; i < 10; i++) recorder.record(message(i, i));
+        }
+
+        List<Path> logs = logs();
+        assertEquals(3, logs.size());
+        assertEquals(4, read(logs.get(0)).size());
+        assertEquals(4, read(logs.get(1)).size());
+        List<RawMessage> last = read(logs.get(2));
+        assertEquals(2, last.size());
+        assertEquals(9, last.get(1).bytes().byteAt(0));
+    }
+
+    @Test
+    void rawMessageRecorderRotatesLogsByDuration() throws IOException {
+        try (var recorder = new RawMessageRecorder(directory.resolve("logs"), 1 << 20, 1_000)) {
+            recorder.record(message(0, 0));
+            recorder.record(message(999, 1));
+            recorder.record(message(1_000, 2));
+            recorder.record(message(1_500, 3));
+        }
+
+        List<Path> logs = logs();
+        assertEquals(2, logs.size());
+        assertEquals(List.of(0L, 999L), read(logs.get(0)).stream().map(RawMessage::timeStampNs).toList());
+        assertEquals(List.of(0L, 500L), read(logs.get(1)).stream().map(RawMessage::timeStampNs).toList());
+    }
+
+    @Test
+    void rawMessageRecorderDoesNotRecordOnceClosed() throws IOException {
+        var recorder = new RawMessageRecorder(directory.resolve("logs"), 1 << 20, Long.MAX_VALUE);
+        recorder.close();
+        assertFalse(recorder.record(message(0, 0)));
+        assertEquals(0, recorder.droppedCount());
+    }
+
+    @Test
+    void rawMessageRecorderThrowsOnInvalidLimits() {
+        assertThrows(IllegalArgumentException.class,
+                () -> new RawMessageRecorder(directory, RawMessageReader.RECORD_SIZE - 1, 1));
+        assertThrows(IllegalArgumentException.class,
+                () -> new RawMessageRecorder(directory, 1 << 20, 0));
+    }
+}
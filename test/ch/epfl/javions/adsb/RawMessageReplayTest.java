@@ -0,0 +1,111 @@
+package ch.epfl.javions.adsb;
+
+import ch.epfl.javions.ByteString;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RawMessageReplayTest {
+    @TempDir
+    Path directory;
+
+    private Path log(int count, long intervalNs) throws IOException {
+        Path log = directory.resolve("log.bin");
+        try (var writer = new RawMessageWriter(log)) {
+            for (int i = 0; i < count; i++)
+                writer.write(new RawMessage(intervalNs * i, new ByteString(new byte[RawMessage.LENGTH])));
+        }
+        return log;
+    }
+
+    private static List<RawMessage> readAll(RawMessageReplay replay) throws IOException {
+        List<RawMessage> messages = new ArrayList<>();
+        RawMessage message;
+        while ((message = replay.next()) != null) messages.add(message);
+        return messages;
+    }
+
+    @Test
+    void rawMessageReplayReturnsAllMessagesWhenUnthrottled() throws IOException {
+        try (var replay = new RawMessageReplay(log(10_000, 1_000_000_000L), RawMessageReplay.UNTHROTTLED)) {
+            long start = System.nanoTime();
+            List<RawMessage> messages = readAll(replay);
+            assertEquals(10_000, messages.size());
+            assertEquals(9_999_000_000_000L, messages.get(9_999).timeStampNs());
+            assertTrue(System.nanoTime() - start < 5_000_000_000L);
+        }
+    }
+
+    @Test
+    void rawMessageReplayWaitsForMessagesAtGivenSpeed() throws IOException {
+        // 1 s of log, replayed in 10 ms
+        try (var replay = new RawMessageReplay(log(11, 100_000_000L), 100)) {
+            long start = System.nanoTime();
+            assertEquals(11, readAll(replay).size());
+            assertTrue(System.nanoTime() - start >= 10_000_000L);
+        }
+    }
+
+    @Test
+    void rawMessageReplaySeeksAcrossIndexIntervals() throws IOException {
+        try (var replay = new RawMessageReplay(log(20_000, 1_000L), RawMessageReplay.UNTHROTTLED)) {
+            replay.seek(12_345_000L);
+            assertEquals(12_345_000L, replay.next().timeStampNs());
+            replay.seek(12_345_500L);
+            assertEquals(12_346_000L, replay.next().timeStampNs());
+            replay.seek(0);
+            assertEquals(0L, replay.next().timeStampNs());
+            replay.seek(4_096_000L);
+            assertEquals(4_096_000L, replay.next().timeStampNs());
+            replay.seek(Long.MAX_VALUE);
+            assertNull(replay.next());
+        }
+    }
+
+    @Test
+    void rawMessageReplaySeeksToFirstOfMessagesWithSameTimeStampAcrossIndexBoundary() throws IOException {
+        // The records 4000 to 8999 all have the same time stamp, the first indexed ones being 4096 and 8192
+        Path log = directory.resolve("log.bin");
+        try (var writer = new RawMessageWriter(log)) {
+            for (int i = 0; i < 10_000; i++) {
+                byte[] bytes = new byte[RawMessage.LENGTH];
+                bytes[0] = (byte) (i >>> 8);
+                bytes[1] = (byte) i;
+                writer.write(new RawMessage(i < 4_000 || i >= 9_000 ? i : 4_000, new ByteString(bytes)));
+            }
+        }
+        try (var replay = new RawMessageReplay(log, RawMessageReplay.UNTHROTTLED)) {
+            replay.seek(4_000);
+            RawMessage message = replay.next();
+            assertEquals(4_000, message.timeStampNs());
+            assertEquals(4_000, message.bytes().bytesInRange(0, 2));
+            assertEquals(5_999, readAll(replay).size());
+        }
+    }
+
+    @Test
+    void rawMessageReplayChangesSpeed() throws IOException {
+        // 1000 s of log, which would take 1000 s at the initial speed
+        try (var replay = new RawMessageReplay(log(1_001, 1_000_000_000L), 1)) {
+            assertEquals(0L, replay.next().timeStampNs());
+            replay.setSpeed(RawMessageReplay.UNTHROTTLED);
+            assertEquals(1_000, readAll(replay).size());
+            assertEquals(RawMessageReplay.UNTHROTTLED, replay.speed());
+        }
+    }
+
+    @Test
+    void rawMessageReplayThrowsOnInvalidSpeed() throws IOException {
+        Path log = log(1, 0);
+        assertThrows(IllegalArgumentException.class, () -> new RawMessageReplay(log, 0));
+        try (var replay = new RawMessageReplay(log, 1)) {
+            assertThrows(IllegalArgumentException.class, () -> replay.setSpeed(-1));
+        }
+    }
+}
@@ -0,0 +1,242 @@
+package ch.epfl.javions.aircraft;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.*;
+
+class AircraftIndexTest {
+    @TempDir
+    Path directory;
+
+    private String smallDatabase() throws IOException {
+        Path zipFile = directory.resolve("aircraft.zip");
+        try (ZipOutputStream zip = new ZipOutputStream(Files.newOutputStream(zipFile))) {
+            zip.putNextEntry(new ZipEntry("14.csv"));
+            zip.write("""
+                    105A14,GND,GND,,V0-,
+                    4B1814,HB-JDC,A20N,AIRBUS A-320neo,L2J,M
+                    """.getBytes(UTF_8));
+            zip.putNextEntry(new ZipEntry("05.csv"));
+            zip.write("""
+                    4B1805,HB-JCN,BCS3,AIRBUS A220-300,L2J,M
+                    AAAA05,N787BK,,,,
+                    """.getBytes(UTF_8));
+        }
+        return zipFile.toString();
+    }
+
+    @Test
+    void aircraftDatabaseIndexedReturnsSameDataAsLazyOne() throws IOException {
+        String filename = smallDatabase();
+        var lazy = new AircraftDatabase(filename);
+        var indexed = AircraftDatabase.indexed(filename);
+        for (String address : List.of("105A14", "4B1814", "4B1805", "AAAA05", "000014", "4B1714", "FFFF05"))
+            assertEquals(lazy.get(new IcaoAddress(address)), indexed.get(new IcaoAddress(address)));
+        assertEquals(new AircraftRegistration("HB-JCN"), indexed.get(new IcaoAddress("4B1805")).registration());
+    }
+
+    @Test
+    void aircraftDatabaseIndexStatisticsAreCorrect() throws IOException {
+        String filename = smallDatabase();
+        assertNull(new AircraftDatabase(filename).indexStatistics());
+
+        var statistics = AircraftDatabase.indexed(filename).indexStatistics();
+        assertEquals(4, statistics.aircraftCount());
+        // "GND", "L2J" and "" are only stored once
+        assertEquals(11, statistics.stringCount());
+        assertTrue(statistics.sizeInBytes() > 0);
+        assertTrue(statistics.loadTimeNs() > 0);
+    }
+
+    @Test
+    void aircraftDatabaseIndexedThrowsOnMissingFile() {
+        assertThrows(IOException.class, () -> AircraftDatabase.indexed(directory.resolve("missing.zip").toString()));
+        assertThrows(NullPointerException.class, () -> AircraftDatabase.indexed(null));
+    }
+
+    @Test
+    void aircraftIndexCanBeReadBackFromItsBuffer() throws IOException {
+        AircraftIndex index = AircraftIndex.build(smallDatabase());
+        ByteBuffer copy = ByteBuffer.allocate(index.sizeInBytes()).put(index.buffer()).flip();
+        AircraftIndex readBack = new AircraftIndex(copy);
+        assertEquals(index.aircraftCount(), readBack.aircraftCount());
+        assertEquals(index.get(new IcaoAddress("AAAA05")), readBack.get(new IcaoAddress("AAAA05")));
+    }
+
+    @Test
+    void aircraftIndexThrowsOnInvalidBuffer() {
+        assertThrows(IOException.class, () -> new AircraftIndex(ByteBuffer.allocate(64)));
+        assertThrows(IOException.class, () -> new AircraftIndex(ByteBuffer.allocate(2)));
+    }
+
+    @Test
+    void aircraftDatabaseMappedCreatesIndexFileAndReusesIt() throws IOException {
+        String filename = smallDatabase();
+        Path indexFile = directory.resolve("index").resolve("aircraft.index");
+        var mapped = AircraftDatabase.mapped(filename, indexFile);
+        assertTrue(Files.exists(indexFile));
+        assertEquals(4, mapped.indexStatistics().aircraftCount());
+        assertEquals(new AircraftRegistration("HB-JDC"), mapped.get(new IcaoAddress("4B1814")).registration());
+        assertNull(mapped.get(new IcaoAddress("000014")));
+
+        var lastModified = Files.getLastModifiedTime(indexFile);
+        var remapped = AircraftDatabase.mapped(filename, indexFile);
+        assertEquals(lastModified, Files.getLastModifiedTime(indexFile));
+        assertEquals(mapped.get(new IcaoAddress("AAAA05")), remapped.get(new IcaoAddress("AAAA05")));
+    }
+
+    @Test
+    void aircraftDatabaseMappedRebuildsInvalidIndexFile() throws IOException {
+        String filename = smallDatabase();
+        Path indexFile = directory.resolve("aircraft.index");
+        Files.write(indexFile, new byte[]{1, 2, 3});
+        var mapped = AircraftDatabase.mapped(filename, indexFile);
+        assertEquals(4, mapped.indexStatistics().aircraftCount());
+        assertEquals(mapped.indexStatistics().sizeInBytes(), Files.size(indexFile));
+    }
+
+    @Test
+    void aircraftDatabaseMappedRebuildsStaleIndexFile() throws IOException {
+        String filename = smallDatabase();
+        Path indexFile = directory.resolve("aircraft.index");
+        AircraftDatabase.mapped(filename, indexFile);
+        Files.setLastModifiedTime(indexFile, FileTime.fromMillis(0));
+        AircraftDatabase.mapped(filename, indexFile);
+        assertTrue(Files.getLastModifiedTime(indexFile).toMillis() > 0);
+    }
+
+    @Test
+    void aircraftDatabaseFilteredReturnsSameDataAsLazyOne() throws IOException {
+        String filename = smallDatabase();
+        var lazy = new AircraftDatabase(filename);
+        var filtered = AircraftDatabase.filtered(filename);
+        for (String address : List.of("105A14", "4B1814", "4B1805", "AAAA05", "000014", "4B1714", "FFFF05"))
+            assertEquals(lazy.get(new IcaoAddress(address)), filtered.get(new IcaoAddress(address)));
+    }
+
+    @Test
+    void aircraftDatabaseFilteredRejectsUnknownAddressesWithoutReadingDatabase() throws IOException {
+        String filename = smallDatabase();
+        var filtered = AircraftDatabase.filtered(filename);
+        Files.delete(Path.of(filename));
+        assertNull(filtered.get(new IcaoAddress("4B1714")));
+        assertNull(filtered.get(new IcaoAddress("123456")));
+        // Known addresses are still read from the database
+        assertThrows(IOException.class, () -> filtered.get(new IcaoAddress("4B1814")));
+    }
+
+    @Test
+    void aircraftIndexAddressSetContainsExactlyTheAddressesOfTheIndex() throws IOException {
+        var addresses = AircraftIndex.build(smallDatabase()).addressSet();
+        assertEquals(4, addresses.cardinality());
+        for (String address : List.of("105A14", "4B1814", "4B1805", "AAAA05"))
+            assertTrue(addresses.get(Integer.parseInt(address, 16)));
+    }
+
+    // Writes a database containing a single aircraft, with the given registration
+    private void writeDatabase(Path zipFile, String registration) throws IOException {
+        Path temporaryFile = directory.resolve("aircraft.zip.tmp");
+        try (ZipOutputStream zip = new ZipOutputStream(Files.newOutputStream(temporaryFile))) {
+            zip.putNextEntry(new ZipEntry("14.csv"));
+            zip.write(("4B1814," + registration + ",A20N,AIRBUS A-320neo,L2J,M\n").getBytes(UTF_8));
+        }
+        Files.move(temporaryFile, zipFile, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    @Test
+    void aircraftDatabaseReloadReplacesContentsInEveryMode() throws IOException {
+        Path zipFile = directory.resolve("single.zip");
+        String filename = zipFile.toString();
+        writeDatabase(zipFile, "HB-JDC");
+        var address = new IcaoAddress("4B1814");
+        List<AircraftDatabase> databases = List.of(
+                new AircraftDatabase(filename),
+                AircraftDatabase.filtered(filename),
+                AircraftDatabase.indexed(filename),
+                AircraftDatabase.mapped(filename, directory.resolve("single.index")));
+        for (var database : databases)
+            assertEquals(new AircraftRegistration("HB-JDC"), database.get(address).registration());
+
+        writeDatabase(zipFile, "HB-JDD");
+        // The index file must be rebuilt even if the new database is not more recent
+        Files.setLastModifiedTime(zipFile, FileTime.fromMillis(0));
+        for (var database : databases) {
+            database.reload();
+            assertEquals(new AircraftRegistration("HB-JDD"), database.get(address).registration());
+            database.close();
+        }
+    }
+
+    @Test
+    void aircraftDatabaseGetSucceedsWhileZipIsReloaded() throws Exception {
+        String filename = smallDatabase();
+        // The cache only holds one entry, so that the lookups keep reading the ZIP file
+        var database = new AircraftDatabase(filename, 1);
+        var addresses = List.of(new IcaoAddress("4B1814"), new IcaoAddress("4B1805"));
+        var failure = new AtomicReference<Throwable>();
+        var stop = new AtomicBoolean();
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            Thread thread = new Thread(() -> {
+                try {
+                    for (int i = 0; !stop.get(); i++)
+                        assertNotNull(database.get(addresses.get(i % addresses.size())));
+                } catch (Throwable e) {
+                    failure.set(e);
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (int i = 0; i < 5_000 && failure.get() == null; i++)
+            database.reload();
+        stop.set(true);
+        for (Thread thread : threads) thread.join();
+        database.close();
+        assertNull(failure.get());
+    }
+
+    @Test
+    void aircraftDatabaseReloadKeepsContentsIfLoadingFails() throws IOException {
+        Path zipFile = directory.resolve("single.zip");
+        writeDatabase(zipFile, "HB-JDC");
+        var database = AircraftDatabase.indexed(zipFile.toString());
+        Files.delete(zipFile);
+        assertThrows(IOException.class, database::reload);
+        assertEquals(new AircraftRegistration("HB-JDC"), database.get(new IcaoAddress("4B1814")).registration());
+    }
+
+    @Test
+    void aircraftDatabaseWatchReloadsReplacedFile() throws Exception {
+        Path zipFile = directory.resolve("single.zip");
+        writeDatabase(zipFile, "HB-JDC");
+        var database = AircraftDatabase.indexed(zipFile.toString());
+        var reloaded = new CountDownLatch(1);
+        Closeable watch = database.watch(100, reloaded::countDown);
+        try {
+            writeDatabase(zipFile, "HB-JDD");
+            assertTrue(reloaded.await(20, TimeUnit.SECONDS));
+        } finally {
+            watch.close();
+        }
+        assertEquals(new AircraftRegistration("HB-JDD"), database.get(new IcaoAddress("4B1814")).registration());
+    }
+}
@@ -0,0 +1,111 @@
+package ch.epfl.javions.aircraft;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.*;
+
+class AircraftZipTest {
+    private static final String ENTRY_14 = """
+            105A14,GND,GND,,V0-,\r
+            4B1814,HB-JDC,A20N,AIRBUS A-320neo,L2J,M\r
+            """;
+    private static final String ENTRY_05 = """
+            000505,ZS-CNA,B738,BOEING 737-800,L2J,M
+            4B1805,HB-JCN,BCS3,AIRBUS A220-300,L2J,M
+            AAAA05,N787BK,,,,
+            """;
+
+    @TempDir
+    Path directory;
+
+    private String smallDatabase() throws IOException {
+        Path zipFile = directory.resolve("aircraft.zip");
+        try (ZipOutputStream zip = new ZipOutputStream(Files.newOutputStream(zipFile))) {
+            zip.putNextEntry(new ZipEntry("14.csv"));
+            zip.write(ENTRY_14.getBytes(UTF_8));
+            zip.putNextEntry(new ZipEntry("05.csv"));
+            zip.write(ENTRY_05.getBytes(UTF_8));
+        }
+        return zipFile.toString();
+    }
+
+    @Test
+    void aircraftZipFindsFirstMiddleAndLastLines() throws IOException {
+        try (var zip = new AircraftZip(smallDatabase(), 1 << 20)) {
+            assertEquals(new AircraftRegistration("ZS-CNA"), zip.get(new IcaoAddress("000505")).registration());
+            assertEquals(new AircraftRegistration("HB-JCN"), zip.get(new IcaoAddress("4B1805")).registration());
+            assertEquals(new AircraftRegistration("N787BK"), zip.get(new IcaoAddress("AAAA05")).registration());
+            assertEquals(WakeTurbulenceCategory.UNKNOWN, zip.get(new IcaoAddress("AAAA05")).wakeTurbulenceCategory());
+        }
+    }
+
+    @Test
+    void aircraftZipHandlesCarriageReturns() throws IOException {
+        try (var zip = new AircraftZip(smallDatabase(), 1 << 20)) {
+            var data = zip.get(new IcaoAddress("4B1814"));
+            assertEquals(WakeTurbulenceCategory.MEDIUM, data.wakeTurbulenceCategory());
+            assertEquals(WakeTurbulenceCategory.UNKNOWN, zip.get(new IcaoAddress("105A14")).wakeTurbulenceCategory());
+        }
+    }
+
+    @Test
+    void aircraftZipReturnsNullForUnknownAddresses() throws IOException {
+        try (var zip = new AircraftZip(smallDatabase(), 1 << 20)) {
+            assertNull(zip.get(new IcaoAddress("000014")));
+            assertNull(zip.get(new IcaoAddress("4B1815")));
+            assertNull(zip.get(new IcaoAddress("FFFF05")));
+            // There is no entry for this address
+            assertNull(zip.get(new IcaoAddress("123456")));
+        }
+    }
+
+    @Test
+    void aircraftZipCachesEntriesUpToItsMaximalSize() throws IOException {
+        String filename = smallDatabase();
+        long size14, size05;
+        try (var zip = new AircraftZip(filename, 1 << 20)) {
+            zip.get(new IcaoAddress("4B1814"));
+            size14 = zip.cacheSizeInBytes();
+            zip.get(new IcaoAddress("105A14"));
+            assertEquals(size14, zip.cacheSizeInBytes());
+            zip.get(new IcaoAddress("4B1805"));
+            size05 = zip.cacheSizeInBytes() - size14;
+        }
+        assertTrue(size14 >= ENTRY_14.length());
+        assertTrue(size05 >= ENTRY_05.length());
+
+        try (var zip = new AircraftZip(filename, size14 + size05 - 1)) {
+            zip.get(new IcaoAddress("4B1814"));
+            zip.get(new IcaoAddress("4B1805"));
+            assertEquals(size05, zip.cacheSizeInBytes());
+        }
+
+        // The last entry is kept even if it is larger than the cache
+        try (var zip = new AircraftZip(filename, 1)) {
+            zip.get(new IcaoAddress("4B1805"));
+            assertEquals(size05, zip.cacheSizeInBytes());
+        }
+    }
+
+    @Test
+    void aircraftZipThrowsOnceClosed() throws IOException {
+        var zip = new AircraftZip(smallDatabase(), 1 << 20);
+        zip.get(new IcaoAddress("4B1814"));
+        zip.close();
+        assertEquals(0, zip.cacheSizeInBytes());
+        assertThrows(IOException.class, () -> zip.get(new IcaoAddress("4B1814")));
+    }
+
+    @Test
+    void aircraftZipThrowsOnInvalidCacheSize() {
+        assertThrows(IllegalArgumentException.class, () -> new AircraftZip("aircraft.zip", 0));
+    }
+}
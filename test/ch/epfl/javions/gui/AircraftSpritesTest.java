@@ -0,0 +1,27 @@
+package ch.epfl.javions.gui;
+
+import ch.epfl.javions.Units;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AircraftSpritesTest {
+    @Test
+    void aircraftSpritesColorBucketIsInRange() {
+        assertEquals(0, AircraftSprites.colorBucket(Double.NaN));
+        assertEquals(0, AircraftSprites.colorBucket(-100));
+        assertEquals(AircraftSprites.COLOR_BUCKET_COUNT - 1, AircraftSprites.colorBucket(12000));
+        assertEquals(AircraftSprites.COLOR_BUCKET_COUNT - 1, AircraftSprites.colorBucket(20000));
+    }
+
+    @Test
+    void aircraftSpritesRotationBucketIsClosestOrientation() {
+        double fiveDegrees = Units.convertFrom(5, Units.Angle.DEGREE);
+        assertEquals(0, AircraftSprites.rotationBucket(0));
+        assertEquals(0, AircraftSprites.rotationBucket(Double.NaN));
+        assertEquals(1, AircraftSprites.rotationBucket(fiveDegrees * 1.2));
+        assertEquals(0, AircraftSprites.rotationBucket(Units.Angle.TURN - fiveDegrees * 0.4));
+        assertEquals(AircraftSprites.ROTATION_BUCKET_COUNT - 1, AircraftSprites.rotationBucket(-fiveDegrees));
+        assertEquals(90, AircraftSprites.bucketRotation(AircraftSprites.rotationBucket(Units.Angle.TURN / 4)), 1e-9);
+    }
+}
@@ -0,0 +1,185 @@
+package ch.epfl.javions.gui;
+
+import ch.epfl.javions.adsb.AirbornePositionMessage;
+import ch.epfl.javions.adsb.AirborneVelocityMessage;
+import ch.epfl.javions.aircraft.*;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AircraftStateManagerTest {
+    private static final IcaoAddress KNOWN = new IcaoAddress("4B1814");
+    private static final IcaoAddress UNKNOWN = new IcaoAddress("ABCD14");
+    private static final AircraftData KNOWN_DATA = new AircraftData(
+            new AircraftRegistration("HB-JDC"),
+            new AircraftTypeDesignator("A20N"),
+            "AIRBUS A-320neo",
+            new AircraftDescription("L2J"),
+            WakeTurbulenceCategory.MEDIUM);
+
+    // Database counting the lookups of each address
+    private static final class CountingDatabase extends AircraftDatabase {
+        private final Map<IcaoAddress, Integer> lookupCounts = new HashMap<>();
+        private final boolean failing;
+
+        CountingDatabase(boolean failing) {
+            super("unused.zip");
+            this.failing = failing;
+        }
+
+        @Override
+        public AircraftData get(IcaoAddress address) throws IOException {
+            lookupCounts.merge(address, 1, Integer::sum);
+            if (failing) throw new IOException();
+            return address.equals(KNOWN) ? KNOWN_DATA : null;
+        }
+
+        int lookupCount(IcaoAddress address) {
+            return lookupCounts.getOrDefault(address, 0);
+        }
+    }
+
+    private static double cpr(int v) {
+        return Math.scalb((double) v, -17);
+    }
+
+    // Sends an even and an odd position message, so that the position of the aircraft becomes known
+    private static void sendPosition(AircraftStateManager manager, IcaoAddress address, long timeStampNs)
+            throws IOException {
+        manager.updateWithMessage(new AirbornePositionMessage(timeStampNs, address, 1000, 0, cpr(98152), cpr(98838)));
+        manager.updateWithMessage(new AirbornePositionMessage(timeStampNs + 1000, address, 1000, 1, cpr(95758), cpr(81899)));
+    }
+
+    private static ObservableAircraftState stateOf(AircraftStateManager manager, IcaoAddress address) {
+        return manager.states().stream()
+                .filter(state -> state.getIcaoAddress().equals(address))
+                .findFirst()
+                .orElseThrow();
+    }
+
+    private static void runAll(Queue<Runnable> tasks) {
+        while (!tasks.isEmpty()) tasks.remove().run();
+    }
+
+    @Test
+    void aircraftStateManagerSetsAircraftDataOnceLookedUp() throws IOException {
+        Queue<Runnable> tasks = new ArrayDeque<>();
+        Executor deferred = tasks::add;
+        var manager = new AircraftStateManager(new CountingDatabase(false), deferred, deferred);
+
+        sendPosition(manager, KNOWN, 0);
+        ObservableAircraftState state = stateOf(manager, KNOWN);
+        assertNull(state.getAircraftData());
+        assertNull(state.aircraftDataProperty().get());
+
+        runAll(tasks);
+        assertEquals(KNOWN_DATA, state.getAircraftData());
+        assertEquals(KNOWN_DATA, state.aircraftDataProperty().get());
+    }
+
+    @Test
+    void aircraftStateManagerLooksUpDataSynchronouslyByDefault() throws IOException {
+        var manager = new AircraftStateManager(new CountingDatabase(false));
+        sendPosition(manager, KNOWN, 0);
+        assertEquals(KNOWN_DATA, stateOf(manager, KNOWN).getAircraftData());
+    }
+
+    @Test
+    void aircraftStateManagerCachesPositiveAndNegativeLookups() throws IOException {
+        final long MINUTES_2 = 120_000_000_000L;
+        var database = new CountingDatabase(false);
+        var manager = new AircraftStateManager(database);
+
+        sendPosition(manager, KNOWN, 0);
+        sendPosition(manager, UNKNOWN, 0);
+        // Another aircraft two minutes later makes the first ones outdated
+        sendPosition(manager, new IcaoAddress("000001"), MINUTES_2);
+        manager.purge();
+        assertEquals(1, manager.states().size());
+
+        sendPosition(manager, KNOWN, MINUTES_2);
+        sendPosition(manager, UNKNOWN, MINUTES_2);
+        assertEquals(KNOWN_DATA, stateOf(manager, KNOWN).getAircraftData());
+        assertNull(stateOf(manager, UNKNOWN).getAircraftData());
+        assertEquals(1, database.lookupCount(KNOWN));
+        assertEquals(1, database.lookupCount(UNKNOWN));
+    }
+
+    @Test
+    void aircraftStateManagerThrowsAndRetriesFailedSynchronousLookups() {
+        var database = new CountingDatabase(true);
+        var manager = new AircraftStateManager(database);
+
+        assertThrows(IOException.class, () -> sendPosition(manager, KNOWN, 0));
+        assertThrows(IOException.class, () -> sendPosition(manager, KNOWN, 0));
+        assertEquals(2, database.lookupCount(KNOWN));
+    }
+
+    @Test
+    void aircraftStateManagerKeepsDataUnknownWhenAsynchronousLookupFails() throws IOException {
+        Queue<Runnable> tasks = new ArrayDeque<>();
+        Executor deferred = tasks::add;
+        var database = new CountingDatabase(true);
+        var manager = new AircraftStateManager(database, deferred, deferred);
+
+        sendPosition(manager, KNOWN, 0);
+        runAll(tasks);
+        assertNull(stateOf(manager, KNOWN).getAircraftData());
+        assertEquals(1, database.lookupCount(KNOWN));
+    }
+
+    @Test
+    void aircraftStateManagerRefreshLooksUpDataAgain() throws IOException {
+        var database = new CountingDatabase(false);
+        var manager = new AircraftStateManager(database);
+        sendPosition(manager, KNOWN, 0);
+        sendPosition(manager, UNKNOWN, 0);
+
+        manager.refreshAircraftData();
+        assertEquals(2, database.lookupCount(KNOWN));
+        assertEquals(2, database.lookupCount(UNKNOWN));
+        assertEquals(KNOWN_DATA, stateOf(manager, KNOWN).getAircraftData());
+        assertNull(stateOf(manager, UNKNOWN).getAircraftData());
+    }
+
+    @Test
+    void aircraftStateManagerChangesVersionOnceForAllMessagesOfBatch() throws IOException {
+        var manager = new AircraftStateManager(new CountingDatabase(false));
+        sendPosition(manager, KNOWN, 0);
+        ObservableAircraftState state = stateOf(manager, KNOWN);
+        long version = state.versionProperty().get();
+        List<Number> versions = new ArrayList<>();
+        state.versionProperty().addListener((p, o, n) -> versions.add(n));
+
+        manager.beginBatch();
+        sendPosition(manager, KNOWN, 1_000_000);
+        manager.updateWithMessage(new AirborneVelocityMessage(2_000_000, KNOWN, 200, 1));
+        manager.endBatch();
+        assertEquals(List.of(version + 1), versions);
+        assertEquals(200, state.velocityProperty().get());
+    }
+
+    @Test
+    void aircraftStateManagerDoesNotPublishStatePurgedDuringBatch() throws IOException {
+        var manager = new AircraftStateManager(new CountingDatabase(false));
+        manager.beginBatch();
+        sendPosition(manager, KNOWN, 0);
+        sendPosition(manager, UNKNOWN, 120_000_000_000L);
+        manager.purge();
+        // The aircraft reappears in the same batch, with a new state
+        sendPosition(manager, KNOWN, 121_000_000_000L);
+        manager.endBatch();
+
+        assertEquals(2, manager.states().size());
+        assertEquals(121_000_001_000L, stateOf(manager, KNOWN).getLastMessageTimeStampNs());
+    }
+}
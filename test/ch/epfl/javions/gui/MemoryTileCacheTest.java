@@ -0,0 +1,117 @@
+package ch.epfl.javions.gui;
+
+import javafx.scene.image.Image;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MemoryTileCacheTest {
+    private static Image onePixelImage() throws IOException {
+        return new Image(new ByteArrayInputStream(TileManagerTest.onePixelPng()));
+    }
+
+    private static TileManager.TileId tile(int index) {
+        return new TileManager.TileId(12, index, 0);
+    }
+
+    @Test
+    void memoryTileCacheThrowsOnInvalidSize() {
+        assertThrows(IllegalArgumentException.class, () -> new MemoryTileCache(0));
+    }
+
+    @Test
+    void memoryTileCacheSizeOfIsDecodedSize() throws IOException {
+        assertEquals(4, MemoryTileCache.sizeOf(onePixelImage()));
+    }
+
+    @Test
+    void memoryTileCacheEvictsLeastRecentlyUsedWhenFull() throws IOException {
+        Image image = onePixelImage();
+        var cache = new MemoryTileCache(3 * MemoryTileCache.sizeOf(image));
+        cache.put(tile(0), image);
+        cache.put(tile(1), image);
+        cache.put(tile(2), image);
+        assertNotNull(cache.get(tile(0)));
+        cache.put(tile(3), image);
+
+        assertNotNull(cache.get(tile(0)));
+        assertNull(cache.get(tile(1)));
+        assertNotNull(cache.get(tile(2)));
+        assertNotNull(cache.get(tile(3)));
+
+        TileManager.CacheStatistics statistics = cache.statistics();
+        assertEquals(4, statistics.hitCount());
+        assertEquals(1, statistics.missCount());
+        assertEquals(1, statistics.evictionCount());
+        assertEquals(3, statistics.tileCount());
+        assertEquals(12, statistics.sizeInBytes());
+        assertEquals(0.8, statistics.hitRate(), 1e-9);
+    }
+
+    @Test
+    void memoryTileCacheReplacingTileKeepsSize() throws IOException {
+        Image image = onePixelImage();
+        var cache = new MemoryTileCache(100);
+        cache.put(tile(0), image);
+        cache.put(tile(0), image);
+        assertEquals(4, cache.statistics().sizeInBytes());
+        assertTrue(cache.contains(tile(0)));
+        assertEquals(0, cache.statistics().hitCount() + cache.statistics().missCount());
+    }
+
+    @Test
+    void memoryTileCachePeekNeitherCountsNorMarksAsUsed() throws IOException {
+        Image image = onePixelImage();
+        var cache = new MemoryTileCache(2 * MemoryTileCache.sizeOf(image));
+        cache.put(tile(0), image);
+        cache.put(tile(1), image);
+        assertSame(image, cache.peek(tile(0)));
+        assertNull(cache.peek(tile(2)));
+        cache.put(tile(2), image);
+
+        assertNull(cache.peek(tile(0)));
+        assertSame(image, cache.peek(tile(1)));
+        TileManager.CacheStatistics statistics = cache.statistics();
+        assertEquals(0, statistics.hitCount() + statistics.missCount());
+    }
+
+    @Test
+    void memoryTileCacheKeepsImageLargerThanMaximalSize() throws IOException {
+        var cache = new MemoryTileCache(1);
+        cache.put(tile(0), onePixelImage());
+        assertNotNull(cache.get(tile(0)));
+    }
+
+    @Test
+    void memoryTileCacheIsThreadSafe() throws Exception {
+        Image image = onePixelImage();
+        var cache = new MemoryTileCache(64 * MemoryTileCache.sizeOf(image));
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        List<Future<?>> tasks = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            int offset = t * 1000;
+            tasks.add(executor.submit(() -> {
+                for (int i = 0; i < 1000; i++) {
+                    cache.put(tile(offset + i), image);
+                    cache.get(tile(offset + i / 2));
+                }
+            }));
+        }
+        for (Future<?> task : tasks) task.get();
+        executor.shutdown();
+
+        TileManager.CacheStatistics statistics = cache.statistics();
+        assertEquals(64, statistics.tileCount());
+        assertEquals(64 * 4, statistics.sizeInBytes());
+        assertEquals(4000 - 64, statistics.evictionCount());
+        assertEquals(4000, statistics.hitCount() + statistics.missCount());
+    }
+}
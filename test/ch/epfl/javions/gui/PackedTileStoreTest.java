@@ -0,0 +1,95 @@
+package ch.epfl.javions.gui;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PackedTileStoreTest {
+    @TempDir
+    Path directory;
+
+    private static byte[] bytes(int seed, int length) {
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++)
+            bytes[i] = (byte) (seed + i);
+        return bytes;
+    }
+
+    @Test
+    void packedTileStoreReturnsNullForMissingTile() throws IOException {
+        try (var store = new PackedTileStore(directory)) {
+            assertNull(store.read(new TileManager.TileId(3, 1, 2)));
+            assertFalse(Files.exists(directory.resolve("3.tiles")));
+        }
+    }
+
+    @Test
+    void packedTileStoreReadsWrittenTilesAfterReopening() throws IOException {
+        try (var store = new PackedTileStore(directory)) {
+            for (int x = 0; x < 64; x++)
+                for (int y = 0; y < 64; y++)
+                    store.write(new TileManager.TileId(6, x, y), bytes(x * 64 + y, 10 + x));
+            store.write(new TileManager.TileId(7, 5, 5), bytes(0, 3));
+            assertEquals(64 * 64 + 1, store.openedTileCount());
+        }
+
+        try (var store = new PackedTileStore(directory)) {
+            for (int x = 0; x < 64; x++)
+                for (int y = 0; y < 64; y++)
+                    assertArrayEquals(bytes(x * 64 + y, 10 + x), store.read(new TileManager.TileId(6, x, y)));
+            assertArrayEquals(bytes(0, 3), store.read(new TileManager.TileId(7, 5, 5)));
+        }
+        // Two files per zoom level
+        try (var files = Files.list(directory)) {
+            assertEquals(4, files.count());
+        }
+    }
+
+    @Test
+    void packedTileStoreReplacesRewrittenTile() throws IOException {
+        var tile = new TileManager.TileId(2, 1, 1);
+        try (var store = new PackedTileStore(directory)) {
+            store.write(tile, bytes(1, 5));
+            store.write(tile, bytes(2, 7));
+            assertArrayEquals(bytes(2, 7), store.read(tile));
+            assertEquals(1, store.openedTileCount());
+        }
+        try (var store = new PackedTileStore(directory)) {
+            assertArrayEquals(bytes(2, 7), store.read(tile));
+        }
+    }
+
+    @Test
+    void packedTileStoreIgnoresEntriesOfInterruptedWrites() throws IOException {
+        var first = new TileManager.TileId(2, 0, 0);
+        var second = new TileManager.TileId(2, 1, 0);
+        try (var store = new PackedTileStore(directory)) {
+            store.write(first, bytes(1, 5));
+            store.write(second, bytes(2, 5));
+        }
+        // The data of the second tile and part of an entry are lost
+        try (FileChannel data = FileChannel.open(directory.resolve("2.tiles"), StandardOpenOption.WRITE)) {
+            data.truncate(7);
+        }
+        Files.write(directory.resolve("2.index"), new byte[]{1, 2, 3}, StandardOpenOption.APPEND);
+
+        var third = new TileManager.TileId(2, 2, 0);
+        try (var store = new PackedTileStore(directory)) {
+            assertArrayEquals(bytes(1, 5), store.read(first));
+            assertNull(store.read(second));
+            store.write(third, bytes(3, 4));
+        }
+        try (var store = new PackedTileStore(directory)) {
+            assertArrayEquals(bytes(1, 5), store.read(first));
+            assertNull(store.read(second));
+            assertArrayEquals(bytes(3, 4), store.read(third));
+        }
+    }
+}
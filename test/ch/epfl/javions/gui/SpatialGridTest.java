@@ -0,0 +1,50 @@
+package ch.epfl.javions.gui;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SpatialGridTest {
+    @Test
+    void spatialGridThrowsOnInvalidCellSize() {
+        assertThrows(IllegalArgumentException.class, () -> new SpatialGrid<String>(0));
+    }
+
+    @Test
+    void spatialGridNearestReturnsClosestItemWithinDistance() {
+        var grid = new SpatialGrid<String>(10);
+        grid.add(0, 0, "a");
+        grid.add(9, 0, "b");
+        grid.add(-25, -25, "c");
+        assertEquals("a", grid.nearest(3, 1, 10));
+        assertEquals("b", grid.nearest(11, 0, 10));
+        assertEquals("c", grid.nearest(-20, -20, 10));
+        assertNull(grid.nearest(100, 100, 10));
+    }
+
+    @Test
+    void spatialGridForEachInVisitsItemsInRectangle() {
+        var grid = new SpatialGrid<Integer>(4);
+        for (int i = -50; i < 50; i++)
+            grid.add(i, i, i);
+        List<Integer> small = new ArrayList<>(), large = new ArrayList<>();
+        grid.forEachIn(-3, -3, 5, 5, small::add);
+        grid.forEachIn(-1000, -1000, 1000, 1000, large::add);
+        small.sort(null);
+        assertEquals(List.of(-3, -2, -1, 0, 1, 2, 3, 4, 5), small);
+        assertEquals(100, large.size());
+    }
+
+    @Test
+    void spatialGridRemoveRemovesItem() {
+        var grid = new SpatialGrid<String>(10);
+        grid.add(1, 1, "a");
+        assertFalse(grid.remove(50, 50, "a"));
+        assertTrue(grid.remove(1, 1, "a"));
+        assertEquals(0, grid.size());
+        assertNull(grid.nearest(1, 1, 10));
+    }
+}
@@ -0,0 +1,223 @@
+package ch.epfl.javions.gui;
+
+import com.sun.net.httpserver.HttpServer;
+import javafx.scene.image.Image;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+import java.util.zip.DeflaterOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TileManagerTest {
+    private static final TileManager.TileId TILE = new TileManager.TileId(1, 1, 0);
+
+    private HttpServer server;
+    private final AtomicInteger requestCount = new AtomicInteger();
+    private final List<String> requestedPaths = Collections.synchronizedList(new ArrayList<>());
+    private final CountDownLatch release = new CountDownLatch(1);
+    // Released when the server receives a request, and when it has answered it
+    private final Semaphore receivedRequests = new Semaphore(0);
+    private final Semaphore answeredRequests = new Semaphore(0);
+
+    @TempDir
+    Path cacheDirectory;
+
+    // A 1x1 opaque red PNG image
+    static byte[] onePixelPng() throws IOException {
+        ByteArrayOutputStream png = new ByteArrayOutputStream();
+        png.write(new byte[]{(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'});
+        writeChunk(png, "IHDR", ByteBuffer.allocate(13).putInt(1).putInt(1).put(new byte[]{8, 6, 0, 0, 0}).array());
+        ByteArrayOutputStream pixels = new ByteArrayOutputStream();
+        try (DeflaterOutputStream deflater = new DeflaterOutputStream(pixels)) {
+            deflater.write(new byte[]{0, (byte) 0xFF, 0, 0, (byte) 0xFF});
+        }
+        writeChunk(png, "IDAT", pixels.toByteArray());
+        writeChunk(png, "IEND", new byte[0]);
+        return png.toByteArray();
+    }
+
+    private static void writeChunk(ByteArrayOutputStream png, String type, byte[] data) throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(type.getBytes());
+        crc.update(data);
+        png.write(ByteBuffer.allocate(4).putInt(data.length).array());
+        png.write(type.getBytes());
+        png.write(data);
+        png.write(ByteBuffer.allocate(4).putInt((int) crc.getValue()).array());
+    }
+
+    @BeforeEach
+    void startServer() throws IOException {
+        byte[] image = onePixelPng();
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/", exchange -> {
+            requestCount.incrementAndGet();
+            requestedPaths.add(exchange.getRequestURI().getPath());
+            receivedRequests.release();
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            try {
+                if (exchange.getRequestURI().getPath().equals("/1/1/0.png")) {
+                    exchange.sendResponseHeaders(200, image.length);
+                    try (OutputStream body = exchange.getResponseBody()) {
+                        body.write(image);
+                    }
+                } else {
+                    exchange.sendResponseHeaders(404, -1);
+                    exchange.close();
+                }
+            } finally {
+                answeredRequests.release();
+            }
+        });
+        server.start();
+    }
+
+    @AfterEach
+    void stopServer() {
+        release.countDown();
+        server.stop(0);
+    }
+
+    private TileManager newTileManager(int loaderCount) {
+        URI serverUri = URI.create("http://localhost:" + server.getAddress().getPort() + "/");
+        return new TileManager(cacheDirectory, serverUri, loaderCount, 1);
+    }
+
+    private TileManager newTileManager() {
+        return newTileManager(2);
+    }
+
+    @Test
+    void tileManagerConstructorThrowsOnInvalidArguments() {
+        assertThrows(IllegalArgumentException.class, () -> new TileManager(cacheDirectory, URI.create("http://localhost/"), 0, 1));
+        assertThrows(IllegalArgumentException.class, () -> new TileManager(cacheDirectory, URI.create("http://localhost/"), 1, 0));
+    }
+
+    @Test
+    void tileManagerCoalescesConcurrentLoadsOfSameTile() {
+        TileManager tileManager = newTileManager();
+        assertNull(tileManager.cachedImageForTileAt(TILE));
+
+        List<CompletableFuture<Image>> loads = new ArrayList<>();
+        for (int i = 0; i < 10; i++)
+            loads.add(tileManager.loadImageForTileAt(TILE));
+        release.countDown();
+
+        for (CompletableFuture<Image> load : loads)
+            assertEquals(1, load.join().getWidth());
+        assertEquals(1, requestCount.get());
+        assertNotNull(tileManager.cachedImageForTileAt(TILE));
+        assertTrue(Files.exists(cacheDirectory.resolve("1.tiles")));
+    }
+
+    @Test
+    void tileManagerLoadsFromDiskCacheWithoutServer() {
+        release.countDown();
+        newTileManager().loadImageForTileAt(TILE).join();
+
+        TileManager otherTileManager = newTileManager();
+        Image image = otherTileManager.loadImageForTileAt(TILE).join();
+        assertEquals(1, image.getWidth());
+        assertEquals(1, requestCount.get());
+    }
+
+    @Test
+    void tileManagerFailsLoadOfMissingTile() {
+        release.countDown();
+        TileManager tileManager = newTileManager();
+        TileManager.TileId missingTile = new TileManager.TileId(1, 0, 0);
+        CompletionException e = assertThrows(CompletionException.class,
+                () -> tileManager.loadImageForTileAt(missingTile).join());
+        assertInstanceOf(IOException.class, e.getCause().getCause());
+        assertNull(tileManager.cachedImageForTileAt(missingTile));
+
+        // A failed load is not kept, the tile is requested again
+        assertThrows(CompletionException.class, () -> tileManager.loadImageForTileAt(missingTile).join());
+        assertEquals(2, requestCount.get());
+    }
+
+    @Test
+    void tileManagerCancelsStalePrefetchesAndPrioritisesRequestedTiles() throws InterruptedException {
+        TileManager tileManager = newTileManager(1);
+        var a = new TileManager.TileId(2, 0, 0);
+        var b = new TileManager.TileId(2, 1, 0);
+        var c = new TileManager.TileId(2, 2, 0);
+        var d = new TileManager.TileId(2, 3, 0);
+
+        // The only loader is busy with the first tile until the server is released
+        CompletableFuture<Image> first = tileManager.loadImageForTileAt(TILE);
+        assertTrue(receivedRequests.tryAcquire(5, TimeUnit.SECONDS));
+        tileManager.prefetch(List.of(a, b, c));
+        tileManager.prefetch(List.of(c));
+        CompletableFuture<Image> requested = tileManager.loadImageForTileAt(d);
+        release.countDown();
+
+        first.join();
+        requested.handle((image, e) -> null).join();
+        // The prefetch of c is the last load, the cancelled prefetches of a and b are never requested
+        assertTrue(answeredRequests.tryAcquire(3, 5, TimeUnit.SECONDS));
+        assertEquals(List.of("/1/1/0.png", "/2/3/0.png", "/2/2/0.png"), requestedPaths);
+    }
+
+    @Test
+    void tileManagerDoesNotFetchAgainTileWhosePrefetchIsCompleting() {
+        release.countDown();
+        TileManager tileManager = newTileManager();
+        tileManager.prefetch(List.of(TILE));
+        // Requests made while the prefetch completes share it, or find the tile in the memory cache
+        for (int i = 0; i < 1_000 && tileManager.cachedImageForTileAt(TILE) == null; i++)
+            tileManager.loadImageForTileAt(TILE);
+        tileManager.loadImageForTileAt(TILE).join();
+        assertEquals(1, requestCount.get());
+    }
+
+    @Test
+    void tileManagerPrefetchWarmsMemoryCache() throws InterruptedException {
+        release.countDown();
+        TileManager tileManager = newTileManager();
+        tileManager.prefetch(List.of(TILE));
+        for (int i = 0; i < 100 && tileManager.cachedImageForTileAt(TILE) == null; i++)
+            Thread.sleep(50);
+        assertNotNull(tileManager.cachedImageForTileAt(TILE));
+        assertEquals(1, requestCount.get());
+    }
+
+    @Test
+    void tileManagerMovesLegacyTileFilesToPackedStore() throws IOException {
+        Path legacyFile = cacheDirectory.resolve("1").resolve("1").resolve("0.png");
+        Files.createDirectories(legacyFile.getParent());
+        Files.write(legacyFile, onePixelPng());
+
+        Image image = newTileManager().loadImageForTileAt(TILE).join();
+        assertEquals(1, image.getWidth());
+        assertEquals(0, requestCount.get());
+        assertFalse(Files.exists(legacyFile));
+        assertEquals(1, newTileManager().loadImageForTileAt(TILE).join().getWidth());
+    }
+}
@@ -0,0 +1,48 @@
+package ch.epfl.javions.gui;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TilePrefetcherTest {
+    private static final int ZOOM = 10;
+
+    @Test
+    void tilePrefetcherExcludesVisibleTilesAndDuplicates() {
+        // The visible tiles are [10, 11] x [20, 21]
+        List<TileManager.TileId> tiles = TilePrefetcher.tilesToPrefetch(ZOOM, 2560, 5120, 500, 500, 0, 0, 1000);
+        assertEquals(tiles.size(), new HashSet<>(tiles).size());
+        for (TileManager.TileId tile : tiles) {
+            boolean visible = tile.zoomLevel() == ZOOM && 10 <= tile.indexX() && tile.indexX() <= 11
+                    && 20 <= tile.indexY() && tile.indexY() <= 21;
+            assertFalse(visible);
+        }
+    }
+
+    @Test
+    void tilePrefetcherIncludesAdjacentZoomLevels() {
+        List<TileManager.TileId> tiles = TilePrefetcher.tilesToPrefetch(ZOOM, 2560, 5120, 500, 500, 0, 0, 1000);
+        assertTrue(tiles.contains(new TileManager.TileId(ZOOM - 1, 5, 10)));
+        assertTrue(tiles.contains(new TileManager.TileId(ZOOM + 1, 21, 41)));
+        assertTrue(tiles.contains(new TileManager.TileId(ZOOM, 12, 21)));
+    }
+
+    @Test
+    void tilePrefetcherFavoursDirectionOfMovement() {
+        List<TileManager.TileId> tiles = TilePrefetcher.tilesToPrefetch(ZOOM, 2560, 5120, 500, 500, 1, 0, 1000);
+        // Moving east, the first tiles are on the right of the visible ones, up to two tiles ahead
+        assertEquals(12, tiles.get(0).indexX());
+        assertTrue(tiles.contains(new TileManager.TileId(ZOOM, 13, 20)));
+        assertFalse(tiles.contains(new TileManager.TileId(ZOOM, 8, 20)));
+    }
+
+    @Test
+    void tilePrefetcherRespectsMaximalCountAndMapBounds() {
+        assertEquals(5, TilePrefetcher.tilesToPrefetch(ZOOM, 2560, 5120, 500, 500, 0, 0, 5).size());
+        for (TileManager.TileId tile : TilePrefetcher.tilesToPrefetch(ZOOM, 0, 0, 500, 500, -1, -1, 1000))
+            assertTrue(tile.indexX() >= 0 && tile.indexY() >= 0);
+    }
+}
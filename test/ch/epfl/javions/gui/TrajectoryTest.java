@@ -0,0 +1,100 @@
+package ch.epfl.javions.gui;
+
+import ch.epfl.javions.GeoPos;
+import javafx.collections.ListChangeListener;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static ch.epfl.javions.gui.ObservableAircraftState.AirbornePos;
+import static org.junit.jupiter.api.Assertions.*;
+
+class TrajectoryTest {
+    private static List<AirbornePos> straightLine(int from, int to) {
+        List<AirbornePos> positions = new ArrayList<>();
+        for (int i = from; i < to; i++)
+            positions.add(new AirbornePos(new GeoPos(i * 1000, 0), i));
+        return positions;
+    }
+
+    @Test
+    void retentionThrowsOnInvalidArguments() {
+        assertThrows(IllegalArgumentException.class, () -> new Trajectory.Retention(1, 0, 0));
+        assertThrows(IllegalArgumentException.class, () -> new Trajectory.Retention(2, -1, 0));
+        assertThrows(IllegalArgumentException.class, () -> new Trajectory.Retention(2, 0, -1));
+    }
+
+    @Test
+    void trajectoryIsUnmodifiable() {
+        var trajectory = new Trajectory(Trajectory.Retention.DEFAULT);
+        assertThrows(UnsupportedOperationException.class, () -> trajectory.add(straightLine(0, 1).get(0)));
+    }
+
+    @Test
+    void trajectoryAddAllNotifiesOnce() {
+        var trajectory = new Trajectory(Trajectory.Retention.DEFAULT);
+        int[] changes = {0};
+        trajectory.addListener((ListChangeListener<AirbornePos>) c -> changes[0]++);
+        trajectory.addAll(straightLine(0, 10), 0);
+        assertEquals(1, changes[0]);
+        assertEquals(straightLine(0, 10), trajectory);
+    }
+
+    @Test
+    void trajectoryDropsOldestPositionsWhenFull() {
+        var trajectory = new Trajectory(new Trajectory.Retention(4, Long.MAX_VALUE, 0));
+        for (AirbornePos position : straightLine(0, 10))
+            trajectory.addAll(List.of(position), 0);
+        assertEquals(straightLine(6, 10), trajectory);
+    }
+
+    @Test
+    void trajectoryDropsTooOldPositions() {
+        var trajectory = new Trajectory(new Trajectory.Retention(100, 20, 0));
+        List<AirbornePos> positions = straightLine(0, 10);
+        for (int i = 0; i < positions.size(); i++)
+            trajectory.addAll(List.of(positions.get(i)), i * 10L);
+        assertEquals(straightLine(7, 10), trajectory);
+    }
+
+    @Test
+    void trajectoryThinsStraightLineWhenFull() {
+        var trajectory = new Trajectory(new Trajectory.Retention(4, Long.MAX_VALUE, 1e-9));
+        for (AirbornePos position : straightLine(0, 10))
+            trajectory.addAll(List.of(position), 0);
+        assertEquals(straightLine(0, 1).get(0), trajectory.get(0));
+        assertEquals(straightLine(9, 10).get(0), trajectory.get(trajectory.size() - 1));
+        assertTrue(trajectory.size() <= 4);
+    }
+
+    @Test
+    void trajectoryReplaceLastReplacesNewestPosition() {
+        var trajectory = new Trajectory(Trajectory.Retention.DEFAULT);
+        trajectory.addAll(straightLine(0, 3), 0);
+        AirbornePos replacement = new AirbornePos(new GeoPos(42, 42), 42);
+        trajectory.replaceLast(replacement);
+        assertEquals(3, trajectory.size());
+        assertEquals(replacement, trajectory.get(2));
+    }
+
+    @Test
+    void trajectoryDropsOldestPositionsDownToThreeQuartersWhenItCannotBeThinned() {
+        var trajectory = new Trajectory(new Trajectory.Retention(8, Long.MAX_VALUE, 1e-9));
+        int[] removedCount = {0};
+        trajectory.addListener((ListChangeListener<AirbornePos>) c -> {
+            while (c.next()) removedCount[0] += c.getRemovedSize();
+        });
+        // A zigzag cannot be simplified
+        for (int i = 0; i < 9; i++)
+            trajectory.addAll(List.of(new AirbornePos(new GeoPos(i * 1000, (i % 2) * 1000), i)), 0);
+        assertEquals(7, trajectory.size());
+        assertEquals(2, removedCount[0]);
+        assertEquals(2 * 1000, trajectory.get(0).geoPos().longitudeT32());
+
+        // The next positions are added without removing any other one, until the trajectory is full again
+        trajectory.addAll(List.of(new AirbornePos(new GeoPos(9000, 1000), 9)), 0);
+        assertEquals(8, trajectory.size());
+        assertEquals(2, removedCount[0]);
+    }
+}